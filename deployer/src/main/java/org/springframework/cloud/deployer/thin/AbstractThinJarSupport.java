@@ -19,6 +19,7 @@ package org.springframework.cloud.deployer.thin;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.springframework.boot.loader.thin.LaunchEvents;
 import org.springframework.boot.loader.thin.ThinJarLauncher;
 import org.springframework.cloud.deployer.spi.app.AppDeployer;
 import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
@@ -48,17 +49,19 @@ public class AbstractThinJarSupport {
 	}
 
 	public String deploy(AppDeploymentRequest request) {
-		ThinJarAppWrapper wrapper = new ThinJarAppWrapper(request.getResource(), getName(request),
-				getProfiles(request));
-		String id = wrapper.getId();
-		if (!apps.containsKey(id)) {
-			apps.put(id, wrapper);
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("deploy", request.getResource())) {
+			ThinJarAppWrapper wrapper = new ThinJarAppWrapper(request.getResource(),
+					getName(request), getProfiles(request));
+			String id = wrapper.getId();
+			if (!apps.containsKey(id)) {
+				apps.put(id, wrapper);
+			}
+			else {
+				wrapper = apps.get(id);
+			}
+			wrapper.run(getProperties(request), request.getCommandlineArguments());
+			return id;
 		}
-		else {
-			wrapper = apps.get(id);
-		}
-		wrapper.run(getProperties(request), request.getCommandlineArguments());
-		return id;
 	}
 
 	protected Map<String, String> getProperties(AppDeploymentRequest request) {
@@ -101,7 +104,9 @@ public class AbstractThinJarSupport {
 
 	public void cancel(String id) {
 		if (apps.containsKey(id)) {
-			apps.get(id).cancel();
+			try (LaunchEvents.Phase phase = LaunchEvents.phase("undeploy", id)) {
+				apps.get(id).cancel();
+			}
 		}
 	}
 
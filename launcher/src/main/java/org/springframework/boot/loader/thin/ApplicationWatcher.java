@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.boot.loader.MainMethodRunner;
+
+/**
+ * Runs the application in a loop for local development: the dependencies are loaded
+ * once, in a class loader that is kept for as long as they don't change, and the
+ * application classes (from an exploded archive, e.g. <code>BOOT-INF/classes</code> or
+ * <code>target/classes</code>) are loaded in a small child class loader that is thrown
+ * away and created again when they change. A change to a pom or a thin properties file
+ * resolves the dependencies again, and the dependency class loader is only replaced if
+ * the class path is different.
+ * <p>
+ * The running application is stopped with the Spring Boot admin MBean (so
+ * <code>spring.application.admin.enabled</code> is set to true). An application that
+ * does not register it has to finish on its own before it is restarted.
+ */
+class ApplicationWatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(ApplicationWatcher.class);
+
+	private static final String ADMIN = "org.springframework.boot:type=Admin,name=SpringApplication";
+
+	private final URL[] application;
+
+	private final List<File> directories;
+
+	private final List<File> inputs;
+
+	private final Pattern properties;
+
+	private final Callable<URL[]> resolver;
+
+	private final ClassLoader parent;
+
+	private final String mainClass;
+
+	private final String[] args;
+
+	private long interval = 1000L;
+
+	private URL[] dependencies;
+
+	private ThinJarClassLoader dependencyLoader;
+
+	private ThinJarClassLoader applicationLoader;
+
+	private Thread thread;
+
+	/**
+	 * @param application the class path of the application (directories)
+	 * @param dependencies the class path of the dependencies
+	 * @param inputs extra files that the dependencies are resolved from (e.g. a pom
+	 * outside the application directories)
+	 * @param name the name of the thin properties ("thin" by default)
+	 * @param resolver a callback to resolve the class path of the dependencies again
+	 * @param parent the parent class loader for the dependencies
+	 * @param mainClass the main class
+	 * @param args the command line arguments for the main method
+	 */
+	ApplicationWatcher(URL[] application, URL[] dependencies, List<File> inputs,
+			String name, Callable<URL[]> resolver, ClassLoader parent, String mainClass,
+			String[] args) {
+		this.application = application;
+		this.directories = new ArrayList<>();
+		for (URL url : application) {
+			File file = file(url);
+			if (file != null && file.isDirectory()) {
+				this.directories.add(file);
+			}
+		}
+		this.dependencies = dependencies;
+		this.inputs = inputs;
+		this.properties = Pattern.compile(Pattern.quote(name) + "(-.*)?\\.properties");
+		this.resolver = resolver;
+		this.parent = parent;
+		this.mainClass = mainClass;
+		this.args = args;
+	}
+
+	/**
+	 * @param interval the time between scans for changes in milliseconds
+	 */
+	void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * Start the application and restart it every time something changes. Only returns
+	 * if the thread is interrupted.
+	 */
+	void run() throws Exception {
+		Map<File, Long> files = scan();
+		start();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(this.interval);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			Map<File, Long> current = scan();
+			if (current.equals(files)) {
+				continue;
+			}
+			// Wait until the build has finished writing
+			Map<File, Long> settled = current;
+			do {
+				current = settled;
+				Thread.sleep(this.interval);
+				settled = scan();
+			}
+			while (!settled.equals(current));
+			Set<File> changed = changes(files, settled);
+			files = settled;
+			restart(changed);
+		}
+		stop();
+		close(this.dependencyLoader);
+	}
+
+	void restart(Set<File> changed) throws Exception {
+		boolean resolve = false;
+		for (File file : changed) {
+			if (isResolutionInput(file)) {
+				resolve = true;
+				break;
+			}
+		}
+		stop();
+		if (resolve) {
+			log.info("Resolving dependencies again after changes to: " + changed);
+			URL[] dependencies = this.resolver.call();
+			if (!Arrays.equals(dependencies, this.dependencies)) {
+				this.dependencies = dependencies;
+				close(this.dependencyLoader);
+				this.dependencyLoader = null;
+			}
+		}
+		log.info("Restarting after changes to: " + changed);
+		start();
+	}
+
+	void start() throws Exception {
+		if (this.dependencyLoader == null) {
+			this.dependencyLoader = new ThinJarClassLoader(this.dependencies, this.parent);
+			this.dependencyLoader.setParentFirst(true);
+		}
+		this.applicationLoader = new ThinJarClassLoader(this.application,
+				this.dependencyLoader);
+		// Application classes have to come from the class loader that is restarted
+		this.applicationLoader.setParentFirst(false);
+		if (System.getProperty("spring.application.admin.enabled") == null) {
+			System.setProperty("spring.application.admin.enabled", "true");
+		}
+		MainMethodRunner runner = new MainMethodRunner(this.mainClass, this.args);
+		this.thread = new Thread(() -> {
+			try {
+				runner.run();
+			}
+			catch (Throwable e) {
+				log.error("Application failed: " + this.mainClass, e);
+			}
+		}, "main");
+		this.thread.setContextClassLoader(this.applicationLoader);
+		this.thread.start();
+	}
+
+	void stop() throws Exception {
+		if (this.thread == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(ADMIN);
+		if (!server.isRegistered(name)) {
+			// Still starting, or not a Spring Boot application
+			if (this.thread.isAlive()) {
+				log.info("Waiting for the main method to return: " + this.mainClass);
+			}
+			this.thread.join();
+		}
+		if (server.isRegistered(name)) {
+			server.invoke(name, "shutdown", null, null);
+		}
+		this.thread.join();
+		this.thread = null;
+		close(this.applicationLoader);
+		this.applicationLoader = null;
+	}
+
+	ClassLoader getDependencyLoader() {
+		return this.dependencyLoader;
+	}
+
+	ClassLoader getApplicationLoader() {
+		return this.applicationLoader;
+	}
+
+	private boolean isResolutionInput(File file) {
+		return "pom.xml".equals(file.getName())
+				|| this.properties.matcher(file.getName()).matches()
+				|| this.inputs.contains(file);
+	}
+
+	Map<File, Long> scan() {
+		Map<File, Long> files = new HashMap<>();
+		for (File directory : this.directories) {
+			scan(directory, files);
+		}
+		for (File file : this.inputs) {
+			if (file.isFile()) {
+				files.put(file, stamp(file));
+			}
+		}
+		return files;
+	}
+
+	private void scan(File directory, Map<File, Long> files) {
+		File[] list = directory.listFiles();
+		if (list == null) {
+			return;
+		}
+		for (File file : list) {
+			if (file.isDirectory()) {
+				scan(file, files);
+			}
+			else {
+				files.put(file, stamp(file));
+			}
+		}
+	}
+
+	private static long stamp(File file) {
+		return file.lastModified() * 31 + file.length();
+	}
+
+	private static Set<File> changes(Map<File, Long> before, Map<File, Long> after) {
+		Set<File> changed = new HashSet<>();
+		for (Map.Entry<File, Long> entry : after.entrySet()) {
+			if (!entry.getValue().equals(before.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+		for (File file : before.keySet()) {
+			if (!after.containsKey(file)) {
+				changed.add(file);
+			}
+		}
+		return changed;
+	}
+
+	private static File file(URL url) {
+		try {
+			return "file".equals(url.getProtocol()) ? new File(url.toURI()) : null;
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static void close(ThinJarClassLoader loader) {
+		if (loader != null) {
+			try {
+				loader.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+}
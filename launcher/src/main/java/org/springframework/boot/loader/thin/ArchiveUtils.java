@@ -47,7 +47,11 @@ public class ArchiveUtils {
 	}
 
 	public static Archive getArchive(String path) {
-		File file = new File(findArchive(path));
+		return getArchive(path, DependencyResolver.instance());
+	}
+
+	static Archive getArchive(String path, DependencyResolver engine) {
+		File file = new File(findArchive(path, engine));
 		if (file.isDirectory()) {
 			return new ExplodedArchive(file);
 		}
@@ -99,8 +103,8 @@ public class ArchiveUtils {
 		}
 	}
 
-	private static URI findArchive(String path) {
-		URI archive = findPath(path);
+	private static URI findArchive(String path, DependencyResolver engine) {
+		URI archive = findPath(path, engine);
 		if (archive != null) {
 			try {
 				return jarFile(archive.toURL()).toURI();
@@ -121,14 +125,13 @@ public class ArchiveUtils {
 		return dir.toURI();
 	}
 
-	private static URI findPath(String path) {
+	private static URI findPath(String path, DependencyResolver engine) {
 		if (path == null) {
 			return null;
 		}
 		if (path.startsWith("maven:")) {
 			// Resolving an explicit external archive
 			String coordinates = path.replaceFirst("maven:\\/*", "");
-			DependencyResolver engine = DependencyResolver.instance();
 			File resolved = engine
 					.resolve(new Dependency(new DefaultArtifact(coordinates), "runtime"));
 			return resolved.toURI();
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Records a {@link LaunchEvents flight recorder event} for every artifact that is
+ * resolved, with the repository it came from, its size and whether it was already in
+ * the local repository.
+ */
+class ArtifactEventListener extends AbstractRepositoryListener {
+
+	/**
+	 * Events in progress, keyed by thread and artifact (an artifact is resolved and
+	 * reported in the same thread).
+	 */
+	private final Map<String, Object> events = new ConcurrentHashMap<>();
+
+	@Override
+	public void artifactResolving(RepositoryEvent event) {
+		Object recorded = LaunchEvents.artifact(event.getArtifact().toString());
+		if (recorded != null) {
+			this.events.put(key(event), recorded);
+		}
+	}
+
+	@Override
+	public void artifactResolved(RepositoryEvent event) {
+		Object recorded = this.events.remove(key(event));
+		if (recorded == null) {
+			return;
+		}
+		ArtifactRepository repository = event.getRepository();
+		File file = event.getArtifact().getFile();
+		LaunchEvents.artifact(recorded, repository == null ? null : repository.getId(),
+				file == null ? -1 : file.length(), !(repository instanceof RemoteRepository));
+	}
+
+	private String key(RepositoryEvent event) {
+		return Thread.currentThread().getId() + ":" + ResolvedGraph.id(event.getArtifact());
+	}
+
+}
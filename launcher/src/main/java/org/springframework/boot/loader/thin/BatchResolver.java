@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.StringUtils;
+
+/**
+ * Dry run for a batch of archives in one JVM, e.g. to pre-warm a host or an image with
+ * the dependencies of many applications. The archives share the container, the Maven
+ * settings and the repository caches, they are resolved in parallel, and downloads that
+ * they have in common only happen once.
+ */
+class BatchResolver {
+
+	private final String[] args;
+
+	private final List<String> archives;
+
+	private final int threads;
+
+	private final StandardEnvironment environment;
+
+	private BatchResolver(String[] args, List<String> archives, StandardEnvironment environment) {
+		this.args = args;
+		this.archives = archives;
+		this.environment = environment;
+		this.threads = Integer.valueOf(environment.resolvePlaceholders(
+				"${thin.batch.threads:" + Runtime.getRuntime().availableProcessors() + "}"));
+	}
+
+	/**
+	 * Create a batch if the arguments ask for a dry run and {@link ThinJarLauncher#THIN_ARCHIVE}
+	 * is a comma-separated list of archives or a directory of jar files.
+	 * @return a batch or null if the arguments are for a single archive
+	 */
+	static BatchResolver create(String[] args) {
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+		if ("false".equals(
+				environment.resolvePlaceholders("${" + ThinJarLauncher.THIN_DRYRUN + ":false}"))) {
+			return null;
+		}
+		String archive = environment.resolvePlaceholders("${" + ThinJarLauncher.THIN_ARCHIVE + ":}");
+		List<String> archives = archives(archive);
+		if (archives == null) {
+			return null;
+		}
+		if (!"false".equals(environment.resolvePlaceholders("${thin.debug:${debug:false}}"))) {
+			LogUtils.setLogLevel(Level.INFO);
+		}
+		return new BatchResolver(args, archives, environment);
+	}
+
+	static List<String> archives(String archive) {
+		if (archive.contains(",")) {
+			List<String> list = new ArrayList<>();
+			for (String value : StringUtils.commaDelimitedListToStringArray(archive)) {
+				if (StringUtils.hasText(value)) {
+					list.add(value.trim());
+				}
+			}
+			return list;
+		}
+		File directory = new File(archive);
+		if (!StringUtils.hasText(archive) || !directory.isDirectory()
+				|| new File(directory, "META-INF").exists() || new File(directory, "pom.xml").exists()) {
+			// Not a directory, or an exploded archive
+			return null;
+		}
+		File[] jars = directory.listFiles((dir, name) -> name.endsWith(".jar"));
+		if (jars == null || jars.length == 0) {
+			return null;
+		}
+		Arrays.sort(jars);
+		List<String> list = new ArrayList<>();
+		for (File jar : jars) {
+			list.add(jar.getPath());
+		}
+		return list;
+	}
+
+	/**
+	 * Resolve all the archives and print a report.
+	 * @return the results in the same order as the archives
+	 */
+	List<Result> run(PrintStream out) throws Exception {
+		Properties properties = new Properties();
+		String root = this.environment.resolvePlaceholders("${" + ThinJarLauncher.THIN_ROOT + ":}");
+		if (StringUtils.hasText(root)) {
+			properties.setProperty(ThinJarLauncher.THIN_ROOT, root);
+		}
+		DependencyResolver.instance().bootstrap(properties);
+		long t0 = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.threads),
+				DependencyResolver.threads("thin-batch-"));
+		List<Result> results = new ArrayList<>();
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (String archive : this.archives) {
+				futures.add(executor.submit(() -> resolve(archive)));
+			}
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				}
+				catch (ExecutionException e) {
+					throw new IllegalStateException("Cannot resolve", e.getCause());
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		int failed = 0;
+		out.println("Resolved " + this.archives.size() + " archives in " + (System.currentTimeMillis() - t0)
+				+ "ms");
+		for (Result result : results) {
+			out.println(result);
+			if (result.getError() != null) {
+				failed++;
+			}
+		}
+		if (failed > 0) {
+			throw new IllegalStateException("Cannot resolve " + failed + " of " + results.size() + " archives");
+		}
+		return results;
+	}
+
+	private Result resolve(String archive) {
+		long t0 = System.currentTimeMillis();
+		String[] values = args(archive);
+		try {
+			List<URL> urls = new ThinJarLauncher(values).resolve(values);
+			// The first entry is the archive itself
+			return new Result(archive, urls.size() - 1, System.currentTimeMillis() - t0, null);
+		}
+		catch (Exception e) {
+			return new Result(archive, 0, System.currentTimeMillis() - t0, e);
+		}
+	}
+
+	private String[] args(String archive) {
+		List<String> result = new ArrayList<>();
+		for (String arg : this.args) {
+			if (!arg.startsWith("--" + ThinJarLauncher.THIN_ARCHIVE)) {
+				result.add(arg);
+			}
+		}
+		result.add("--" + ThinJarLauncher.THIN_ARCHIVE + "=" + archive);
+		return result.toArray(new String[0]);
+	}
+
+	static class Result {
+
+		private final String archive;
+
+		private final int dependencies;
+
+		private final long time;
+
+		private final Exception error;
+
+		Result(String archive, int dependencies, long time, Exception error) {
+			this.archive = archive;
+			this.dependencies = dependencies;
+			this.time = time;
+			this.error = error;
+		}
+
+		public String getArchive() {
+			return this.archive;
+		}
+
+		public int getDependencies() {
+			return this.dependencies;
+		}
+
+		public long getTime() {
+			return this.time;
+		}
+
+		public Exception getError() {
+			return this.error;
+		}
+
+		@Override
+		public String toString() {
+			if (this.error != null) {
+				return "FAILED " + this.archive + " (" + this.time + "ms): " + this.error;
+			}
+			return "OK     " + this.archive + " (" + this.time + "ms): " + this.dependencies + " dependencies";
+		}
+
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Files that carry a whole class path, so that an application can be launched with
+ * plain <code>java</code> (no launcher) without running into command line length limits.
+ * A pathing jar has only a manifest, with a <code>Class-Path</code> and a
+ * <code>Main-Class</code> (so <code>java -jar</code> works), and an argument file has
+ * <code>-cp</code> and the main class (for <code>java @file</code>). They live in
+ * <code>${thin.root}/classpath</code> in a file named after a hash of the class path and
+ * the main class, so they are only written once.
+ */
+class ClassPathFile {
+
+	static final String DIRECTORY = "classpath";
+
+	/**
+	 * The pathing jar for the class path and main class provided, writing it if it does
+	 * not exist yet.
+	 * @param root the thin root directory
+	 * @param mainClass the main class
+	 * @param paths the absolute paths of the class path entries
+	 * @return the jar file
+	 */
+	static File jar(File root, String mainClass, List<String> paths) throws IOException {
+		File file = file(root, mainClass, paths, ".jar");
+		if (file.exists()) {
+			return file;
+		}
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.put(Attributes.Name.MAIN_CLASS, mainClass);
+		StringBuilder builder = new StringBuilder();
+		for (String path : paths) {
+			if (builder.length() > 0) {
+				builder.append(" ");
+			}
+			// Relative URLs in the manifest are resolved against the jar itself
+			builder.append(new File(path).toURI().toString());
+		}
+		attributes.put(Attributes.Name.CLASS_PATH, builder.toString());
+		LauncherUtils.write(file, stream -> new JarOutputStream(stream, manifest).finish());
+		return file;
+	}
+
+	/**
+	 * The argument file for the class path and main class provided, writing it if it
+	 * does not exist yet.
+	 * @param root the thin root directory
+	 * @param mainClass the main class
+	 * @param paths the absolute paths of the class path entries
+	 * @return the argument file
+	 */
+	static File argfile(File root, String mainClass, List<String> paths) throws IOException {
+		File file = file(root, mainClass, paths, ".args");
+		if (file.exists()) {
+			return file;
+		}
+		String classpath = String.join(File.pathSeparator, paths);
+		String content = "-cp\n" + quote(classpath) + "\n" + mainClass + "\n";
+		LauncherUtils.write(file, stream -> stream.write(content.getBytes(StandardCharsets.UTF_8)));
+		return file;
+	}
+
+	/**
+	 * Quote a value for an argument file, where a backslash is an escape character
+	 * inside quotes.
+	 */
+	static String quote(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static File file(File root, String mainClass, List<String> paths, String extension) {
+		return new File(new File(root, DIRECTORY), key(mainClass, paths) + extension);
+	}
+
+	static String key(String mainClass, List<String> paths) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(mainClass.getBytes(StandardCharsets.UTF_8));
+			for (String path : paths) {
+				digest.update((byte) '\n');
+				digest.update(path.getBytes(StandardCharsets.UTF_8));
+			}
+			return LauncherUtils.hex(digest.digest());
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot compute class path key", e);
+		}
+	}
+
+}
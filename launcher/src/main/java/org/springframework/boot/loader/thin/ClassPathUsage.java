@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the classes and resources that are loaded from each jar on the class path
+ * during a run of the application, so that the jars that were never used can be listed
+ * as <code>exclusions.*</code> in a thin profile (<code>thin-trimmed.properties</code>).
+ * An exclusion removes the whole subtree of a dependency (and starters have no classes
+ * at all), so a jar is only excluded if nothing in its subtree was used either. Only the
+ * jars that have coordinates (i.e. were resolved as dependencies) can be excluded. The
+ * rest are listed in the report, but left alone.
+ */
+class ClassPathUsage {
+
+	static final String PROFILE = "trimmed";
+
+	private static final Logger log = LoggerFactory.getLogger(ClassPathUsage.class);
+
+	/**
+	 * Hit counts keyed by the URL of the jar, in class path order. The keys are fixed up
+	 * front, so the map can be read concurrently without locking.
+	 */
+	private final Map<String, AtomicLong> hits = new LinkedHashMap<>();
+
+	private final Map<String, String> coordinates;
+
+	private final Map<String, Set<String>> subtrees;
+
+	/**
+	 * @param urls the class path
+	 * @param coordinates the group and artifact ids (as "group:artifact") of the
+	 * dependencies, keyed by the URL of their jars
+	 * @param subtrees the group and artifact ids of the transitive dependencies of each
+	 * dependency (see {@link DependencyGraph#getSubtrees()})
+	 */
+	ClassPathUsage(URL[] urls, Map<String, String> coordinates,
+			Map<String, Set<String>> subtrees) {
+		for (URL url : urls) {
+			this.hits.put(url.toString(), new AtomicLong());
+		}
+		this.coordinates = coordinates;
+		this.subtrees = subtrees;
+	}
+
+	/**
+	 * Record a class that was loaded.
+	 * @param type the class
+	 */
+	void hit(Class<?> type) {
+		if (type.getProtectionDomain().getCodeSource() != null) {
+			hit(type.getProtectionDomain().getCodeSource().getLocation());
+		}
+	}
+
+	/**
+	 * Record a resource (or class) that was found.
+	 * @param url the URL of the resource or of the jar that contains it
+	 */
+	void hit(URL url) {
+		if (url == null) {
+			return;
+		}
+		String location = url.toString();
+		if (location.startsWith("jar:")) {
+			int index = location.indexOf("!/");
+			location = location.substring("jar:".length(),
+					index < 0 ? location.length() : index);
+		}
+		AtomicLong count = this.hits.get(location);
+		if (count != null) {
+			count.incrementAndGet();
+		}
+	}
+
+	long getHits(URL url) {
+		AtomicLong count = this.hits.get(url.toString());
+		return count == null ? -1 : count.get();
+	}
+
+	String toProperties() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("# Class path usage recorded by the thin launcher (hits, size, jar).\n");
+		builder.append("# Dependencies are only excluded if nothing was loaded from them or\n");
+		builder.append("# from any of their transitive dependencies.\n");
+		Set<String> used = new HashSet<>();
+		for (Map.Entry<String, AtomicLong> entry : this.hits.entrySet()) {
+			if (entry.getValue().get() > 0 && this.coordinates.containsKey(entry.getKey())) {
+				used.add(this.coordinates.get(entry.getKey()));
+			}
+		}
+		Set<String> names = new HashSet<>();
+		StringBuilder exclusions = new StringBuilder();
+		for (Map.Entry<String, AtomicLong> entry : this.hits.entrySet()) {
+			String url = entry.getKey();
+			long count = entry.getValue().get();
+			String coordinates = this.coordinates.get(url);
+			builder.append(String.format(Locale.ROOT, "# %8d %10d %s\n", count,
+					size(url), coordinates == null ? url : coordinates + " (" + url + ")"));
+			if (count == 0 && coordinates != null && isUnused(coordinates, used)) {
+				String name = coordinates.substring(coordinates.indexOf(':') + 1);
+				if (!names.add(name)) {
+					name = coordinates.replace(':', '.');
+				}
+				exclusions.append("exclusions.").append(name).append("=")
+						.append(coordinates).append("\n");
+			}
+		}
+		return builder.append(exclusions).toString();
+	}
+
+	private boolean isUnused(String coordinates, Set<String> used) {
+		Set<String> subtree = this.subtrees.get(coordinates);
+		if (subtree == null) {
+			// Not in the graph, so there is no telling what it pulls in
+			return false;
+		}
+		for (String dependency : subtree) {
+			if (used.contains(dependency)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write the profile atomically into the directory provided.
+	 * @param directory the directory to write to
+	 */
+	void write(File directory) {
+		File file = new File(directory, "thin-" + PROFILE + ".properties");
+		try {
+			LauncherUtils.write(file, stream -> stream.write(toProperties().getBytes(StandardCharsets.UTF_8)));
+			log.info("Saved trimmed profile: " + file);
+		}
+		catch (IOException e) {
+			log.info("Cannot save trimmed profile: " + file + " (" + e.getMessage() + ")");
+		}
+	}
+
+	private static long size(String url) {
+		try {
+			return new File(new URL(url).toURI()).length();
+		}
+		catch (IOException | URISyntaxException | IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.util.graph.manager.DependencyManagerUtils;
+import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+
+/**
+ * The resolved dependency tree of an application, for <code>thin.classpath=graph</code>
+ * (JSON) and <code>thin.classpath=dot</code> (Graphviz). Each node has the path it was
+ * included by, the version mediation decision ("selected", "managed" from another
+ * version, or omitted because of a "conflict" with, or a "duplicate" of, a node that
+ * is nearer the root), the size of the jar and of the subtree that it pulls in, and
+ * whether it was downloaded and how long it took to resolve. Omitted nodes are not on
+ * the class path, so they don't count towards the sizes.
+ */
+class DependencyGraph {
+
+	private final List<Node> nodes = new ArrayList<>();
+
+	/**
+	 * @param root the root of a graph that was collected with verbose conflict
+	 * resolution and dependency management (so the omitted nodes are still in it)
+	 * @param dependencies the resolved dependencies (with their files)
+	 * @param report the report that was listening while they were resolved
+	 */
+	DependencyGraph(DependencyNode root, List<Dependency> dependencies,
+			ResolutionReport report) {
+		Map<String, File> files = new HashMap<>();
+		for (Dependency dependency : dependencies) {
+			if (dependency.getArtifact().getFile() != null) {
+				files.put(ResolvedGraph.id(dependency.getArtifact()),
+						dependency.getArtifact().getFile());
+			}
+		}
+		for (DependencyNode child : root.getChildren()) {
+			String scope = child.getDependency().getScope();
+			if (!"test".equals(scope) && !"provided".equals(scope)) {
+				this.nodes.add(new Node(child, new ArrayList<>(), files, report));
+			}
+		}
+	}
+
+	String toJson() {
+		StringBuilder json = new StringBuilder("{\n  \"dependencies\": [");
+		String separator = "\n";
+		for (Node node : this.nodes) {
+			json.append(separator);
+			node.json(json, "    ");
+			separator = ",\n";
+		}
+		json.append(this.nodes.isEmpty() ? "]\n" : "\n  ]\n");
+		return json.append("}\n").toString();
+	}
+
+	/**
+	 * The group and artifact ids ("group:artifact") of all the dependencies that each
+	 * node pulls in, directly or transitively, keyed by its own group and artifact id
+	 * and merged over all the places where it appears in the tree. Omitted nodes are
+	 * included, so if anything it lists too many.
+	 */
+	Map<String, Set<String>> getSubtrees() {
+		Map<String, Set<String>> subtrees = new HashMap<>();
+		for (Node node : this.nodes) {
+			node.subtree(subtrees);
+		}
+		return subtrees;
+	}
+
+	String toDot(String name) {
+		StringBuilder dot = new StringBuilder("digraph dependencies {\n");
+		dot.append("  node [shape=box];\n");
+		dot.append("  ").append(quote(name)).append(";\n");
+		Set<String> seen = new HashSet<>();
+		for (Node node : this.nodes) {
+			node.dot(dot, name, seen);
+		}
+		return dot.append("}\n").toString();
+	}
+
+	private static String quote(String value) {
+		// Labels have line breaks ("\n") in them, so only quotes are escaped
+		return "\"" + value.replace("\"", "\\\"") + "\"";
+	}
+
+	private static String kilobytes(long bytes) {
+		return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+	}
+
+	private static class Node {
+
+		private final String id;
+
+		private final String coordinates;
+
+		private final String scope;
+
+		private final List<String> path;
+
+		private final String mediation;
+
+		/**
+		 * The other version involved in the mediation (the requested version if it was
+		 * managed, or the winner if it was omitted).
+		 */
+		private final String version;
+
+		/**
+		 * The coordinates of the node that was selected instead, if it was omitted.
+		 */
+		private final String winner;
+
+		private final long bytes;
+
+		private final boolean downloaded;
+
+		private final long time;
+
+		private final List<Node> children = new ArrayList<>();
+
+		private long total;
+
+		Node(DependencyNode node, List<String> path, Map<String, File> files,
+				ResolutionReport report) {
+			Artifact artifact = node.getArtifact();
+			this.id = artifact.getGroupId() + ":" + artifact.getArtifactId();
+			this.coordinates = ThinJarLauncher.coordinates(artifact);
+			this.scope = node.getDependency().getScope();
+			this.path = path;
+			DependencyNode winner = (DependencyNode) node.getData()
+					.get(ConflictResolver.NODE_DATA_WINNER);
+			String premanaged = DependencyManagerUtils.getPremanagedVersion(node);
+			if (winner != null) {
+				boolean duplicate = winner.getArtifact().getVersion()
+						.equals(artifact.getVersion());
+				this.mediation = duplicate ? "duplicate" : "conflict";
+				this.version = duplicate ? null : winner.getArtifact().getVersion();
+				this.winner = ThinJarLauncher.coordinates(winner.getArtifact());
+				this.bytes = 0;
+				this.downloaded = false;
+				this.time = 0;
+				return;
+			}
+			if (premanaged != null && !premanaged.equals(artifact.getVersion())) {
+				this.mediation = "managed";
+				this.version = premanaged;
+			}
+			else {
+				this.mediation = "selected";
+				this.version = null;
+			}
+			this.winner = null;
+			File file = files.get(ResolvedGraph.id(artifact));
+			this.bytes = file == null ? 0 : file.length();
+			this.downloaded = report.isDownloaded(artifact);
+			this.time = report.getTime(artifact);
+			this.total = this.bytes;
+			List<String> next = new ArrayList<>(path);
+			next.add(this.coordinates);
+			for (DependencyNode child : node.getChildren()) {
+				Node added = new Node(child, next, files, report);
+				this.children.add(added);
+				this.total += added.total;
+			}
+		}
+
+		Set<String> subtree(Map<String, Set<String>> subtrees) {
+			Set<String> result = new HashSet<>();
+			for (Node child : this.children) {
+				result.add(child.id);
+				result.addAll(child.subtree(subtrees));
+			}
+			subtrees.computeIfAbsent(this.id, key -> new HashSet<>()).addAll(result);
+			return result;
+		}
+
+		private boolean isOmitted() {
+			return "duplicate".equals(this.mediation) || "conflict".equals(this.mediation);
+		}
+
+		void json(StringBuilder json, String indent) {
+			json.append(indent).append("{ \"artifact\": ").append(LauncherUtils.json(this.coordinates))
+					.append(", \"scope\": ").append(LauncherUtils.json(this.scope))
+					.append(", \"mediation\": ").append(LauncherUtils.json(this.mediation));
+			if (this.version != null) {
+				json.append(", \"").append(isOmitted() ? "winner" : "requested")
+						.append("\": ").append(LauncherUtils.json(this.version));
+			}
+			json.append(", \"bytes\": ").append(this.bytes).append(", \"totalBytes\": ")
+					.append(this.total).append(", \"downloaded\": ").append(this.downloaded)
+					.append(", \"time\": ").append(this.time).append(", \"path\": [");
+			String separator = "";
+			for (String parent : this.path) {
+				json.append(separator).append(LauncherUtils.json(parent));
+				separator = ", ";
+			}
+			json.append("]");
+			if (this.children.isEmpty()) {
+				json.append(" }");
+				return;
+			}
+			json.append(",\n").append(indent).append("  \"dependencies\": [\n");
+			separator = "";
+			for (Node child : this.children) {
+				json.append(separator);
+				child.json(json, indent + "    ");
+				separator = ",\n";
+			}
+			json.append("\n").append(indent).append("  ] }");
+		}
+
+		void dot(StringBuilder dot, String parent, Set<String> seen) {
+			if (isOmitted()) {
+				String label = this.version == null ? this.mediation
+						: this.mediation + " with "
+								+ this.coordinates.substring(this.coordinates.lastIndexOf(':') + 1);
+				dot.append("  ").append(quote(parent)).append(" -> ").append(quote(this.winner))
+						.append(" [style=dashed, label=").append(quote(label)).append("];\n");
+				return;
+			}
+			if (seen.add(this.coordinates)) {
+				dot.append("  ").append(quote(this.coordinates)).append(" [label=")
+						.append(quote(this.coordinates + "\\n" + kilobytes(this.bytes) + " ("
+								+ kilobytes(this.total) + " total)"
+								+ (this.downloaded ? "\\ndownloaded in " + this.time + "ms" : "")))
+						.append("];\n");
+			}
+			dot.append("  ").append(quote(parent)).append(" -> ")
+					.append(quote(this.coordinates));
+			if ("managed".equals(this.mediation)) {
+				dot.append(" [label=").append(quote("managed from " + this.version))
+						.append("]");
+			}
+			dot.append(";\n");
+			for (Node child : this.children) {
+				child.dot(dot, this.coordinates, seen);
+			}
+		}
+
+	}
+
+}
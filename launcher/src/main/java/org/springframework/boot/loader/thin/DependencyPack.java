@@ -0,0 +1,608 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.StreamUtils;
+
+/**
+ * A single file containing all the entries of a list of jar files, stored uncompressed
+ * with a hash index on the entry name, so that it can be memory mapped and used to serve
+ * classes and resources without opening the original jars. Entries are kept in classpath
+ * order, so the first match for a name is the one that a class loader over the original
+ * jars would have found.
+ */
+class DependencyPack implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DependencyPack.class);
+
+	private static final int MAGIC = 0x54484e50; // "THNP"
+
+	private static final int VERSION = 1;
+
+	private static final int ENTRY_SIZE = 32;
+
+	private static final int FOOTER_SIZE = 32;
+
+	private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+	private static final String VERSIONS = "META-INF/versions/";
+
+	private final File file;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	private final int slots;
+
+	private final int entries;
+
+	private final int tableOffset;
+
+	private final int entriesOffset;
+
+	private final int namesOffset;
+
+	private final List<File> sources;
+
+	private final Map<Integer, Manifest> manifests = new LinkedHashMap<>();
+
+	private DependencyPack(File file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		long size = this.channel.size();
+		if (size < FOOTER_SIZE + 8 || size > Integer.MAX_VALUE) {
+			this.channel.close();
+			throw new IOException("Not a valid dependency pack: " + file);
+		}
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		int footer = (int) size - FOOTER_SIZE;
+		if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(footer + FOOTER_SIZE - 4) != MAGIC
+				|| this.buffer.getInt(4) != VERSION) {
+			this.channel.close();
+			throw new IOException("Not a valid dependency pack: " + file);
+		}
+		this.entries = this.buffer.getInt(footer);
+		this.slots = this.buffer.getInt(footer + 4);
+		this.tableOffset = this.buffer.getInt(footer + 8);
+		this.entriesOffset = this.buffer.getInt(footer + 12);
+		this.namesOffset = this.buffer.getInt(footer + 16);
+		int sourcesOffset = this.buffer.getInt(footer + 20);
+		int count = this.buffer.getInt(footer + 24);
+		this.sources = new ArrayList<>(count);
+		ByteBuffer data = this.buffer.duplicate();
+		data.position(sourcesOffset);
+		for (int i = 0; i < count; i++) {
+			byte[] bytes = new byte[data.getShort() & 0xffff];
+			data.get(bytes);
+			this.sources.add(new File(new String(bytes, StandardCharsets.UTF_8)));
+		}
+	}
+
+	/**
+	 * Open an existing pack.
+	 * @param file the pack file
+	 * @return the pack, memory mapped
+	 * @throws IOException if the file cannot be read or is not a pack
+	 */
+	public static DependencyPack open(File file) throws IOException {
+		return new DependencyPack(file);
+	}
+
+	/**
+	 * The location of the pack for a list of jar files in a given directory. The name of
+	 * the file is a fingerprint of the jars (paths, sizes and timestamps) and the running
+	 * JVM version (which matters for multi-release jars).
+	 * @param directory the directory containing packs
+	 * @param jars the jar files
+	 * @return a file (which may not exist)
+	 */
+	public static File location(File directory, List<File> jars) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(String.valueOf(VERSION).getBytes(StandardCharsets.UTF_8));
+			digest.update(String.valueOf(javaVersion()).getBytes(StandardCharsets.UTF_8));
+			for (File jar : jars) {
+				digest.update(
+						(jar.getAbsolutePath() + ":" + jar.length() + ":" + jar.lastModified() + "\n")
+								.getBytes(StandardCharsets.UTF_8));
+			}
+			return new File(directory, LauncherUtils.hex(digest.digest()) + ".pack");
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot compute fingerprint for pack", e);
+		}
+	}
+
+	/**
+	 * Open the pack at the given location, building it first from the jars if it does
+	 * not already exist.
+	 * @param file the pack file
+	 * @param jars the jar files to pack (in classpath order)
+	 * @return the pack
+	 * @throws IOException if the pack cannot be built
+	 */
+	public static DependencyPack build(File file, List<File> jars) throws IOException {
+		if (file.exists()) {
+			try {
+				return open(file);
+			}
+			catch (IOException e) {
+				log.info("Rebuilding invalid dependency pack: " + file);
+			}
+		}
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Cannot create directory for dependency pack: " + parent);
+		}
+		LauncherUtils.write(file, stream -> write(stream, jars));
+		log.info("Created dependency pack: " + file);
+		return open(file);
+	}
+
+	private static void write(OutputStream stream, List<File> jars) throws IOException {
+		List<PackEntry> list = new ArrayList<>();
+		ByteArrayOutputStream names = new ByteArrayOutputStream();
+		long position = 8;
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 65536));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		for (int source = 0; source < jars.size(); source++) {
+			try (JarFile jar = new JarFile(jars.get(source), false)) {
+				Map<String, JarEntry> entries = entries(jar);
+				for (Map.Entry<String, JarEntry> item : entries.entrySet()) {
+					String name = item.getKey();
+					JarEntry entry = item.getValue();
+					byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+					PackEntry packed = new PackEntry(name.hashCode(), names.size(), bytes.length, position,
+							source);
+					names.write(bytes);
+					if (!entry.isDirectory()) {
+						try (InputStream input = jar.getInputStream(entry)) {
+							packed.size = (int) StreamUtils.copy(input, output);
+						}
+					}
+					position += packed.size;
+					if (position > Integer.MAX_VALUE) {
+						throw new IOException("Dependency pack too large");
+					}
+					list.add(packed);
+				}
+			}
+		}
+		int slots = Integer.highestOneBit(Math.max(list.size(), 1) * 2);
+		int[] heads = new int[slots];
+		int[] tails = new int[slots];
+		Arrays.fill(heads, -1);
+		for (int i = 0; i < list.size(); i++) {
+			int slot = list.get(i).hash & (slots - 1);
+			if (heads[slot] < 0) {
+				heads[slot] = i;
+			}
+			else {
+				list.get(tails[slot]).next = i;
+			}
+			tails[slot] = i;
+		}
+		int tableOffset = (int) position;
+		for (int head : heads) {
+			output.writeInt(head);
+		}
+		int entriesOffset = tableOffset + 4 * slots;
+		for (PackEntry entry : list) {
+			output.writeInt(entry.hash);
+			output.writeInt(entry.next);
+			output.writeInt(entry.nameOffset);
+			output.writeInt(entry.nameLength);
+			output.writeLong(entry.offset);
+			output.writeInt(entry.size);
+			output.writeInt(entry.source);
+		}
+		int namesOffset = entriesOffset + ENTRY_SIZE * list.size();
+		names.writeTo(output);
+		int sourcesOffset = namesOffset + names.size();
+		for (File jar : jars) {
+			byte[] path = jar.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+			output.writeShort(path.length);
+			output.write(path);
+		}
+		output.writeInt(list.size());
+		output.writeInt(slots);
+		output.writeInt(tableOffset);
+		output.writeInt(entriesOffset);
+		output.writeInt(namesOffset);
+		output.writeInt(sourcesOffset);
+		output.writeInt(jars.size());
+		output.writeInt(MAGIC);
+		output.flush();
+	}
+
+	private static Map<String, JarEntry> entries(JarFile jar) throws IOException {
+		Map<String, JarEntry> entries = new LinkedHashMap<>();
+		Map<String, Integer> versions = new LinkedHashMap<>();
+		boolean multi = isMultiRelease(jar);
+		int java = javaVersion();
+		for (Enumeration<JarEntry> iterator = jar.entries(); iterator.hasMoreElements();) {
+			JarEntry entry = iterator.nextElement();
+			String name = entry.getName();
+			if (multi && name.startsWith(VERSIONS)) {
+				// Only the best match for the current JVM is used by a class loader
+				int index = name.indexOf('/', VERSIONS.length());
+				int version = index > 0 ? version(name.substring(VERSIONS.length(), index)) : -1;
+				if (version > 0) {
+					String base = name.substring(index + 1);
+					if (version <= java && base.length() > 0
+							&& (!versions.containsKey(base) || versions.get(base) < version)) {
+						versions.put(base, version);
+						entries.put(base, entry);
+						continue;
+					}
+				}
+			}
+			if (!versions.containsKey(name)) {
+				entries.put(name, entry);
+			}
+		}
+		return entries;
+	}
+
+	private static int version(String segment) {
+		// Not a versioned entry unless it is a number (JarFile ignores the others too)
+		try {
+			return Integer.parseInt(segment);
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static boolean isMultiRelease(JarFile jar) throws IOException {
+		Manifest manifest = jar.getManifest();
+		return manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue("Multi-Release"));
+	}
+
+	private static int javaVersion() {
+		String version = System.getProperty("java.specification.version", "1.8");
+		if (version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+		try {
+			return Integer.parseInt(version);
+		}
+		catch (NumberFormatException e) {
+			return 8;
+		}
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * The jar files that were packed, in classpath order.
+	 * @return the source jars
+	 */
+	public List<File> getSources() {
+		return this.sources;
+	}
+
+	/**
+	 * Find the first entry with the given name.
+	 * @param name the entry name
+	 * @return the entry or null if there is none
+	 */
+	public Entry find(String name) {
+		List<Entry> list = find(name, true);
+		return list.isEmpty() ? null : list.get(0);
+	}
+
+	/**
+	 * Find all the entries with the given name, in classpath order.
+	 * @param name the entry name
+	 * @return the entries (possibly empty)
+	 */
+	public List<Entry> findAll(String name) {
+		return find(name, false);
+	}
+
+	private List<Entry> find(String name, boolean first) {
+		List<Entry> result = new ArrayList<>(1);
+		if (this.entries == 0) {
+			return result;
+		}
+		int hash = name.hashCode();
+		byte[] bytes = null;
+		int index = this.buffer.getInt(this.tableOffset + 4 * (hash & (this.slots - 1)));
+		while (index >= 0) {
+			int offset = this.entriesOffset + ENTRY_SIZE * index;
+			if (this.buffer.getInt(offset) == hash) {
+				if (bytes == null) {
+					bytes = name.getBytes(StandardCharsets.UTF_8);
+				}
+				if (matches(bytes, this.buffer.getInt(offset + 8), this.buffer.getInt(offset + 12))) {
+					result.add(new Entry(name, (int) this.buffer.getLong(offset + 16),
+							this.buffer.getInt(offset + 24), this.buffer.getInt(offset + 28)));
+					if (first) {
+						return result;
+					}
+				}
+			}
+			index = this.buffer.getInt(offset + 4);
+		}
+		return result;
+	}
+
+	private boolean matches(byte[] bytes, int offset, int length) {
+		if (bytes.length != length) {
+			return false;
+		}
+		int start = this.namesOffset + offset;
+		for (int i = 0; i < length; i++) {
+			if (this.buffer.get(start + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The content of an entry, as a read-only view of the mapped file.
+	 * @param entry the entry
+	 * @return the content
+	 */
+	public ByteBuffer read(Entry entry) {
+		ByteBuffer data = this.buffer.duplicate();
+		data.position(entry.offset);
+		data.limit(entry.offset + entry.size);
+		return data.slice();
+	}
+
+	/**
+	 * The manifest of the jar that an entry was packed from.
+	 * @param entry the entry
+	 * @return the manifest or null if there is none
+	 */
+	public Manifest getManifest(Entry entry) {
+		synchronized (this.manifests) {
+			if (!this.manifests.containsKey(entry.source)) {
+				Manifest manifest = null;
+				for (Entry candidate : findAll(MANIFEST)) {
+					if (candidate.source == entry.source) {
+						try {
+							manifest = new Manifest(new ByteBufferInputStream(read(candidate)));
+						}
+						catch (IOException e) {
+							// ignore
+						}
+						break;
+					}
+				}
+				this.manifests.put(entry.source, manifest);
+			}
+			return this.manifests.get(entry.source);
+		}
+	}
+
+	/**
+	 * The URL of the source jar that an entry was packed from.
+	 * @param entry the entry
+	 * @return a URL for the jar file
+	 */
+	public URL getSourceUrl(Entry entry) {
+		try {
+			return this.sources.get(entry.source).toURI().toURL();
+		}
+		catch (MalformedURLException e) {
+			throw new IllegalStateException("Cannot create URL for " + this.sources.get(entry.source), e);
+		}
+	}
+
+	/**
+	 * A URL for the entry. It looks like a normal "jar:" URL (so tools that parse it to
+	 * find the original jar still work), but the content is read from the pack.
+	 * @param entry the entry
+	 * @return a URL for the entry
+	 */
+	public URL getUrl(final Entry entry) {
+		try {
+			String spec = "jar:" + getSourceUrl(entry) + "!/" + entry.name;
+			return new URL(null, spec, new URLStreamHandler() {
+				@Override
+				protected URLConnection openConnection(URL url) throws IOException {
+					return new EntryConnection(url, entry);
+				}
+			});
+		}
+		catch (MalformedURLException e) {
+			throw new IllegalStateException("Cannot create URL for " + entry.name, e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return this.file.toString();
+	}
+
+	/**
+	 * An entry in the pack.
+	 */
+	public static class Entry {
+
+		private final String name;
+
+		private final int offset;
+
+		private final int size;
+
+		private final int source;
+
+		Entry(String name, int offset, int size, int source) {
+			this.name = name;
+			this.offset = offset;
+			this.size = size;
+			this.source = source;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public int getSize() {
+			return this.size;
+		}
+
+		public int getSource() {
+			return this.source;
+		}
+
+	}
+
+	private static class PackEntry {
+
+		private final int hash;
+
+		private final int nameOffset;
+
+		private final int nameLength;
+
+		private final long offset;
+
+		private final int source;
+
+		private int next = -1;
+
+		private int size;
+
+		PackEntry(int hash, int nameOffset, int nameLength, long offset, int source) {
+			this.hash = hash;
+			this.nameOffset = nameOffset;
+			this.nameLength = nameLength;
+			this.offset = offset;
+			this.source = source;
+		}
+
+	}
+
+	private class EntryConnection extends URLConnection {
+
+		private final Entry entry;
+
+		EntryConnection(URL url, Entry entry) {
+			super(url);
+			this.entry = entry;
+		}
+
+		@Override
+		public void connect() throws IOException {
+			this.connected = true;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new ByteBufferInputStream(read(this.entry));
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return this.entry.size;
+		}
+
+		@Override
+		public int getContentLength() {
+			return this.entry.size;
+		}
+
+		@Override
+		public long getLastModified() {
+			return sources.get(this.entry.source).lastModified();
+		}
+
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public synchronized int read() {
+			return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public synchronized int read(byte[] bytes, int offset, int length) {
+			if (!this.buffer.hasRemaining()) {
+				return -1;
+			}
+			length = Math.min(length, this.buffer.remaining());
+			this.buffer.get(bytes, offset, length);
+			return length;
+		}
+
+		@Override
+		public synchronized long skip(long count) {
+			int skipped = (int) Math.min(count, this.buffer.remaining());
+			this.buffer.position(this.buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public synchronized int available() {
+			return this.buffer.remaining();
+		}
+
+	}
+
+}
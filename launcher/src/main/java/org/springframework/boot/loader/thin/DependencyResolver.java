@@ -24,11 +24,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Singleton;
 
@@ -36,6 +47,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import org.apache.maven.RepositoryUtils;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
 import org.apache.maven.artifact.repository.MavenArtifactRepository;
@@ -50,12 +62,12 @@ import org.apache.maven.model.validation.DefaultModelValidator;
 import org.apache.maven.model.validation.ModelValidator;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.DependencyResolutionResult;
+import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.ProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.ProjectBuildingRequest;
 import org.apache.maven.project.ProjectBuildingRequest.RepositoryMerging;
 import org.apache.maven.project.ProjectBuildingResult;
-import org.apache.maven.repository.internal.DefaultArtifactDescriptorReader;
 import org.apache.maven.repository.internal.DefaultVersionRangeResolver;
 import org.apache.maven.repository.internal.DefaultVersionResolver;
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
@@ -72,12 +84,19 @@ import org.codehaus.plexus.classworlds.ClassWorld;
 import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositoryException;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
 import org.eclipse.aether.artifact.DefaultArtifact;
-import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.CollectResult;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.graph.DefaultDependencyNode;
 import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
 import org.eclipse.aether.impl.ArtifactDescriptorReader;
+import org.eclipse.aether.impl.ArtifactResolver;
 import org.eclipse.aether.impl.MetadataGeneratorFactory;
 import org.eclipse.aether.impl.VersionRangeResolver;
 import org.eclipse.aether.impl.VersionResolver;
@@ -85,6 +104,7 @@ import org.eclipse.aether.impl.guice.AetherModule;
 import org.eclipse.aether.repository.Authentication;
 import org.eclipse.aether.repository.AuthenticationContext;
 import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
 import org.eclipse.aether.repository.NoLocalRepositoryManagerException;
 import org.eclipse.aether.repository.Proxy;
 import org.eclipse.aether.repository.ProxySelector;
@@ -92,18 +112,25 @@ import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.repository.RemoteRepository.Builder;
 import org.eclipse.aether.repository.RepositoryPolicy;
 import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
 import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
 import org.eclipse.aether.spi.connector.transport.TransporterFactory;
 import org.eclipse.aether.spi.localrepo.LocalRepositoryManagerFactory;
 import org.eclipse.aether.transport.file.FileTransporterFactory;
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.util.graph.manager.DependencyManagerUtils;
+import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+import org.eclipse.aether.util.graph.visitor.PreorderNodeListGenerator;
+import org.eclipse.aether.util.listener.ChainedRepositoryListener;
+import org.eclipse.aether.util.listener.ChainedTransferListener;
 import org.eclipse.aether.util.repository.AuthenticationBuilder;
 import org.eclipse.aether.util.repository.JreProxySelector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.core.io.Resource;
+import org.springframework.util.PropertyPlaceholderHelper;
 import org.springframework.util.StringUtils;
 
 public class DependencyResolver {
@@ -112,15 +139,31 @@ public class DependencyResolver {
 
 	public static final String THIN_ROOT = "thin.root";
 
+	public static final String THIN_INDEX = "thin.index";
+
+	public static final String THIN_LOCAL_TRUST = "thin.local.trust";
+
+	public static final String THIN_PIPELINE = "thin.pipeline";
+
+	public static final String THIN_TRANSPORT = "thin.transport";
+
+	public static final String THIN_DELTA = "thin.delta";
+
+	public static final String THIN_HYBRID = "thin.hybrid";
+
+	private static final int DOWNLOAD_THREADS = 4;
+
 	private static final Logger log = LoggerFactory.getLogger(DependencyResolver.class);
 
-	private static DependencyResolver instance = new DependencyResolver();
+	private static volatile DependencyResolver instance = new DependencyResolver();
 
-	private static Properties globals;
+	private static final ThreadLocal<Properties> globals = new ThreadLocal<>();
 
 	private LocalRepositoryManagerFactory localRepositoryManagerFactory;
 
-	private PlexusContainer container;
+	private LocalRepositoryManagerFactory trustedRepositoryManagerFactory;
+
+	private volatile PlexusContainer container;
 
 	private Object lock = new Object();
 
@@ -130,18 +173,50 @@ public class DependencyResolver {
 
 	private MavenSettings settings;
 
+	private Map<File, RepositoryIndex> indexes = new ConcurrentHashMap<>();
+
+	private ArtifactResolver artifactResolver;
+
+	private ExecutorService downloads;
+
+	private Map<String, ResolvedGraph> graphs = new ConcurrentHashMap<>();
+
+	private Map<File, EmbeddedWorkspaceReader> embedded = new ConcurrentHashMap<>();
+
+	private Set<ResolutionReport> reports = new CopyOnWriteArraySet<>();
+
+	private Future<PlexusContainer> pendingContainer;
+
+	private Future<MavenSettings> pendingSettings;
+
 	public static DependencyResolver instance() {
 		return instance;
 	}
 
-	public static void close() {
+	public static synchronized void close() {
 		if (instance != null) {
 			instance.dispose();
 		}
 		instance = new DependencyResolver();
 	}
 
-	private void dispose() {
+	/**
+	 * Create a resolver that is not shared, for callers that need to release it
+	 * without affecting anyone else (e.g. a background prefetch).
+	 */
+	static DependencyResolver create() {
+		return new DependencyResolver();
+	}
+
+	void dispose() {
+		if (this.downloads != null) {
+			this.downloads.shutdownNow();
+		}
+		if (this.pendingContainer != null) {
+			this.pendingContainer.cancel(true);
+			this.pendingContainer = null;
+			this.pendingSettings = null;
+		}
 		try {
 			if (this.container != null) {
 				this.container.dispose();
@@ -150,91 +225,522 @@ public class DependencyResolver {
 		catch (Exception e) {
 			// swallow
 		}
+		// Someone might still have a reference to this instance (e.g. a PathResolver),
+		// so make sure it does not keep the container and its caches alive
+		this.container = null;
+		this.projectBuilder = null;
+		this.repositorySystem = null;
+		this.artifactResolver = null;
+		this.localRepositoryManagerFactory = null;
+		this.trustedRepositoryManagerFactory = null;
+		this.settings = null;
+		this.downloads = null;
+		if (this.indexes != null) {
+			this.indexes.clear();
+		}
+		if (this.graphs != null) {
+			this.graphs.clear();
+		}
+		if (this.embedded != null) {
+			this.embedded.clear();
+		}
+		if (this.reports != null) {
+			this.reports.clear();
+		}
 	}
 
 	private DependencyResolver() {
 	}
 
+	/**
+	 * Start creating the container and reading the Maven settings in the background, so
+	 * they are ready (or nearly) by the time the first dependencies are requested. The
+	 * two are independent of each other and of anything the caller needs to do to work
+	 * out what to resolve (e.g. finding the pom and loading properties). If this method
+	 * is not called, the same work is done on demand.
+	 *
+	 * @param properties the properties (only {@link #THIN_ROOT} is used)
+	 */
+	public void bootstrap(Properties properties) {
+		synchronized (lock) {
+			if (this.container != null || this.pendingContainer != null) {
+				return;
+			}
+			final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+			final String root = properties.getProperty(THIN_ROOT);
+			ExecutorService executor = Executors.newFixedThreadPool(2, threads("thin-bootstrap-"));
+			this.pendingContainer = executor.submit(() -> createContainer(classLoader));
+			this.pendingSettings = executor.submit(() -> readSettings(root));
+			// The threads go away when the work is done
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Collect statistics in the report provided for all resolutions that start before
+	 * it is removed.
+	 *
+	 * @param report the report
+	 */
+	void addReport(ResolutionReport report) {
+		this.reports.add(report);
+	}
+
+	void removeReport(ResolutionReport report) {
+		this.reports.remove(report);
+	}
+
 	private void initialize(Properties properties) {
 		if (this.container == null) {
 			synchronized (lock) {
 				if (this.container == null) {
-					ClassWorld classWorld = new ClassWorld("plexus.core",
-							Thread.currentThread().getContextClassLoader());
-					ContainerConfiguration config = new DefaultContainerConfiguration().setClassWorld(classWorld)
-							.setRealm(classWorld.getClassRealm("plexus.core"))
-							.setClassPathScanning(PlexusConstants.SCANNING_INDEX).setAutoWiring(true).setName("maven");
 					PlexusContainer container;
-					try {
-						container = new DefaultPlexusContainer(config, new AetherModule(),
-								new DependencyResolutionModule());
-						localRepositoryManagerFactory = container.lookup(LocalRepositoryManagerFactory.class,
-								"enhanced");
-						// container.addComponent(
-						// new ClassRealmManager((MutablePlexusContainer) container, new
-						// DefaultBeanLocator()),
-						// ClassRealmManager.class.getName());
-						projectBuilder = container.lookup(ProjectBuilder.class);
-						repositorySystem = container.lookup(RepositorySystem.class);
+					MavenSettings settings;
+					if (this.pendingContainer == null) {
+						container = createContainer(Thread.currentThread().getContextClassLoader());
+						settings = readSettings(properties.getProperty(THIN_ROOT));
 					}
-					catch (Exception e) {
-						throw new IllegalStateException("Cannot create container", e);
+					else {
+						try {
+							// Always join in the same order, so a failure is reported the same
+							// way whichever task finishes first
+							container = join(this.pendingContainer);
+							settings = join(this.pendingSettings);
+						}
+						finally {
+							this.pendingContainer = null;
+							this.pendingSettings = null;
+						}
 					}
+					this.settings = settings;
 					this.container = container;
-					this.settings = new MavenSettingsReader(properties.getProperty(THIN_ROOT)).readSettings();
 				}
 			}
 		}
 	}
 
+	private static MavenSettings readSettings(String root) {
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("settings", root)) {
+			return new MavenSettingsReader(root).readSettings();
+		}
+	}
+
+	private PlexusContainer createContainer(ClassLoader classLoader) {
+		ClassWorld classWorld = new ClassWorld("plexus.core", classLoader);
+		ContainerConfiguration config = new DefaultContainerConfiguration().setClassWorld(classWorld)
+				.setRealm(classWorld.getClassRealm("plexus.core"))
+				.setClassPathScanning(PlexusConstants.SCANNING_INDEX).setAutoWiring(true).setName("maven");
+		PlexusContainer container;
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("container", null)) {
+			container = new DefaultPlexusContainer(config, new AetherModule(), new DependencyResolutionModule());
+			localRepositoryManagerFactory = container.lookup(LocalRepositoryManagerFactory.class, "enhanced");
+			trustedRepositoryManagerFactory = container.lookup(LocalRepositoryManagerFactory.class, "simple");
+			// container.addComponent(
+			// new ClassRealmManager((MutablePlexusContainer) container, new
+			// DefaultBeanLocator()),
+			// ClassRealmManager.class.getName());
+			projectBuilder = container.lookup(ProjectBuilder.class);
+			repositorySystem = container.lookup(RepositorySystem.class);
+			artifactResolver = container.lookup(ArtifactResolver.class);
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot create container", e);
+		}
+		return container;
+	}
+
+	private <T> T join(Future<T> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while creating container", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Cannot create container", e.getCause());
+		}
+	}
+
 	public List<Dependency> dependencies(Resource resource) {
 		return dependencies(resource, new Properties());
 	}
 
 	public List<Dependency> dependencies(final Resource resource, final Properties properties) {
-		if ("true".equals(properties.getProperty("computed", "false"))) {
+		if (isComputed(properties)) {
 			log.info("Dependencies are pre-computed in properties");
 			Model model = new Model();
 			model = ThinPropertiesModelProcessor.process(model, properties);
 			return aetherDependencies(model.getDependencies(), properties);
 		}
 		initialize(properties);
+		ResolvedGraph graph = build(resource, properties);
+		if (isFlagSet(properties, THIN_DELTA) && !properties.containsKey(ThinJarLauncher.THIN_PROFILE)) {
+			// Keep the base graph so that profiles can be resolved on top of it later
+			String key = key(resource, properties);
+			this.graphs.put(key, graph);
+			if (graph.isPersistable()) {
+				graph.save(localRepositoryPath(properties, settings), key);
+			}
+		}
+		return log(graph.getDependencies());
+	}
+
+	/**
+	 * Resolve the dependencies of a profile, given the properties of the base (no
+	 * profiles) and the profile. If the profile only adds dependencies or exclusions,
+	 * the result is computed on top of the graph for the base, which is cached, instead
+	 * of building the whole project again.
+	 *
+	 * @param resource the pom
+	 * @param base the properties without any profiles
+	 * @param properties the properties with the profiles
+	 * @return the resolved dependencies
+	 */
+	public List<Dependency> dependencies(final Resource resource, final Properties base,
+			final Properties properties) {
+		ResolvedGraph.Delta delta = isComputed(base) || isComputed(properties) ? null
+				: ResolvedGraph.delta(base, properties);
+		if (delta == null) {
+			return dependencies(resource, properties);
+		}
+		initialize(properties);
+		ResolvedGraph graph = graph(resource, base, true);
+		if (!delta.isApplicable(graph)) {
+			log.info("Profile activates a Maven profile in the project, computing all dependencies");
+			return dependencies(resource, properties);
+		}
+		try {
+			log.info("Computing profile dependencies on top of base dependency graph");
+			DefaultRepositorySystemSession session = createSession(properties);
+			List<RemoteRepository> repositories = repositorySystem.newResolutionRepositories(session,
+					graph.getRepositories());
+			List<Dependency> output = null;
+			if (delta.isAdditive(graph)) {
+				output = graph.merge(collect(session, delta.additions(graph), graph.getManaged(), repositories));
+			}
+			if (output == null) {
+				// Overlaps with the base graph, so the whole thing has to be mediated again
+				output = collect(session, delta.apply(graph), graph.getManaged(), repositories);
+			}
+			output = runtime(resolve(session, output, repositories));
+			saveIndexes();
+			return log(output);
+		}
+		catch (RepositoryException e) {
+			throw new IllegalStateException("Cannot resolve dependencies", e);
+		}
+	}
+
+	private boolean isComputed(Properties properties) {
+		return "true".equals(properties.getProperty("computed", "false"));
+	}
+
+	/**
+	 * Resolve the dependency graph of a pom. If the graph is cached it is kept in
+	 * memory, so that later calls with the same pom and properties (e.g. a parent shared
+	 * by several children) can re-use it, and if {@link #THIN_DELTA} is set it is also
+	 * saved in the local repository.
+	 */
+	ResolvedGraph graph(Resource resource, Properties properties, boolean cache) {
+		if (isComputed(properties)) {
+			return new ResolvedGraph(dependencies(resource, properties));
+		}
+		initialize(properties);
+		if (!cache) {
+			return build(resource, properties);
+		}
+		String key = key(resource, properties);
+		ResolvedGraph graph = this.graphs.get(key);
+		if (graph == null) {
+			boolean persistent = isFlagSet(properties, THIN_DELTA);
+			File repository = localRepositoryPath(properties, settings);
+			graph = persistent ? ResolvedGraph.load(repository, key) : null;
+			if (graph == null) {
+				graph = build(resource, properties);
+				if (persistent && graph.isPersistable()) {
+					graph.save(repository, key);
+				}
+			}
+			this.graphs.put(key, graph);
+		}
+		return graph;
+	}
+
+	private String key(Resource resource, Properties properties) {
+		try {
+			return ResolvedGraph.key(resource, properties,
+					aetherRepositories(settings, createSession(properties), properties));
+		}
+		catch (NoLocalRepositoryManagerException e) {
+			throw new IllegalStateException("Cannot create repository session", e);
+		}
+	}
+
+	/**
+	 * Merge the dependencies of a child into the dependencies of its parent. The direct
+	 * dependencies of the child are collected again with the dependency management of
+	 * the parent (before its own), the same way that a profile is resolved on top of a
+	 * base graph, so a version that the parent manages wins, and the transitive
+	 * dependencies are the ones of that version. If the result disagrees with the
+	 * parent graph on any version, the direct dependencies of both are collected
+	 * together (parent first), so they are mediated as a single graph.
+	 */
+	List<Dependency> merge(ResolvedGraph parent, ResolvedGraph child, Properties properties) {
+		try {
+			DefaultRepositorySystemSession session = createSession(properties);
+			Set<RemoteRepository> remotes = new LinkedHashSet<>(child.getRepositories());
+			remotes.addAll(parent.getRepositories());
+			List<RemoteRepository> repositories = repositorySystem.newResolutionRepositories(session,
+					new ArrayList<>(remotes));
+			List<Dependency> managed = new ArrayList<>(parent.getManaged());
+			managed.addAll(child.getManaged());
+			List<Dependency> output = parent.merge(runtime(collect(session, child.getDirect(), managed, repositories)));
+			if (output == null) {
+				log.info("Child dependencies conflict with parent, computing them together");
+				List<Dependency> direct = new ArrayList<>(parent.getDirect());
+				Set<String> ids = new HashSet<>();
+				for (Dependency dependency : direct) {
+					ids.add(ResolvedGraph.id(dependency.getArtifact()));
+				}
+				for (Dependency dependency : child.getDirect()) {
+					if (ids.add(ResolvedGraph.id(dependency.getArtifact()))) {
+						direct.add(dependency);
+					}
+				}
+				output = runtime(collect(session, direct, managed, repositories));
+			}
+			output = runtime(resolve(session, output, repositories));
+			saveIndexes();
+			return log(output);
+		}
+		catch (RepositoryException e) {
+			throw new IllegalStateException("Cannot resolve dependencies", e);
+		}
+	}
+
+	/**
+	 * Resolve the dependencies of a pom and collect the tree again with the version
+	 * mediation decisions recorded in it (the nodes that lost a conflict are kept,
+	 * instead of being removed), so it can be inspected.
+	 */
+	DependencyGraph tree(Resource resource, Properties properties) {
+		ResolutionReport report = new ResolutionReport();
+		addReport(report);
 		try {
+			ResolvedGraph graph = graph(resource, properties, false);
+			DependencyNode root;
+			if (isComputed(properties)) {
+				// Already flattened, so there is nothing to mediate
+				root = new DefaultDependencyNode((Dependency) null);
+				for (Dependency dependency : graph.getDependencies()) {
+					root.getChildren().add(new DefaultDependencyNode(dependency));
+				}
+			}
+			else {
+				DefaultRepositorySystemSession session = createSession(properties);
+				session.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, true);
+				session.setConfigProperty(DependencyManagerUtils.CONFIG_PROP_VERBOSE, true);
+				List<RemoteRepository> repositories = repositorySystem
+						.newResolutionRepositories(session, graph.getRepositories());
+				root = repositorySystem.collectDependencies(session,
+						new CollectRequest(graph.getDirect(), graph.getManaged(), repositories))
+						.getRoot();
+			}
+			return new DependencyGraph(root, graph.getDependencies(), report);
+		}
+		catch (RepositoryException e) {
+			throw new IllegalStateException("Cannot collect dependencies", e);
+		}
+		finally {
+			removeReport(report);
+		}
+	}
+
+	/**
+	 * The direct and managed dependencies and the repositories of a pom, without
+	 * resolving anything (so {@link ResolvedGraph#getDependencies()} is empty), e.g. for a
+	 * child that is going to be {@link #merge(ResolvedGraph, ResolvedGraph, Properties)
+	 * merged} with its parent, where the versions are not known until then.
+	 */
+	ResolvedGraph model(Resource resource, Properties properties) {
+		if (isComputed(properties)) {
+			return new ResolvedGraph(dependencies(resource, properties));
+		}
+		initialize(properties);
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("model", resource.getDescription())) {
+			ProjectBuildingRequest request = getProjectBuildingRequest(properties);
+			request.setResolveDependencies(false);
+			ProjectBuildingResult result = projectBuilder.build(new PropertiesModelSource(properties, resource),
+					request);
+			globals.remove();
+			return graph(result.getProject(), request.getRepositorySession(), Collections.<Dependency>emptyList(),
+					null);
+		}
+		catch (ProjectBuildingException | NoLocalRepositoryManagerException e) {
+			throw new IllegalStateException("Cannot build model", e);
+		}
+	}
+
+	private ResolvedGraph build(Resource resource, Properties properties) {
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("model", resource.getDescription())) {
 			log.info("Computing dependencies from pom and properties");
 			ProjectBuildingRequest request = getProjectBuildingRequest(properties);
 			request.setResolveDependencies(true);
-			synchronized (DependencyResolver.class) {
-				ProjectBuildingResult result = projectBuilder.build(new PropertiesModelSource(properties, resource),
-						request);
-				DependencyResolver.globals = null;
-				DependencyResolutionResult dependencies = result.getDependencyResolutionResult();
-				if (!dependencies.getUnresolvedDependencies().isEmpty()) {
-					StringBuilder builder = new StringBuilder();
-					for (Dependency dependency : dependencies.getUnresolvedDependencies()) {
-						List<Exception> errors = dependencies.getResolutionErrors(dependency);
-						for (Exception exception : errors) {
-							if (builder.length() > 0) {
-								builder.append("\n");
-							}
-							builder.append(exception.getMessage());
+			ProjectBuildingResult result = projectBuilder.build(new PropertiesModelSource(properties, resource),
+					request);
+			globals.remove();
+			DependencyResolutionResult dependencies = result.getDependencyResolutionResult();
+			if (!dependencies.getUnresolvedDependencies().isEmpty()) {
+				StringBuilder builder = new StringBuilder();
+				for (Dependency dependency : dependencies.getUnresolvedDependencies()) {
+					List<Exception> errors = dependencies.getResolutionErrors(dependency);
+					for (Exception exception : errors) {
+						if (builder.length() > 0) {
+							builder.append("\n");
 						}
+						builder.append(exception.getMessage());
 					}
-					throw new RuntimeException(builder.toString());
 				}
-				List<Dependency> output = runtime(dependencies.getDependencies());
-				if (log.isInfoEnabled()) {
-					for (Dependency dependency : output) {
-						log.info("Resolved: " + coordinates(dependency) + "=" + dependency.getArtifact().getFile());
-					}
-				}
-				return output;
+				throw new RuntimeException(builder.toString());
 			}
+			List<Dependency> output = runtime(dependencies.getDependencies());
+			saveIndexes();
+			return graph(result.getProject(), request.getRepositorySession(), output,
+					dependencies.getDependencyGraph());
 		}
 		catch (ProjectBuildingException | NoLocalRepositoryManagerException e) {
 			throw new IllegalStateException("Cannot build model", e);
 		}
 	}
 
+	private ResolvedGraph graph(MavenProject project, RepositorySystemSession session, List<Dependency> output,
+			DependencyNode root) {
+		ArtifactTypeRegistry types = session.getArtifactTypeRegistry();
+		List<Dependency> direct = new ArrayList<>();
+		for (org.apache.maven.model.Dependency dependency : project.getDependencies()) {
+			direct.add(RepositoryUtils.toDependency(dependency, types));
+		}
+		List<Dependency> managed = new ArrayList<>();
+		if (project.getDependencyManagement() != null) {
+			for (org.apache.maven.model.Dependency dependency : project.getDependencyManagement()
+					.getDependencies()) {
+				managed.add(RepositoryUtils.toDependency(dependency, types));
+			}
+		}
+		Set<String> profiles = new LinkedHashSet<>();
+		List<ResolvedGraph.Source> sources = new ArrayList<>();
+		boolean ranges = false;
+		for (MavenProject current = project; current != null; current = current.getParent()) {
+			for (org.apache.maven.model.Profile profile : current.getModel().getProfiles()) {
+				profiles.add(profile.getId());
+			}
+			sources.addAll(imports(current, session));
+			MavenProject parent = current.getParent();
+			if (parent != null) {
+				org.apache.maven.model.Parent declared = current.getOriginalModel().getParent();
+				ranges |= declared != null && ResolvedGraph.isRange(declared.getVersion());
+				File file = parent.getFile() != null ? parent.getFile()
+						: pom(session, parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+				sources.add(new ResolvedGraph.Source(
+						parent.getGroupId() + ":" + parent.getArtifactId() + ":" + parent.getVersion(), file));
+			}
+		}
+		ranges |= root != null && hasRanges(root);
+		return new ResolvedGraph(direct, managed, new ArrayList<>(project.getRemoteProjectRepositories()), profiles,
+				output, sources, ranges);
+	}
+
+	private static boolean hasRanges(DependencyNode node) {
+		if (node.getVersionConstraint() != null && node.getVersionConstraint().getRange() != null) {
+			return true;
+		}
+		for (DependencyNode child : node.getChildren()) {
+			if (hasRanges(child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The boms imported by a project (as declared, so the coordinates are interpolated
+	 * here with the properties of the project).
+	 */
+	private List<ResolvedGraph.Source> imports(MavenProject project, RepositorySystemSession session) {
+		List<ResolvedGraph.Source> list = new ArrayList<>();
+		org.apache.maven.model.DependencyManagement management = project.getOriginalModel()
+				.getDependencyManagement();
+		if (management == null) {
+			return list;
+		}
+		Properties values = new Properties();
+		values.putAll(project.getProperties());
+		values.putAll(session.getUserProperties());
+		values.setProperty("project.groupId", project.getGroupId());
+		values.setProperty("project.version", project.getVersion());
+		PropertyPlaceholderHelper helper = new PropertyPlaceholderHelper("${", "}");
+		for (org.apache.maven.model.Dependency dependency : management.getDependencies()) {
+			if ("import".equals(dependency.getScope())) {
+				String group = helper.replacePlaceholders(dependency.getGroupId(), values);
+				String artifact = helper.replacePlaceholders(dependency.getArtifactId(), values);
+				String version = helper.replacePlaceholders(String.valueOf(dependency.getVersion()), values);
+				list.add(new ResolvedGraph.Source(group + ":" + artifact + ":" + version,
+						pom(session, group, artifact, version)));
+			}
+		}
+		return list;
+	}
+
+	private File pom(RepositorySystemSession session, String group, String artifact, String version) {
+		return new File(session.getLocalRepository().getBasedir(), session.getLocalRepositoryManager()
+				.getPathForLocalArtifact(new DefaultArtifact(group, artifact, "pom", version)));
+	}
+
+	private List<Dependency> collect(RepositorySystemSession session, List<Dependency> dependencies,
+			List<Dependency> managed, List<RemoteRepository> repositories) throws DependencyCollectionException {
+		CollectRequest request = new CollectRequest(dependencies, managed, repositories);
+		CollectResult result = repositorySystem.collectDependencies(session, request);
+		PreorderNodeListGenerator nodes = new PreorderNodeListGenerator();
+		result.getRoot().accept(nodes);
+		return nodes.getDependencies(true);
+	}
+
+	private List<Dependency> resolve(RepositorySystemSession session, List<Dependency> dependencies,
+			List<RemoteRepository> repositories) throws ArtifactResolutionException {
+		List<ArtifactRequest> requests = new ArrayList<>();
+		for (Dependency dependency : dependencies) {
+			if (dependency.getArtifact().getFile() == null) {
+				requests.add(new ArtifactRequest(dependency.getArtifact(), repositories, null));
+			}
+		}
+		if (requests.isEmpty()) {
+			return dependencies;
+		}
+		Map<String, Artifact> resolved = new HashMap<>();
+		for (ArtifactResult result : repositorySystem.resolveArtifacts(session, requests)) {
+			resolved.put(ResolvedGraph.id(result.getRequest().getArtifact()), result.getArtifact());
+		}
+		List<Dependency> list = new ArrayList<>();
+		for (Dependency dependency : dependencies) {
+			Artifact artifact = resolved.get(ResolvedGraph.id(dependency.getArtifact()));
+			list.add(artifact == null ? dependency : dependency.setArtifact(artifact));
+		}
+		return list;
+	}
+
+	private List<Dependency> log(List<Dependency> output) {
+		if (log.isInfoEnabled()) {
+			for (Dependency dependency : output) {
+				log.info("Resolved: " + coordinates(dependency) + "=" + dependency.getArtifact().getFile());
+			}
+		}
+		return output;
+	}
+
 	private List<Dependency> aetherDependencies(List<org.apache.maven.model.Dependency> dependencies,
 			Properties properties) {
 		List<Dependency> list = new ArrayList<>();
@@ -476,7 +982,22 @@ public class DependencyResolver {
 			throws NoLocalRepositoryManagerException {
 		DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
 		LocalRepository repository = localRepository(properties);
-		session.setLocalRepositoryManager(localRepositoryManagerFactory.newInstance(session, repository));
+		// The simple manager does not check _remote.repositories, so any file in the
+		// repository is used whichever remote repository it came from
+		boolean trusted = isFlagSet(properties, THIN_LOCAL_TRUST);
+		LocalRepositoryManager manager = (trusted ? trustedRepositoryManagerFactory : localRepositoryManagerFactory)
+				.newInstance(session, repository);
+		if (isFlagSet(properties, THIN_INDEX)) {
+			manager = new IndexedLocalRepositoryManager(manager, index(repository.getBasedir()), trusted);
+		}
+		session.setLocalRepositoryManager(manager);
+		String hybrid = properties.getProperty(THIN_HYBRID);
+		if (StringUtils.hasText(hybrid)) {
+			// Libraries embedded in the archive satisfy the same coordinates directly
+			File archive = new File(hybrid).getAbsoluteFile();
+			session.setWorkspaceReader(this.embedded.computeIfAbsent(archive,
+					file -> EmbeddedWorkspaceReader.load(file, repository.getBasedir())));
+		}
 		applySettings(session);
 		ProxySelector existing = session.getProxySelector();
 		if (existing == null || !(existing instanceof CompositeProxySelector)) {
@@ -485,13 +1006,86 @@ public class DependencyResolver {
 					: new CompositeProxySelector(Arrays.asList(existing, fallback));
 			session.setProxySelector(selector);
 		}
-		if (properties.containsKey(THIN_OFFLINE) && !"false".equals(properties.getProperty(THIN_OFFLINE))) {
+		if (isFlagSet(properties, THIN_OFFLINE) || trusted) {
 			session.setOffline(true);
 		}
+		if (trusted) {
+			session.setUpdatePolicy(RepositoryPolicy.UPDATE_POLICY_NEVER);
+		}
 		session.setCache(new DefaultRepositoryCache());
+		if ("jdk".equals(properties.getProperty(THIN_TRANSPORT))) {
+			session.setConfigProperty(JdkHttpTransporterFactory.ENABLED, true);
+		}
+		for (ResolutionReport report : this.reports) {
+			session.setRepositoryListener(ChainedRepositoryListener.newInstance(session.getRepositoryListener(),
+					report.getRepositoryListener()));
+			session.setTransferListener(
+					ChainedTransferListener.newInstance(session.getTransferListener(), report.getTransferListener()));
+		}
+		if (LaunchEvents.isAvailable()) {
+			session.setRepositoryListener(ChainedRepositoryListener.newInstance(session.getRepositoryListener(),
+					new ArtifactEventListener()));
+		}
+		if (isFlagSet(properties, THIN_PIPELINE)) {
+			DownloadPipeline pipeline = new DownloadPipeline(downloads(), artifactResolver);
+			pipeline.register(session);
+			session.setRepositoryListener(
+					ChainedRepositoryListener.newInstance(session.getRepositoryListener(), pipeline));
+		}
 		return session;
 	}
 
+	/**
+	 * A thread pool for background work that belongs to this resolver and goes away with
+	 * it (the same one that downloads are prefetched on).
+	 */
+	Executor executor() {
+		return downloads();
+	}
+
+	private synchronized ExecutorService downloads() {
+		if (this.downloads == null) {
+			this.downloads = Executors.newFixedThreadPool(DOWNLOAD_THREADS, threads("thin-download-"));
+		}
+		return this.downloads;
+	}
+
+	static ThreadFactory threads(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	private boolean isFlagSet(Properties properties, String name) {
+		return properties.containsKey(name) && !"false".equals(properties.getProperty(name));
+	}
+
+	private RepositoryIndex index(File repository) {
+		File key = repository.getAbsoluteFile();
+		RepositoryIndex index = this.indexes.get(key);
+		if (index == null) {
+			index = RepositoryIndex.load(key);
+			RepositoryIndex existing = this.indexes.putIfAbsent(key, index);
+			if (existing != null) {
+				index = existing;
+			}
+		}
+		return index;
+	}
+
+	private void saveIndexes() {
+		for (RepositoryIndex index : this.indexes.values()) {
+			index.save();
+		}
+	}
+
 	private void applySettings(DefaultRepositorySystemSession session) {
 		MavenSettingsReader.applySettings(settings, session);
 	}
@@ -528,7 +1122,7 @@ public class DependencyResolver {
 
 	public Model readModel(final Resource resource, final Properties properties) {
 		initialize(properties);
-		try {
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("model", resource.getDescription())) {
 			ProjectBuildingRequest request = getProjectBuildingRequest(properties);
 			request.setResolveDependencies(false);
 			ProjectBuildingResult result = projectBuilder.build(new PropertiesModelSource(properties, resource),
@@ -561,6 +1155,7 @@ public class DependencyResolver {
 			DefaultRepositorySystemSession session = createSession(properties);
 			List<ArtifactRequest> artifactRequests = getArtifactRequests(dependencies, session, properties);
 			List<ArtifactResult> result = this.repositorySystem.resolveArtifacts(session, artifactRequests);
+			saveIndexes();
 			return result;
 		}
 		catch (Exception ex) {
@@ -581,7 +1176,7 @@ public class DependencyResolver {
 
 	// Package private for model resolution hack in ThinPropertiesModelProcessor
 	static Properties getGlobals() {
-		return globals;
+		return globals.get();
 	}
 
 	@SuppressWarnings("deprecation")
@@ -598,11 +1193,11 @@ public class DependencyResolver {
 
 		@Override
 		public InputStream getInputStream() throws IOException {
-			DependencyResolver.globals = properties;
+			globals.set(properties);
 			return new BufferedInputStream(resource.getInputStream()) {
 				@Override
 				public void close() throws IOException {
-					DependencyResolver.globals = null;
+					globals.remove();
 					super.close();
 				}
 			};
@@ -625,9 +1220,9 @@ class DependencyResolutionModule extends AbstractModule {
 		bind(ModelLocator.class).to(DefaultModelLocator.class).in(Singleton.class);
 		bind(ModelReader.class).to(DefaultModelReader.class).in(Singleton.class);
 		bind(ModelValidator.class).to(DefaultModelValidator.class).in(Singleton.class);
-		bind(RepositoryConnectorFactory.class).to(BasicRepositoryConnectorFactory.class).in(Singleton.class);
+		bind(RepositoryConnectorFactory.class).to(SingleFlightRepositoryConnectorFactory.class).in(Singleton.class);
 		bind(ArtifactDescriptorReader.class) //
-				.to(DefaultArtifactDescriptorReader.class).in(Singleton.class);
+				.to(PrefetchingArtifactDescriptorReader.class).in(Singleton.class);
 		bind(VersionResolver.class) //
 				.to(DefaultVersionResolver.class).in(Singleton.class);
 		bind(VersionRangeResolver.class) //
@@ -640,6 +1235,8 @@ class DependencyResolutionModule extends AbstractModule {
 				.in(Singleton.class);
 		bind(TransporterFactory.class).annotatedWith(Names.named("file")).to(FileTransporterFactory.class)
 				.in(Singleton.class);
+		bind(TransporterFactory.class).annotatedWith(Names.named("jdk")).to(JdkHttpTransporterFactory.class)
+				.in(Singleton.class);
 	}
 
 	@Provides
@@ -662,11 +1259,12 @@ class DependencyResolutionModule extends AbstractModule {
 	@Provides
 	@Singleton
 	Set<TransporterFactory> provideTransporterFactories(@Named("file") TransporterFactory file,
-			@Named("http") TransporterFactory http) {
+			@Named("http") TransporterFactory http, @Named("jdk") TransporterFactory jdk) {
 		// Order is decided elsewhere (by priority)
 		Set<TransporterFactory> factories = new HashSet<TransporterFactory>();
 		factories.add(file);
 		factories.add(http);
+		factories.add(jdk);
 		return Collections.unmodifiableSet(factories);
 	}
 
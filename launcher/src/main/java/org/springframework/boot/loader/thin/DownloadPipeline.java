@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.impl.ArtifactResolver;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.util.artifact.ArtifactIdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads artifacts in the background while the dependency graph is still being
+ * collected. Each artifact is queued as soon as its descriptor has been read (so its
+ * version is settled), and when the resolution phase gets to an artifact that is still
+ * downloading it waits for it instead of starting again. Only the first version of each
+ * artifact that is seen is prefetched, since the others usually lose in conflict
+ * resolution, and snapshots are left to the resolution phase because their metadata
+ * might be updated.
+ */
+class DownloadPipeline extends AbstractRepositoryListener {
+
+	private static final Logger log = LoggerFactory.getLogger(DownloadPipeline.class);
+
+	private static final ThreadLocal<Boolean> prefetching = new ThreadLocal<>();
+
+	private final ExecutorService executor;
+
+	private final ArtifactResolver resolver;
+
+	private final Map<String, Future<?>> downloads = new ConcurrentHashMap<>();
+
+	private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+	public DownloadPipeline(ExecutorService executor, ArtifactResolver resolver) {
+		this.executor = executor;
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Find the pipeline for a session (if there is one).
+	 * @param session the current session
+	 * @return the pipeline or null
+	 */
+	public static DownloadPipeline get(RepositorySystemSession session) {
+		return (DownloadPipeline) session.getData().get(DownloadPipeline.class);
+	}
+
+	public void register(RepositorySystemSession session) {
+		session.getData().set(DownloadPipeline.class, this);
+	}
+
+	public void prefetch(final RepositorySystemSession session, final Artifact artifact,
+			final List<RemoteRepository> repositories, final String context) {
+		if (artifact.isSnapshot() || "pom".equals(artifact.getExtension())
+				|| !this.seen.add(ArtifactIdUtils.toVersionlessId(artifact))) {
+			return;
+		}
+		final String key = ArtifactIdUtils.toId(artifact);
+		if (log.isDebugEnabled()) {
+			log.debug("Prefetching: " + key);
+		}
+		this.downloads.put(key, this.executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				prefetching.set(true);
+				try {
+					resolver.resolveArtifact(session, new ArtifactRequest(artifact, repositories, context));
+				}
+				catch (Exception e) {
+					// The resolution phase will try again and report the error
+					log.debug("Cannot prefetch: " + key, e);
+				}
+				finally {
+					prefetching.remove();
+				}
+			}
+		}));
+	}
+
+	@Override
+	public void artifactResolving(RepositoryEvent event) {
+		if (prefetching.get() != null) {
+			return;
+		}
+		Future<?> download = this.downloads.get(ArtifactIdUtils.toId(event.getArtifact()));
+		if (download != null) {
+			try {
+				download.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				// ignore
+			}
+		}
+	}
+
+}
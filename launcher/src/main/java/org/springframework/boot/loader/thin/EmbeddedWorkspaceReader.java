@@ -0,0 +1,280 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.WorkspaceReader;
+import org.eclipse.aether.repository.WorkspaceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@link WorkspaceReader} for the libraries embedded in a fat (or partly fat) archive
+ * under <code>BOOT-INF/lib</code>. An embedded jar (and the pom inside it, if there is
+ * one) satisfies a dependency with exactly the same coordinates, so it is never
+ * downloaded, and anything else is resolved as usual. The libraries are identified by
+ * their <code>pom.properties</code>, or failing that by their file names, and the index
+ * and the jars that are used are extracted once per archive into the local repository
+ * (under {@link #DIRECTORY}).
+ */
+class EmbeddedWorkspaceReader implements WorkspaceReader {
+
+	private static final Logger log = LoggerFactory.getLogger(EmbeddedWorkspaceReader.class);
+
+	static final String DIRECTORY = ".thin-embedded";
+
+	private static final String LIB = "BOOT-INF/lib/";
+
+	private static final String INDEX = "index.properties";
+
+	private final WorkspaceRepository repository = new WorkspaceRepository("embedded");
+
+	private final File archive;
+
+	private final File directory;
+
+	/**
+	 * Entry names keyed by "group:artifact:version", or ":artifact:version" if the
+	 * group is not known.
+	 */
+	private final Properties index;
+
+	private final Map<String, File> files = new ConcurrentHashMap<>();
+
+	private EmbeddedWorkspaceReader(File archive, File directory, Properties index) {
+		this.archive = archive;
+		this.directory = directory;
+		this.index = index;
+	}
+
+	/**
+	 * Create a reader for the archive provided, re-using the index from a previous run
+	 * if the archive has not changed.
+	 * @param archive a jar file
+	 * @param repository the local repository
+	 * @return a reader (possibly empty if the archive has no embedded libraries)
+	 */
+	static EmbeddedWorkspaceReader load(File archive, File repository) {
+		File directory = new File(new File(repository, DIRECTORY), key(archive));
+		File file = new File(directory, INDEX);
+		Properties index = new Properties();
+		if (file.exists()) {
+			try (InputStream stream = Files.newInputStream(file.toPath())) {
+				index.load(stream);
+				return new EmbeddedWorkspaceReader(archive, directory, index);
+			}
+			catch (IOException e) {
+				index.clear();
+			}
+		}
+		try (JarFile jar = new JarFile(archive)) {
+			for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+				JarEntry entry = entries.nextElement();
+				if (entry.getName().startsWith(LIB) && entry.getName().endsWith(".jar")) {
+					index.setProperty(identify(jar, entry), entry.getName());
+				}
+			}
+		}
+		catch (IOException e) {
+			log.info("Cannot index embedded libraries: " + archive + " (" + e + ")");
+			return new EmbeddedWorkspaceReader(archive, directory, index);
+		}
+		write(file, stream -> index.store(stream, "Embedded libraries in " + archive));
+		log.info("Indexed " + index.size() + " embedded libraries in: " + archive);
+		return new EmbeddedWorkspaceReader(archive, directory, index);
+	}
+
+	@Override
+	public WorkspaceRepository getRepository() {
+		return this.repository;
+	}
+
+	@Override
+	public File findArtifact(Artifact artifact) {
+		if (StringUtils.hasLength(artifact.getClassifier())) {
+			return null;
+		}
+		String name = entry(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+		if (name == null) {
+			return null;
+		}
+		if ("jar".equals(artifact.getExtension())) {
+			return extract(name, null);
+		}
+		if ("pom".equals(artifact.getExtension())) {
+			return extract(name, "META-INF/maven/" + artifact.getGroupId() + "/" + artifact.getArtifactId() + "/pom.xml");
+		}
+		return null;
+	}
+
+	@Override
+	public List<String> findVersions(Artifact artifact) {
+		List<String> versions = new ArrayList<>();
+		String prefix = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":";
+		for (String key : this.index.stringPropertyNames()) {
+			if (key.startsWith(prefix)) {
+				versions.add(key.substring(prefix.length()));
+			}
+		}
+		return versions.isEmpty() ? Collections.<String>emptyList() : versions;
+	}
+
+	private String entry(String group, String artifact, String version) {
+		String name = this.index.getProperty(group + ":" + artifact + ":" + version);
+		if (name == null) {
+			// Identified only by its file name
+			name = this.index.getProperty(":" + artifact + ":" + version);
+		}
+		return name;
+	}
+
+	/**
+	 * Extract a library (or a file from inside it) so that it can be used as a
+	 * resolved artifact.
+	 */
+	private File extract(String name, String path) {
+		String target = name.substring(LIB.length()) + (path == null ? "" : ".pom");
+		File file = this.files.get(target);
+		if (file != null) {
+			return file;
+		}
+		file = new File(this.directory, target);
+		if (!file.exists()) {
+			try (JarFile jar = new JarFile(this.archive)) {
+				JarEntry entry = jar.getJarEntry(name);
+				if (entry == null) {
+					return null;
+				}
+				try (InputStream input = jar.getInputStream(entry)) {
+					if (path == null) {
+						write(file, output -> copy(input, output));
+					}
+					else if (!extract(new JarInputStream(input), path, file)) {
+						return null;
+					}
+				}
+			}
+			catch (IOException e) {
+				log.info("Cannot extract embedded library: " + name + " (" + e + ")");
+				return null;
+			}
+			if (!file.exists()) {
+				return null;
+			}
+		}
+		this.files.put(target, file);
+		return file;
+	}
+
+	private boolean extract(JarInputStream input, String path, File file) throws IOException {
+		for (JarEntry entry = input.getNextJarEntry(); entry != null; entry = input.getNextJarEntry()) {
+			if (path.equals(entry.getName())) {
+				write(file, output -> copy(input, output));
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String identify(JarFile jar, JarEntry entry) throws IOException {
+		String file = entry.getName().substring(LIB.length());
+		file = file.substring(0, file.length() - ".jar".length());
+		List<Properties> candidates = new ArrayList<>();
+		try (JarInputStream input = new JarInputStream(jar.getInputStream(entry))) {
+			for (JarEntry nested = input.getNextJarEntry(); nested != null; nested = input.getNextJarEntry()) {
+				String name = nested.getName();
+				if (name.startsWith("META-INF/maven/") && name.endsWith("/pom.properties")) {
+					Properties properties = new Properties();
+					properties.load(input);
+					candidates.add(properties);
+				}
+			}
+		}
+		for (Properties properties : candidates) {
+			String artifactId = properties.getProperty("artifactId");
+			String version = properties.getProperty("version");
+			// A shaded jar can contain several, so pick the one that matches the file
+			if (candidates.size() == 1 || file.equals(artifactId + "-" + version)) {
+				return properties.getProperty("groupId") + ":" + artifactId + ":" + version;
+			}
+		}
+		int index = versionIndex(file);
+		if (index < 0) {
+			return ":" + file + ":";
+		}
+		return ":" + file.substring(0, index) + ":" + file.substring(index + 1);
+	}
+
+	private static int versionIndex(String file) {
+		for (int i = 0; i < file.length() - 1; i++) {
+			if (file.charAt(i) == '-' && Character.isDigit(file.charAt(i + 1))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static String key(File archive) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update((archive.getAbsolutePath() + ":" + archive.length() + ":" + archive.lastModified())
+					.getBytes(StandardCharsets.UTF_8));
+			return LauncherUtils.hex(digest.digest());
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot compute key for: " + archive, e);
+		}
+	}
+
+	private static void copy(InputStream input, OutputStream output) throws IOException {
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = input.read(buffer)) >= 0) {
+			output.write(buffer, 0, count);
+		}
+	}
+
+	private static void write(File file, LauncherUtils.Content content) {
+		try {
+			LauncherUtils.write(file, content);
+		}
+		catch (IOException e) {
+			log.info("Cannot write: " + file + " (" + e.getMessage() + ")");
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalMetadataRegistration;
+import org.eclipse.aether.repository.LocalMetadataRequest;
+import org.eclipse.aether.repository.LocalMetadataResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.util.artifact.ArtifactIdUtils;
+
+/**
+ * A {@link LocalRepositoryManager} that answers presence checks for released artifacts
+ * from a {@link RepositoryIndex} and only falls back to the file system (and the
+ * <code>_remote.repositories</code> tracking files) for artifacts it has not seen
+ * before. Snapshots and metadata always go to the delegate.
+ * <p>
+ * A hit is only trusted if the file is still there and, unless the delegate trusts
+ * every file in the repository anyway (<code>thin.local.trust</code>), if it was
+ * installed locally or came from one of the repositories in the request (the same rule
+ * as the <code>_remote.repositories</code> check in the delegate). Anything else goes to
+ * the delegate. The index itself is only checked against the file system for a sample
+ * of entries when it is loaded.
+ */
+class IndexedLocalRepositoryManager implements LocalRepositoryManager {
+
+	private final LocalRepositoryManager delegate;
+
+	private final RepositoryIndex index;
+
+	private final boolean trusted;
+
+	/**
+	 * @param delegate the manager to fall back to
+	 * @param index the index of the local repository
+	 * @param trusted true if the delegate does not check where the files came from
+	 */
+	public IndexedLocalRepositoryManager(LocalRepositoryManager delegate, RepositoryIndex index,
+			boolean trusted) {
+		this.delegate = delegate;
+		this.index = index;
+		this.trusted = trusted;
+	}
+
+	@Override
+	public LocalRepository getRepository() {
+		return this.delegate.getRepository();
+	}
+
+	@Override
+	public String getPathForLocalArtifact(Artifact artifact) {
+		return this.delegate.getPathForLocalArtifact(artifact);
+	}
+
+	@Override
+	public String getPathForRemoteArtifact(Artifact artifact, RemoteRepository repository, String context) {
+		return this.delegate.getPathForRemoteArtifact(artifact, repository, context);
+	}
+
+	@Override
+	public String getPathForLocalMetadata(Metadata metadata) {
+		return this.delegate.getPathForLocalMetadata(metadata);
+	}
+
+	@Override
+	public String getPathForRemoteMetadata(Metadata metadata, RemoteRepository repository, String context) {
+		return this.delegate.getPathForRemoteMetadata(metadata, repository, context);
+	}
+
+	@Override
+	public LocalArtifactResult find(RepositorySystemSession session, LocalArtifactRequest request) {
+		Artifact artifact = request.getArtifact();
+		if (artifact.isSnapshot()) {
+			return this.delegate.find(session, request);
+		}
+		String key = ArtifactIdUtils.toId(artifact);
+		RepositoryIndex.Record record = this.index.find(key);
+		if (record != null) {
+			File file = new File(this.index.getRepository(), record.getPath());
+			RemoteRepository origin = origin(record, request);
+			if (file.exists() && (this.trusted || "".equals(record.getOrigin()) || origin != null)) {
+				LocalArtifactResult result = new LocalArtifactResult(request);
+				result.setFile(file);
+				result.setRepository(origin);
+				result.setAvailable(true);
+				return result;
+			}
+		}
+		LocalArtifactResult result = this.delegate.find(session, request);
+		if (result.isAvailable()) {
+			this.index.add(key, getPathForLocalArtifact(artifact), id(result.getRepository()));
+		}
+		return result;
+	}
+
+	private static RemoteRepository origin(RepositoryIndex.Record record, LocalArtifactRequest request) {
+		for (RemoteRepository repository : request.getRepositories()) {
+			if (repository.getId().equals(record.getOrigin())) {
+				return repository;
+			}
+		}
+		return null;
+	}
+
+	private static String id(ArtifactRepository repository) {
+		return repository instanceof RemoteRepository ? repository.getId() : "";
+	}
+
+	@Override
+	public void add(RepositorySystemSession session, LocalArtifactRegistration request) {
+		this.delegate.add(session, request);
+		Artifact artifact = request.getArtifact();
+		if (!artifact.isSnapshot()) {
+			this.index.add(ArtifactIdUtils.toId(artifact), getPathForLocalArtifact(artifact),
+					id(request.getRepository()));
+		}
+	}
+
+	@Override
+	public LocalMetadataResult find(RepositorySystemSession session, LocalMetadataRequest request) {
+		return this.delegate.find(session, request);
+	}
+
+	@Override
+	public void add(RepositorySystemSession session, LocalMetadataRegistration request) {
+		this.delegate.add(session, request);
+	}
+
+}
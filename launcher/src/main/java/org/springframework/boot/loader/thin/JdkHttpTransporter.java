@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.aether.ConfigurationProperties;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.AuthenticationContext;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.AbstractTransporter;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.TransportTask;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.util.ConfigUtils;
+
+/**
+ * A transporter for http and https repositories using {@link HttpURLConnection}, which
+ * re-uses connections from the JDK keep-alive cache as long as every response body is
+ * read to the end and closed. Https repositories behind a proxy that needs
+ * authentication are not supported (the default transporter is used instead).
+ *
+ * @see JdkHttpTransporterFactory
+ */
+class JdkHttpTransporter extends AbstractTransporter {
+
+	private static final Pattern CONTENT_RANGE = Pattern.compile("\\s*bytes\\s+([0-9]+)\\s*-\\s*([0-9]+)\\s*/.*");
+
+	private final URI base;
+
+	private final Proxy proxy;
+
+	private final String authorization;
+
+	private final String proxyAuthorization;
+
+	private final Map<?, ?> headers;
+
+	private final int connectTimeout;
+
+	private final int requestTimeout;
+
+	private final String userAgent;
+
+	JdkHttpTransporter(RepositorySystemSession session, RemoteRepository repository)
+			throws NoTransporterException {
+		if (!"http".equalsIgnoreCase(repository.getProtocol()) && !"https".equalsIgnoreCase(repository.getProtocol())) {
+			throw new NoTransporterException(repository);
+		}
+		String url = repository.getUrl();
+		try {
+			this.base = new URI(url.endsWith("/") ? url : url + "/").parseServerAuthority();
+		}
+		catch (URISyntaxException e) {
+			throw new NoTransporterException(repository, e.getMessage(), e);
+		}
+		org.eclipse.aether.repository.Proxy proxy = repository.getProxy();
+		this.proxy = proxy == null ? null
+				: new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(proxy.getHost(), proxy.getPort()));
+		this.authorization = basic(AuthenticationContext.forRepository(session, repository));
+		this.proxyAuthorization = basic(AuthenticationContext.forProxy(session, repository));
+		if (this.proxyAuthorization != null && "https".equalsIgnoreCase(repository.getProtocol())) {
+			// HttpURLConnection does not send our headers with the CONNECT for a tunnel
+			// (and would send them to the server once it is open), so leave it to the
+			// default transporter
+			throw new NoTransporterException(repository,
+					"Proxy authentication is not supported for https repositories");
+		}
+		this.headers = ConfigUtils.getMap(session, Collections.emptyMap(),
+				ConfigurationProperties.HTTP_HEADERS + "." + repository.getId(), ConfigurationProperties.HTTP_HEADERS);
+		this.connectTimeout = ConfigUtils.getInteger(session, ConfigurationProperties.DEFAULT_CONNECT_TIMEOUT,
+				ConfigurationProperties.CONNECT_TIMEOUT + "." + repository.getId(),
+				ConfigurationProperties.CONNECT_TIMEOUT);
+		this.requestTimeout = ConfigUtils.getInteger(session, ConfigurationProperties.DEFAULT_REQUEST_TIMEOUT,
+				ConfigurationProperties.REQUEST_TIMEOUT + "." + repository.getId(),
+				ConfigurationProperties.REQUEST_TIMEOUT);
+		this.userAgent = ConfigUtils.getString(session, ConfigurationProperties.DEFAULT_USER_AGENT,
+				ConfigurationProperties.USER_AGENT);
+	}
+
+	private static String basic(AuthenticationContext context) {
+		if (context == null) {
+			return null;
+		}
+		try {
+			String username = context.get(AuthenticationContext.USERNAME);
+			if (username == null) {
+				return null;
+			}
+			String password = context.get(AuthenticationContext.PASSWORD);
+			String token = username + ":" + (password == null ? "" : password);
+			return "Basic " + Base64.getEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Override
+	public int classify(Throwable error) {
+		if (error instanceof HttpStatusException
+				&& ((HttpStatusException) error).getStatus() == HttpURLConnection.HTTP_NOT_FOUND) {
+			return ERROR_NOT_FOUND;
+		}
+		return ERROR_OTHER;
+	}
+
+	@Override
+	protected void implPeek(PeekTask task) throws Exception {
+		HttpURLConnection connection = open(task, "HEAD");
+		check(connection);
+		drain(connection.getInputStream());
+	}
+
+	@Override
+	protected void implGet(GetTask task) throws Exception {
+		long resume = task.getDataFile() != null ? task.getResumeOffset() : 0;
+		HttpURLConnection connection = open(task, "GET");
+		Matcher range = null;
+		if (resume > 0) {
+			connection.setRequestProperty("Range", "bytes=" + resume + "-");
+			connection.setRequestProperty("Accept-Encoding", "identity");
+			int status = connection.getResponseCode();
+			if (status == 206) {
+				range = range(connection.getHeaderField("Content-Range"), resume);
+			}
+			if (status == 412 || status == 416 || status == 206 && range == null) {
+				// The partial file is older or longer than the remote one, or the server
+				// sent a different range than we asked for, so start again from scratch
+				if (status == 206) {
+					connection.disconnect();
+				}
+				else {
+					drain(connection.getErrorStream());
+				}
+				resume = 0;
+				connection = open(task, "GET");
+			}
+		}
+		check(connection);
+		long offset = 0;
+		long length = connection.getContentLengthLong();
+		if (range != null) {
+			offset = resume;
+			length = Long.parseLong(range.group(2)) + 1;
+		}
+		try {
+			// Closes the stream, which returns the connection to the pool if it was read
+			// to the end
+			utilGet(task, connection.getInputStream(), true, length, offset > 0);
+		}
+		catch (Exception e) {
+			connection.disconnect();
+			throw e;
+		}
+		checksums(task, connection.getHeaderField("ETag"));
+	}
+
+	private Matcher range(String header, long resume) {
+		if (header == null) {
+			return null;
+		}
+		Matcher matcher = CONTENT_RANGE.matcher(header);
+		if (!matcher.matches() || Long.parseLong(matcher.group(1)) != resume) {
+			return null;
+		}
+		return matcher;
+	}
+
+	@Override
+	protected void implPut(PutTask task) throws Exception {
+		HttpURLConnection connection = open(task, "PUT");
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(task.getDataLength());
+		utilPut(task, connection.getOutputStream(), true);
+		check(connection);
+		drain(connection.getInputStream());
+	}
+
+	@Override
+	protected void implClose() {
+	}
+
+	private HttpURLConnection open(TransportTask task, String method) throws IOException {
+		URI uri = this.base.resolve(task.getLocation());
+		HttpURLConnection connection = (HttpURLConnection) (this.proxy == null ? uri.toURL().openConnection()
+				: uri.toURL().openConnection(this.proxy));
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(this.connectTimeout);
+		connection.setReadTimeout(this.requestTimeout);
+		connection.setUseCaches(false);
+		connection.setRequestProperty("User-Agent", this.userAgent);
+		if (this.authorization != null) {
+			connection.setRequestProperty("Authorization", this.authorization);
+		}
+		if (this.proxyAuthorization != null && "http".equalsIgnoreCase(uri.getScheme())) {
+			connection.setRequestProperty("Proxy-Authorization", this.proxyAuthorization);
+		}
+		for (Map.Entry<?, ?> header : this.headers.entrySet()) {
+			if (header.getKey() instanceof String && header.getValue() instanceof String) {
+				connection.setRequestProperty((String) header.getKey(), (String) header.getValue());
+			}
+		}
+		return connection;
+	}
+
+	private void check(HttpURLConnection connection) throws IOException {
+		int status = connection.getResponseCode();
+		if (status >= 300) {
+			drain(connection.getErrorStream());
+			throw new HttpStatusException(status, connection.getResponseMessage() + " (" + status + ")");
+		}
+	}
+
+	private void checksums(GetTask task, String etag) {
+		// Nexus-style, ETag: "{SHA1{d40d68ba1f88d8e9b0040f175a6ff41928abd5e7}}"
+		if (etag != null) {
+			int start = etag.indexOf("SHA1{");
+			int end = etag.indexOf("}", start + 5);
+			if (start >= 0 && end > start) {
+				task.setChecksum("SHA-1", etag.substring(start + 5, end));
+			}
+		}
+	}
+
+	private void drain(InputStream stream) throws IOException {
+		// Reading to the end puts the connection back in the keep-alive cache
+		if (stream != null) {
+			try {
+				byte[] buffer = new byte[8192];
+				while (stream.read(buffer) >= 0) {
+					// discard
+				}
+			}
+			finally {
+				stream.close();
+			}
+		}
+	}
+
+	static class HttpStatusException extends IOException {
+
+		private final int status;
+
+		HttpStatusException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+
+		public int getStatus() {
+			return this.status;
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.util.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TransporterFactory} for http and https repositories based on the JDK
+ * {@link java.net.HttpURLConnection}. Connections are kept alive in a pool that is shared
+ * by the whole process, not just one session or one repository connector, so repeated
+ * transfers from the same host do not pay for new connections and TLS handshakes.
+ * Interrupted downloads are resumed with a range request. Only used if the session
+ * config property {@link #ENABLED} is true, otherwise the default transporter takes over.
+ */
+class JdkHttpTransporterFactory implements TransporterFactory {
+
+	private static final Logger log = LoggerFactory.getLogger(JdkHttpTransporterFactory.class);
+
+	/**
+	 * Session config property to switch on this transporter.
+	 */
+	public static final String ENABLED = "thin.transport.jdk";
+
+	@Override
+	public Transporter newInstance(RepositorySystemSession session, RemoteRepository repository)
+			throws NoTransporterException {
+		if (!ConfigUtils.getBoolean(session, false, ENABLED)) {
+			throw new NoTransporterException(repository);
+		}
+		JdkHttpTransporter transporter = new JdkHttpTransporter(session, repository);
+		if (log.isDebugEnabled()) {
+			log.debug("Using JDK http transport: " + repository.getUrl());
+		}
+		return transporter;
+	}
+
+	@Override
+	public float getPriority() {
+		// Higher than the default http transporter
+		return 10.0f;
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Everything the <code>ThinJarWrapper</code> needs to launch an application directly on a
+ * warm start: the class path, the main class and the class loader flags, plus
+ * fingerprints (length and last modified) of the inputs, so it can tell if it is still
+ * valid. Descriptors live in <code>${thin.root}/launch</code> in a file named after a
+ * hash of the archive, the working directory and the thin.* properties of the launch.
+ * The wrapper computes the same name with its own copy of {@link #key(String, String, Map)},
+ * so the two have to be kept in step.
+ */
+class LaunchDescriptor {
+
+	private static final Logger log = LoggerFactory.getLogger(LaunchDescriptor.class);
+
+	static final String DIRECTORY = "launch";
+
+	/**
+	 * Properties that only affect how the launcher is found or how much it logs, so they
+	 * are not part of the key.
+	 */
+	private static final String[] IGNORED = { ThinJarLauncher.THIN_ARCHIVE, "thin.library", "thin.source",
+			"thin.debug", "thin.trace" };
+
+	private final String mainClass;
+
+	private final boolean parentBoot;
+
+	private final List<File> classpath;
+
+	private final List<File> inputs;
+
+	LaunchDescriptor(String mainClass, boolean parentBoot, List<File> classpath, List<File> inputs) {
+		this.mainClass = mainClass;
+		this.parentBoot = parentBoot;
+		this.classpath = classpath;
+		this.inputs = inputs;
+	}
+
+	/**
+	 * The name of the descriptor for a launch.
+	 * @param archive the absolute path of the archive
+	 * @param directory the working directory
+	 * @param properties the thin.* properties of the launch
+	 * @return a hash of the inputs
+	 */
+	static String key(String archive, String directory, Map<String, String> properties) {
+		Map<String, String> sorted = new TreeMap<>(properties);
+		for (String name : IGNORED) {
+			sorted.remove(name);
+		}
+		StringBuilder builder = new StringBuilder(archive).append("\n").append(directory).append("\n");
+		for (Map.Entry<String, String> entry : sorted.entrySet()) {
+			if (!entry.getKey().startsWith("thin.")) {
+				continue;
+			}
+			builder.append(entry.getKey()).append("=").append(entry.getValue()).append("\n");
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return LauncherUtils.hex(digest.digest(builder.toString().getBytes(StandardCharsets.UTF_8)));
+		}
+		catch (Exception e) {
+			throw new IllegalStateException("Cannot compute launch descriptor key", e);
+		}
+	}
+
+	Properties toProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("main", this.mainClass);
+		properties.setProperty("parent.boot", String.valueOf(this.parentBoot));
+		for (int i = 0; i < this.classpath.size(); i++) {
+			properties.setProperty("classpath." + i, this.classpath.get(i).getAbsolutePath());
+		}
+		for (int i = 0; i < this.inputs.size(); i++) {
+			File input = this.inputs.get(i);
+			properties.setProperty("input." + i, input.getAbsolutePath());
+			properties.setProperty("input." + i + ".length", String.valueOf(input.exists() ? input.length() : -1));
+			properties.setProperty("input." + i + ".modified", String.valueOf(input.lastModified()));
+		}
+		return properties;
+	}
+
+	/**
+	 * Write the descriptor atomically, so a concurrent wrapper never sees half of it.
+	 */
+	void save(File root, String key) {
+		File directory = new File(root, DIRECTORY);
+		File file = new File(directory, key + ".properties");
+		try {
+			LauncherUtils.write(file, stream -> toProperties().store(stream, "Thin launcher launch descriptor"));
+			log.info("Saved launch descriptor: " + file);
+		}
+		catch (IOException e) {
+			log.info("Cannot save launch descriptor: " + file + " (" + e.getMessage() + ")");
+		}
+	}
+
+}
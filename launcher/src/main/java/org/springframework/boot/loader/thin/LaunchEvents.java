@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.Closeable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JDK Flight Recorder events for the phases of a launch (reading settings, creating the
+ * container, finding the pom and properties, building the model, creating the class
+ * loader, running the main method, deploying and undeploying) and for every artifact
+ * that is resolved. The launcher has to run on Java 8, so the event types are created
+ * with <code>jdk.jfr.EventFactory</code> (Java 12 and above) by reflection, and only
+ * once the flight recorder has been started, so a launch without a recording pays for
+ * little more than a method call per event.
+ */
+public final class LaunchEvents {
+
+	private static final String PREFIX = "org.springframework.boot.thin.";
+
+	private static final Phase NONE = new Phase(null);
+
+	private static final Object UNAVAILABLE = new Object();
+
+	private static final Recorder recorder = Recorder.create();
+
+	private LaunchEvents() {
+	}
+
+	/**
+	 * Start timing a phase. Close the result when the phase is over to commit the event.
+	 * @param name the name of the phase
+	 * @param detail what the phase is working on (only converted to a string if the
+	 * event is recorded)
+	 * @return the phase
+	 */
+	public static Phase phase(String name, Object detail) {
+		if (recorder == null) {
+			return NONE;
+		}
+		Object event = recorder.phase(name, detail);
+		return event == null ? NONE : new Phase(event);
+	}
+
+	/**
+	 * @return true if events can be recorded in this JVM (whether or not anything is
+	 * recording them)
+	 */
+	static boolean isAvailable() {
+		return recorder != null;
+	}
+
+	/**
+	 * Start timing an artifact resolution.
+	 * @param coordinates the artifact coordinates
+	 * @return an event to commit (with {@link #artifact(Object, String, long, boolean)})
+	 * or null if it is not being recorded
+	 */
+	static Object artifact(String coordinates) {
+		return recorder == null ? null : recorder.artifact(coordinates);
+	}
+
+	/**
+	 * Commit an artifact resolution.
+	 * @param event the event from {@link #artifact(String)}
+	 * @param repository the repository it came from
+	 * @param bytes the size of the file (-1 if it was not resolved)
+	 * @param cached true if the file was already in the local repository
+	 */
+	static void artifact(Object event, String repository, long bytes, boolean cached) {
+		if (event != null) {
+			recorder.commit(event, repository, bytes, cached);
+		}
+	}
+
+	/**
+	 * A phase that is being timed.
+	 */
+	public static final class Phase implements Closeable {
+
+		private final Object event;
+
+		private Phase(Object event) {
+			this.event = event;
+		}
+
+		@Override
+		public void close() {
+			if (this.event != null) {
+				recorder.commit(this.event);
+			}
+		}
+
+	}
+
+	private static class Recorder {
+
+		private final Method initialized;
+
+		private final Constructor<?> annotation;
+
+		private final Constructor<?> field;
+
+		private final Method create;
+
+		private final Method newEvent;
+
+		private final Method eventType;
+
+		private final Method enabled;
+
+		private final Method begin;
+
+		private final Method end;
+
+		private final Method set;
+
+		private final Method commit;
+
+		private volatile Object phases;
+
+		private volatile Object artifacts;
+
+		private Recorder() throws Exception {
+			this.initialized = Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized");
+			Class<?> annotation = Class.forName("jdk.jfr.AnnotationElement");
+			this.annotation = annotation.getConstructor(Class.class, Object.class);
+			this.field = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class,
+					String.class, List.class);
+			Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+			this.create = factory.getMethod("create", List.class, List.class);
+			this.newEvent = factory.getMethod("newEvent");
+			this.eventType = factory.getMethod("getEventType");
+			this.enabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+			Class<?> event = Class.forName("jdk.jfr.Event");
+			this.begin = event.getMethod("begin");
+			this.end = event.getMethod("end");
+			this.set = event.getMethod("set", int.class, Object.class);
+			this.commit = event.getMethod("commit");
+		}
+
+		static Recorder create() {
+			try {
+				return new Recorder();
+			}
+			catch (Exception | LinkageError e) {
+				// Java 11 or older, or no flight recorder
+				return null;
+			}
+		}
+
+		Object phase(String name, Object detail) {
+			Object event = begin(phases());
+			if (event != null) {
+				set(event, 0, name);
+				set(event, 1, detail == null ? null : detail.toString());
+			}
+			return event;
+		}
+
+		Object artifact(String coordinates) {
+			Object event = begin(artifacts());
+			if (event != null) {
+				set(event, 0, coordinates);
+			}
+			return event;
+		}
+
+		void commit(Object event, String repository, long bytes, boolean cached) {
+			set(event, 1, repository);
+			set(event, 2, bytes);
+			set(event, 3, cached);
+			commit(event);
+		}
+
+		void commit(Object event) {
+			try {
+				this.end.invoke(event);
+				this.commit.invoke(event);
+			}
+			catch (Exception e) {
+				// ignore
+			}
+		}
+
+		private Object begin(Object factory) {
+			try {
+				if (factory == null || factory == UNAVAILABLE) {
+					return null;
+				}
+				if (!(Boolean) this.enabled.invoke(this.eventType.invoke(factory))) {
+					// Not being recorded (or disabled in the recording settings)
+					return null;
+				}
+				Object event = this.newEvent.invoke(factory);
+				this.begin.invoke(event);
+				return event;
+			}
+			catch (Exception e) {
+				return null;
+			}
+		}
+
+		private void set(Object event, int index, Object value) {
+			try {
+				this.set.invoke(event, index, value);
+			}
+			catch (Exception e) {
+				// ignore
+			}
+		}
+
+		private Object phases() {
+			if (this.phases == null && isInitialized()) {
+				synchronized (this) {
+					if (this.phases == null) {
+						this.phases = factory("Phase", "Thin Launcher Phase",
+								Arrays.asList(field(String.class, "name", "Name"),
+										field(String.class, "detail", "Detail")));
+					}
+				}
+			}
+			return this.phases;
+		}
+
+		private Object artifacts() {
+			if (this.artifacts == null && isInitialized()) {
+				synchronized (this) {
+					if (this.artifacts == null) {
+						this.artifacts = factory("Artifact", "Thin Launcher Artifact",
+								Arrays.asList(field(String.class, "coordinates", "Coordinates"),
+										field(String.class, "repository", "Repository"),
+										field(long.class, "bytes", "Size",
+												annotation("jdk.jfr.DataAmount", "BYTES")),
+										field(boolean.class, "cached", "Cached")));
+					}
+				}
+			}
+			return this.artifacts;
+		}
+
+		/**
+		 * Nothing is recorded until the flight recorder has been started (e.g. with
+		 * <code>-XX:StartFlightRecording</code> or <code>jcmd JFR.start</code>), and
+		 * creating the event types before that would only slow the launch down.
+		 */
+		private boolean isInitialized() {
+			try {
+				return (Boolean) this.initialized.invoke(null);
+			}
+			catch (Exception e) {
+				return false;
+			}
+		}
+
+		private Object factory(String name, String label, List<Object> fields) {
+			try {
+				List<Object> annotations = new ArrayList<>();
+				annotations.add(annotation("jdk.jfr.Name", PREFIX + name));
+				annotations.add(annotation("jdk.jfr.Label", label));
+				annotations.add(annotation("jdk.jfr.Category",
+						new String[] { "Spring Boot", "Thin Launcher" }));
+				return this.create.invoke(null, annotations, fields);
+			}
+			catch (Exception e) {
+				// Don't try again
+				return UNAVAILABLE;
+			}
+		}
+
+		private Object field(Class<?> type, String name, String label, Object... annotations) {
+			List<Object> list = new ArrayList<>(Arrays.asList(annotations));
+			list.add(annotation("jdk.jfr.Label", label));
+			try {
+				return this.field.newInstance(type, name, Collections.unmodifiableList(list));
+			}
+			catch (Exception e) {
+				throw new IllegalStateException("Cannot create field: " + name, e);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private Object annotation(String type, Object value) {
+			try {
+				return this.annotation.newInstance(
+						(Class<? extends Annotation>) Class.forName(type), value);
+			}
+			catch (Exception e) {
+				throw new IllegalStateException("Cannot create annotation: " + type, e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Helpers shared by the caches and reports that the launcher writes to disk.
+ */
+class LauncherUtils {
+
+	/**
+	 * Write a file atomically, through a temporary file in the same directory, so a
+	 * concurrent reader never sees it half written.
+	 * @param file the file to write
+	 * @param content the callback that writes the content
+	 * @throws IOException if the file cannot be written
+	 */
+	static void write(File file, Content content) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		directory.mkdirs();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			try (OutputStream stream = Files.newOutputStream(temp.toPath())) {
+				content.write(stream);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Format bytes (e.g. a digest) as a lower case hex string.
+	 */
+	static String hex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder();
+		for (byte b : bytes) {
+			builder.append(String.format("%02x", b));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Quote a value as a JSON string (or null).
+	 */
+	static String json(String value) {
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder builder = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				builder.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	/**
+	 * The content of a file written by {@link LauncherUtils#write(File, Content)}.
+	 */
+	interface Content {
+
+		void write(OutputStream stream) throws IOException;
+
+	}
+
+}
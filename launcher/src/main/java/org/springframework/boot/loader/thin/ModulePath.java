@@ -0,0 +1,397 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.StreamUtils;
+
+/**
+ * Puts the jars of a class path in a module layer (as explicit or automatic modules),
+ * so that classes are found by package instead of searching the jars one by one. Jars
+ * that cannot be modules (split packages, duplicate or invalid module names, nested
+ * archives) stay on a class path, in a class loader that is the parent of the layer. A
+ * parent class loader cannot see the classes in the layer, so if anything left on the
+ * class path (e.g. the application classes) uses a package from one of the modules, the
+ * module path is not used at all. The module system only exists in Java 9 and above, so
+ * it is all done with reflection.
+ */
+class ModulePath {
+
+	private static final Logger log = LoggerFactory.getLogger(ModulePath.class);
+
+	private static final Pattern CLASS_NAME = Pattern.compile("[\\w$]+(/[\\w$]+)+");
+
+	private final Object configuration;
+
+	private final String module;
+
+	private final List<URL> classpath;
+
+	private final int modules;
+
+	private ModulePath(Object configuration, String module, List<URL> classpath,
+			int modules) {
+		this.configuration = configuration;
+		this.module = module;
+		this.classpath = classpath;
+		this.modules = modules;
+	}
+
+	static boolean isAvailable() {
+		try {
+			Class.forName("java.lang.ModuleLayer");
+			return true;
+		}
+		catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Work out which of the URLs provided can be modules and resolve them.
+	 * @param urls the class path
+	 * @return a module path, or null if the module system is not available, the modules
+	 * cannot be resolved, or the URLs that cannot be modules depend on them
+	 */
+	static ModulePath resolve(URL[] urls) {
+		if (!isAvailable()) {
+			log.info("Module path is not available in this JVM");
+			return null;
+		}
+		try {
+			return new Resolver().resolve(urls);
+		}
+		catch (Exception e) {
+			Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+			log.info("Cannot resolve module path (" + cause + ")");
+			return null;
+		}
+	}
+
+	/**
+	 * The URLs that are not modules.
+	 */
+	URL[] getClassPath() {
+		return this.classpath.toArray(new URL[0]);
+	}
+
+	int getModules() {
+		return this.modules;
+	}
+
+	/**
+	 * Define the modules in a layer on top of the boot layer.
+	 * @param parent the class loader for the rest of the class path
+	 * @return the class loader for the modules
+	 */
+	ClassLoader createClassLoader(ClassLoader parent) throws Exception {
+		if (this.module == null) {
+			return parent;
+		}
+		Object boot = Resolver.method("java.lang.ModuleLayer", "boot").invoke(null);
+		Class<?> configuration = Class.forName("java.lang.module.Configuration");
+		Object layer = boot.getClass()
+				.getMethod("defineModulesWithOneLoader", configuration, ClassLoader.class)
+				.invoke(boot, this.configuration, parent);
+		return (ClassLoader) layer.getClass().getMethod("findLoader", String.class).invoke(layer,
+				this.module);
+	}
+
+	private static class Resolver {
+
+		private final Class<?> finderType;
+
+		private final Method findAll;
+
+		Resolver() throws Exception {
+			this.finderType = Class.forName("java.lang.module.ModuleFinder");
+			this.findAll = this.finderType.getMethod("findAll");
+		}
+
+		ModulePath resolve(URL[] urls) throws Exception {
+			Set<String> reserved = new HashSet<>();
+			Set<String> names = new HashSet<>();
+			Object boot = method("java.lang.ModuleLayer", "boot").invoke(null);
+			for (Object module : (Set<?>) boot.getClass().getMethod("modules").invoke(boot)) {
+				names.add((String) module.getClass().getMethod("getName").invoke(module));
+				reserved.addAll(strings(module.getClass().getMethod("getPackages").invoke(module)));
+			}
+			Map<URL, Object> finders = new LinkedHashMap<>();
+			Map<URL, Object> descriptors = new HashMap<>();
+			Map<String, Integer> counts = new HashMap<>();
+			List<URL> classpath = new ArrayList<>();
+			for (URL url : urls) {
+				Object finder = finder(url);
+				Object descriptor = finder == null ? null : descriptor(finder);
+				String name = descriptor == null ? null : name(descriptor);
+				if (name == null || !names.add(name)) {
+					// Not a jar, not a valid module, or a duplicate
+					classpath.add(url);
+					continue;
+				}
+				finders.put(url, finder);
+				descriptors.put(url, descriptor);
+				for (String pkg : packages(descriptor)) {
+					counts.put(pkg, counts.containsKey(pkg) ? counts.get(pkg) + 1 : 1);
+				}
+			}
+			List<Object> modules = new ArrayList<>();
+			List<String> roots = new ArrayList<>();
+			Set<String> layered = new HashSet<>();
+			for (Map.Entry<URL, Object> entry : finders.entrySet()) {
+				if (isSplit(packages(descriptors.get(entry.getKey())), counts, reserved)) {
+					classpath.add(entry.getKey());
+					continue;
+				}
+				modules.add(entry.getValue());
+				roots.add(name(descriptors.get(entry.getKey())));
+				layered.addAll(packages(descriptors.get(entry.getKey())));
+			}
+			for (URL url : classpath) {
+				if (uses(url, layered)) {
+					// The class path is the parent of the layer, so it cannot see it
+					log.info("Cannot use module path: " + url + " uses classes from modules");
+					return null;
+				}
+			}
+			if (classpath.size() > 0 && log.isInfoEnabled()) {
+				log.info("Class path (not modules): " + classpath);
+			}
+			log.info("Module path: " + roots.size() + " modules, " + classpath.size()
+					+ " class path entries");
+			if (roots.isEmpty()) {
+				return new ModulePath(null, null, classpath, 0);
+			}
+			Object array = Array.newInstance(this.finderType, modules.size());
+			for (int i = 0; i < modules.size(); i++) {
+				Array.set(array, i, modules.get(i));
+			}
+			// The finders have already scanned their jars, so compose them
+			Object finder = this.finderType.getMethod("compose", array.getClass()).invoke(null,
+					array);
+			Object empty = this.finderType.getMethod("of", Path[].class).invoke(null,
+					(Object) new Path[0]);
+			Object parent = boot.getClass().getMethod("configuration").invoke(boot);
+			Object configuration = parent.getClass()
+					.getMethod("resolve", this.finderType, this.finderType, Collection.class)
+					.invoke(parent, finder, empty, roots);
+			return new ModulePath(configuration, roots.get(0), classpath, roots.size());
+		}
+
+		private boolean isSplit(Set<String> packages, Map<String, Integer> counts,
+				Set<String> reserved) {
+			for (String pkg : packages) {
+				if (counts.get(pkg) > 1 || reserved.contains(pkg)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Check if any class in the class path entry refers to a class in one of the
+		 * packages provided. Entries that cannot be scanned are assumed to use them.
+		 */
+		private boolean uses(URL url, Set<String> packages) throws Exception {
+			if (packages.isEmpty()) {
+				return false;
+			}
+			String path = url.toString();
+			if ("file".equals(url.getProtocol())) {
+				File file = new File(url.toURI());
+				if (file.isDirectory()) {
+					try (Stream<Path> files = Files.walk(file.toPath())) {
+						for (Path child : (Iterable<Path>) files::iterator) {
+							if (child.toString().endsWith(".class")) {
+								try (InputStream stream = Files.newInputStream(child)) {
+									if (uses(stream, packages)) {
+										return true;
+									}
+								}
+							}
+						}
+					}
+					return false;
+				}
+				return !file.isFile() || uses(file, "", packages);
+			}
+			int index = path.indexOf("!/");
+			if (path.startsWith("jar:file:") && index > 0 && path.indexOf("!/", index + 2) < 0) {
+				File file = new File(new URL(path.substring("jar:".length(), index)).toURI());
+				return uses(file, path.substring(index + 2), packages);
+			}
+			return true;
+		}
+
+		private boolean uses(File file, String prefix, Set<String> packages) throws IOException {
+			try (JarFile jar = new JarFile(file)) {
+				for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+					JarEntry entry = entries.nextElement();
+					if (entry.getName().startsWith(prefix) && entry.getName().endsWith(".class")) {
+						try (InputStream stream = jar.getInputStream(entry)) {
+							if (uses(stream, packages)) {
+								return true;
+							}
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Look for class names in the UTF8 constants of a class file (they are in class
+		 * references and in descriptors and signatures as <code>Lpkg/Name;</code>).
+		 */
+		private boolean uses(InputStream stream, Set<String> packages) throws IOException {
+			byte[] bytes = StreamUtils.copyToByteArray(stream);
+			DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+			if (bytes.length < 10 || input.readInt() != 0xCAFEBABE) {
+				// Not a class file, so it cannot be loaded anyway
+				return false;
+			}
+			input.readInt(); // version
+			int count = input.readUnsignedShort();
+			for (int i = 1; i < count; i++) {
+				int tag = input.readUnsignedByte();
+				switch (tag) {
+				case 1:
+					Matcher matcher = CLASS_NAME.matcher(input.readUTF());
+					while (matcher.find()) {
+						String name = matcher.group();
+						if (packages.contains(pkg(name))
+								|| name.startsWith("L") && packages.contains(pkg(name.substring(1)))) {
+							return true;
+						}
+					}
+					break;
+				case 5:
+				case 6:
+					input.skipBytes(8);
+					i++;
+					break;
+				case 7:
+				case 8:
+				case 16:
+				case 19:
+				case 20:
+					input.skipBytes(2);
+					break;
+				case 15:
+					input.skipBytes(3);
+					break;
+				case 3:
+				case 4:
+				case 9:
+				case 10:
+				case 11:
+				case 12:
+				case 17:
+				case 18:
+					input.skipBytes(4);
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag: " + tag);
+				}
+			}
+			return false;
+		}
+
+		private static String pkg(String name) {
+			return name.substring(0, name.lastIndexOf('/')).replace('/', '.');
+		}
+
+		private Object finder(URL url) throws Exception {
+			if (!"file".equals(url.getProtocol()) || !url.getPath().endsWith(".jar")) {
+				return null;
+			}
+			File file = new File(url.toURI());
+			if (!file.isFile()) {
+				return null;
+			}
+			return this.finderType.getMethod("of", Path[].class).invoke(null,
+					(Object) new Path[] { file.toPath() });
+		}
+
+		private Object descriptor(Object finder) throws Exception {
+			try {
+				Set<?> references = (Set<?>) this.findAll.invoke(finder);
+				if (references.size() != 1) {
+					return null;
+				}
+				Object reference = references.iterator().next();
+				return method("java.lang.module.ModuleReference", "descriptor").invoke(reference);
+			}
+			catch (InvocationTargetException e) {
+				// FindException: e.g. the file name is not a valid automatic module name
+				log.info("Not a module: " + e.getCause().getMessage());
+				return null;
+			}
+		}
+
+		private static String name(Object descriptor) throws Exception {
+			return (String) method("java.lang.module.ModuleDescriptor", "name").invoke(descriptor);
+		}
+
+		private static Set<String> packages(Object descriptor) throws Exception {
+			return strings(
+					method("java.lang.module.ModuleDescriptor", "packages").invoke(descriptor));
+		}
+
+		private static Set<String> strings(Object value) {
+			Set<String> result = new HashSet<>();
+			for (Object item : (Set<?>) value) {
+				result.add((String) item);
+			}
+			return result;
+		}
+
+		private static Method method(String type, String name) throws Exception {
+			return Class.forName(type).getMethod(name);
+		}
+
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.IOException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Manifest;
+
+import org.springframework.boot.loader.thin.DependencyPack.Entry;
+
+/**
+ * A {@link ThinJarClassLoader} that serves classes and resources from a
+ * {@link DependencyPack} after looking in its own URLs (usually just the application
+ * archive).
+ */
+class PackedThinJarClassLoader extends ThinJarClassLoader {
+
+	static {
+		ClassLoader.registerAsParallelCapable();
+	}
+
+	private final DependencyPack pack;
+
+	private final Map<Integer, ProtectionDomain> domains = new ConcurrentHashMap<>();
+
+	public PackedThinJarClassLoader(URL[] urls, DependencyPack pack, ClassLoader parent) {
+		super(urls, parent);
+		this.pack = pack;
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		try {
+			return super.findClass(name);
+		}
+		catch (ClassNotFoundException e) {
+			Entry entry = this.pack.find(name.replace('.', '/') + ".class");
+			if (entry == null) {
+				throw e;
+			}
+			definePackage(name, entry);
+			return defineClass(name, this.pack.read(entry), domain(entry));
+		}
+	}
+
+	@Override
+	public URL findResource(String name) {
+		URL url = super.findResource(name);
+		if (url != null) {
+			return url;
+		}
+		Entry entry = this.pack.find(name);
+		return entry == null ? null : this.pack.getUrl(entry);
+	}
+
+	@Override
+	public Enumeration<URL> findResources(String name) throws IOException {
+		List<URL> urls = new ArrayList<>(Collections.list(super.findResources(name)));
+		for (Entry entry : this.pack.findAll(name)) {
+			urls.add(this.pack.getUrl(entry));
+		}
+		return Collections.enumeration(urls);
+	}
+
+	private ProtectionDomain domain(Entry entry) {
+		ProtectionDomain domain = this.domains.get(entry.getSource());
+		if (domain == null) {
+			CodeSource source = new CodeSource(this.pack.getSourceUrl(entry), (Certificate[]) null);
+			domain = new ProtectionDomain(source, null, this, null);
+			this.domains.put(entry.getSource(), domain);
+		}
+		return domain;
+	}
+
+	// getDefinedPackage() is not available on Java 8, and getPackage() also looks in the
+	// parent, which is fine here (a package that is already defined is not redefined)
+	@SuppressWarnings("deprecation")
+	private void definePackage(String className, Entry entry) {
+		int index = className.lastIndexOf('.');
+		if (index < 0) {
+			return;
+		}
+		String name = className.substring(0, index);
+		if (getPackage(name) != null) {
+			return;
+		}
+		try {
+			Manifest manifest = this.pack.getManifest(entry);
+			if (manifest != null) {
+				definePackage(name, manifest, this.pack.getSourceUrl(entry));
+			}
+			else {
+				definePackage(name, null, null, null, null, null, null, null);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			// Someone else defined it concurrently
+		}
+	}
+
+}
@@ -16,16 +16,21 @@
 package org.springframework.boot.loader.thin;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 import org.apache.maven.shared.utils.io.FileUtils;
 import org.eclipse.aether.graph.Dependency;
@@ -40,7 +45,6 @@ import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.UrlResource;
 import org.springframework.core.io.support.PropertiesLoaderUtils;
 import org.springframework.core.io.support.ResourcePatternUtils;
-import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -65,6 +69,20 @@ public class PathResolver {
 
 	private boolean force;
 
+	private boolean index;
+
+	private boolean trustLocal;
+
+	private boolean pipeline;
+
+	private String transport;
+
+	private boolean delta;
+
+	private boolean hybrid;
+
+	private File report;
+
 	private boolean preferLocalSnapshots = true;
 
 	public PathResolver(DependencyResolver engine) {
@@ -91,6 +109,39 @@ public class PathResolver {
 		this.offline = offline;
 	}
 
+	public void setIndex(boolean index) {
+		this.index = index;
+	}
+
+	public void setTrustLocal(boolean trustLocal) {
+		this.trustLocal = trustLocal;
+	}
+
+	public void setPipeline(boolean pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	public void setTransport(String transport) {
+		this.transport = transport;
+	}
+
+	public void setDelta(boolean delta) {
+		this.delta = delta;
+	}
+
+	public void setHybrid(boolean hybrid) {
+		this.hybrid = hybrid;
+	}
+
+	/**
+	 * A file to write statistics about the resolution to (as JSON), e.g. for dashboards
+	 * that track how many dependencies come from the local repository.
+	 * @param report the report file
+	 */
+	public void setReport(File report) {
+		this.report = report;
+	}
+
 	public List<Archive> resolve(Archive archive, String name, String... profiles) {
 		return resolve(null, archive, name, profiles);
 	}
@@ -98,17 +149,38 @@ public class PathResolver {
 	public List<Archive> resolve(Archive parent, Archive archive, String name, String... profiles) {
 		log.info("Extracting dependencies from: {}, with profiles {}", archive, Arrays.asList(profiles));
 		List<Archive> archives = new ArrayList<>();
-		if (parent != null) {
-			archives.addAll(archives(extract(parent, archive, name, profiles)));
+		ResolutionReport report = this.report == null ? null : new ResolutionReport();
+		long t0 = System.currentTimeMillis();
+		if (report != null) {
+			engine.addReport(report);
 		}
-		else {
-			archives.addAll(archives(extract(archive, name, profiles)));
+		try {
+			if (parent != null) {
+				archives.addAll(archives(extract(parent, archive, name, profiles)));
+			}
+			else {
+				archives.addAll(archives(extract(archive, name, profiles)));
+			}
+		}
+		finally {
+			if (report != null) {
+				engine.removeReport(report);
+			}
 		}
 		addRootArchive(archives, archive);
+		if (report != null) {
+			report.write(this.report, archive.toString(), System.currentTimeMillis() - t0);
+		}
 		return archives;
 	}
 
 	public Resource getPom(Archive archive) {
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("pom", archive)) {
+			return findPom(archive);
+		}
+	}
+
+	private Resource findPom(Archive archive) {
 		Resource pom;
 		try {
 			String base = archive.getUrl().toString();
@@ -182,25 +254,50 @@ public class PathResolver {
 	}
 
 	private List<Dependency> extract(Archive parent, Archive archive, String name, String[] profiles) {
-		Resource parentPom = getPom(parent);
-		// Assume the profiles only apply to child
-		List<Dependency> parentDependencies = engine.dependencies(parentPom,
-				getProperties(archive, name, new String[0]));
-		Resource childPom = getPom(archive);
-		List<Dependency> childDependencies = engine.dependencies(childPom, getProperties(archive, name, profiles));
-		Map<String, Dependency> lookup = new HashMap<>();
-		for (Dependency dependency : parentDependencies) {
-			lookup.put(coordinates(dependency), dependency);
+		CompletableFuture<Resource> childPom = async(() -> getPom(archive));
+		// The parent graph is cached, so it is shared by all the children that use it
+		CompletableFuture<ResolvedGraph> parentGraph = async(() -> {
+			// Assume the profiles only apply to child
+			return engine.graph(getPom(parent), getProperties(archive, name, new String[0]), true);
+		});
+		Properties properties = getProperties(archive, name, profiles);
+		// Only the model of the child: its dependencies are resolved once, in the merge
+		ResolvedGraph childGraph = engine.model(join(childPom), properties);
+		List<Dependency> dependencies = engine.merge(join(parentGraph), childGraph, properties);
+		maybeCopyToRoot(this.root, getLocalRepository(), dependencies);
+		return dependencies;
+	}
+
+	/**
+	 * Run a task in the background with the same context class loader as the caller. The
+	 * tasks block (e.g. building a project), so they run on the resolver's own threads,
+	 * not in the common pool.
+	 */
+	private <T> CompletableFuture<T> async(Supplier<T> task) {
+		final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		return CompletableFuture.supplyAsync(() -> {
+			Thread thread = Thread.currentThread();
+			ClassLoader current = thread.getContextClassLoader();
+			thread.setContextClassLoader(classLoader);
+			try {
+				return task.get();
+			}
+			finally {
+				thread.setContextClassLoader(current);
+			}
+		}, engine.executor());
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
 		}
-		for (Dependency dependency : childDependencies) {
-			// This isn't the most sophisticated way to combine the two, but it works for
-			// the cases we need so far...
-			if (!lookup.containsKey(coordinates(dependency))) {
-				parentDependencies.add(dependency);
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
 			}
+			throw e;
 		}
-		maybeCopyToRoot(this.root, getLocalRepository(), parentDependencies);
-		return parentDependencies;
 	}
 
 	private void maybeCopyToRoot(String root, File repo, List<Dependency> classPathArchives) {
@@ -230,15 +327,23 @@ public class PathResolver {
 				String jar = path.substring(parent.length());
 				File source = new File(repo, jar);
 				File target = file;
-				if (source.exists() && !FileUtils.contentEquals(source, target)) {
+				if (source.exists() && !isSame(source, target)) {
 					log.info("Preferring local snapshot: " + archive);
-					FileUtils.deleteDirectory(target.getParentFile());
-					target.getParentFile().mkdirs();
-					StreamUtils.copy(new FileInputStream(source), new FileOutputStream(target));
 					String pom = jar.substring(0, jar.length() - 4) + ".pom";
+					File[] others = target.getParentFile().listFiles();
+					if (others != null) {
+						// Anything else (e.g. remote tracking files and metadata) would
+						// make the local snapshot look like it came from a remote
+						for (File other : others) {
+							if (!other.equals(target) && !other.getName().equals(new File(pom).getName())) {
+								FileUtils.forceDelete(other);
+							}
+						}
+					}
+					promote(source, target);
 					file = new File(repo, pom);
 					if (file.exists()) {
-						StreamUtils.copy(new FileInputStream(file), new FileOutputStream(new File(dir, pom)));
+						promote(file, new File(dir, pom));
 					}
 				}
 			}
@@ -248,23 +353,102 @@ public class PathResolver {
 		}
 	}
 
-	private String coordinates(Dependency dependency) {
-		return dependency.getArtifact().getGroupId() + ":" + dependency.getArtifact().getArtifactId();
+	private boolean isSame(File source, File target) throws IOException {
+		if (!target.exists() || source.length() != target.length()) {
+			return false;
+		}
+		if (source.lastModified() == target.lastModified()) {
+			// Promoted files keep the timestamp of the source
+			return true;
+		}
+		String sourceChecksum = checksum(source);
+		String targetChecksum = checksum(target);
+		if (sourceChecksum != null && targetChecksum != null) {
+			return sourceChecksum.equals(targetChecksum);
+		}
+		if (FileUtils.contentEquals(source, target)) {
+			// Align the timestamps so next time the contents do not need to be read
+			target.setLastModified(source.lastModified());
+			return true;
+		}
+		return false;
+	}
+
+	private String checksum(File file) {
+		File sha1 = new File(file.getPath() + ".sha1");
+		if (sha1.exists()) {
+			try {
+				String value = new String(Files.readAllBytes(sha1.toPath()), StandardCharsets.US_ASCII).trim();
+				if (value.length() >= 40) {
+					return value.substring(0, 40).toLowerCase();
+				}
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+		return null;
+	}
+
+	private void promote(File source, File target) throws IOException {
+		target.getParentFile().mkdirs();
+		// A unique name, so concurrent launches promoting the same file don't collide
+		Path temp = Files.createTempFile(target.getParentFile().toPath(), target.getName(), ".tmp");
+		try {
+			Files.delete(temp);
+			try {
+				// A hard link is free if the two repositories are on the same file system
+				Files.createLink(temp, source.toPath());
+			}
+			catch (IOException | UnsupportedOperationException e) {
+				Files.copy(source.toPath(), temp, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.COPY_ATTRIBUTES);
+			}
+			try {
+				Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
 	}
 
 	public List<Dependency> extract(Archive archive, String name, String[] profiles) {
+		// Finding the pom can mean scanning the archive, and the properties come from
+		// files as well, so look for both at once
+		CompletableFuture<Resource> future = async(() -> getPom(archive));
 		Properties properties = getProperties(archive, name, profiles);
-		Resource pom = getPom(archive);
+		Resource pom = join(future);
 		log.info("Extracting dependencies from: {}, with profiles {}", pom, Arrays.asList(profiles));
-		List<Dependency> dependencies = engine.dependencies(pom, properties);
+		List<Dependency> dependencies;
+		if (this.delta && properties.containsKey("thin.profile")) {
+			// Same properties as a launch with no profiles, so the graphs can be shared
+			dependencies = engine.dependencies(pom, getProperties(archive, name, new String[] { "" }), properties);
+		}
+		else {
+			dependencies = engine.dependencies(pom, properties);
+		}
 		maybeCopyToRoot(this.root, getLocalRepository(), dependencies);
 		return dependencies;
 	}
 
+	DependencyGraph tree(Archive archive, String name, String[] profiles) {
+		CompletableFuture<Resource> future = async(() -> getPom(archive));
+		Properties properties = getProperties(archive, name, profiles);
+		Resource pom = join(future);
+		log.info("Extracting dependency graph from: {}, with profiles {}", pom, Arrays.asList(profiles));
+		return engine.tree(pom, properties);
+	}
+
 	private Properties getProperties(Archive archive, String name, String[] profiles) {
 		Properties properties = new Properties();
-		loadThinProperties(properties, archive, name, profiles);
-		loadThinProperties(properties, this.locations, name, profiles);
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("properties", archive)) {
+			loadThinProperties(properties, archive, name, profiles);
+			loadThinProperties(properties, this.locations, name, profiles);
+		}
 		if (profiles != null && profiles.length > 0) {
 			String values = StringUtils.arrayToCommaDelimitedString(profiles);
 			if (values.length() > 0) {
@@ -277,6 +461,27 @@ public class PathResolver {
 		if (offline) {
 			properties.setProperty("thin.offline", "true");
 		}
+		if (index) {
+			properties.setProperty("thin.index", "true");
+		}
+		if (trustLocal) {
+			properties.setProperty("thin.local.trust", "true");
+		}
+		if (pipeline) {
+			properties.setProperty("thin.pipeline", "true");
+		}
+		if (transport != null) {
+			properties.setProperty("thin.transport", transport);
+		}
+		if (delta) {
+			properties.setProperty("thin.delta", "true");
+		}
+		if (hybrid) {
+			File file = ArchiveUtils.getArchiveRoot(archive);
+			if (file.isFile()) {
+				properties.setProperty("thin.hybrid", file.getAbsolutePath());
+			}
+		}
 		if (force) {
 			properties.remove("computed");
 		}
@@ -409,7 +614,9 @@ public class PathResolver {
 			try {
 				// Archive is kind of the wrong abstraction here. We only need the URL, so
 				// make that explicit.
-				list.add(new UrlArchive(file.toURI().toURL()));
+				list.add(new UrlArchive(file.toURI().toURL(),
+						dependency.getArtifact().getGroupId() + ":"
+								+ dependency.getArtifact().getArtifactId()));
 			}
 			catch (Exception e) {
 				throw new IllegalStateException("Cannot locate archive: " + file, e);
@@ -444,7 +651,7 @@ public class PathResolver {
 	}
 
 	public File getLocalRepository() {
-		return DependencyResolver.instance().getLocalRepository();
+		return this.engine.getLocalRepository();
 	}
 
 	public void setPreferLocalSnapshots(boolean preferLocalSnapshots) {
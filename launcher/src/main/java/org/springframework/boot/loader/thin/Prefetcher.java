@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Resolves (and downloads) the dependencies of another archive in the background, for
+ * instance the next version of the application during a rolling upgrade, so that the
+ * next start finds them all locally. The target is either an archive location (a path,
+ * or "maven://group:artifact:version"), or a text file containing one, which is checked
+ * periodically and prefetched again whenever it changes.
+ * <p>
+ * Each prefetch uses its own {@link DependencyResolver}, not the shared one, so that
+ * the application (e.g. a re-resolve in watch mode) is not affected when it is disposed
+ * again after every prefetch, leaving nothing resident between polls.
+ */
+class Prefetcher implements Runnable {
+
+	private static final Logger log = LoggerFactory.getLogger(Prefetcher.class);
+
+	private final String[] args;
+
+	private final String target;
+
+	private final long interval;
+
+	private String last;
+
+	Prefetcher(String[] args, String target, long interval) {
+		this.args = args;
+		this.target = target;
+		this.interval = interval;
+	}
+
+	/**
+	 * Start prefetching in a low priority daemon thread, so it never competes with the
+	 * application or keeps the JVM alive.
+	 */
+	Thread start() {
+		Thread thread = new Thread(this, "thin-prefetch");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return thread;
+	}
+
+	@Override
+	public void run() {
+		File file = new File(this.target);
+		if (!isWatched(file)) {
+			prefetch(this.target);
+			return;
+		}
+		while (!Thread.currentThread().isInterrupted()) {
+			poll(file);
+			try {
+				Thread.sleep(this.interval);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Check the watched file and prefetch the archive it points to if that has changed.
+	 * @return true if there was a new archive to prefetch
+	 */
+	boolean poll(File file) {
+		String value;
+		try {
+			value = file.exists()
+					? new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim()
+					: "";
+		}
+		catch (IOException e) {
+			log.info("Cannot read prefetch file: " + file + " (" + e + ")");
+			return false;
+		}
+		if (!StringUtils.hasText(value) || value.equals(this.last)) {
+			return false;
+		}
+		this.last = value;
+		prefetch(value);
+		return true;
+	}
+
+	/**
+	 * Resolve the dependencies of the archive provided, as in a dry run.
+	 * @return the class path, or null if it could not be resolved
+	 */
+	List<URL> prefetch(String archive) {
+		long t0 = System.currentTimeMillis();
+		String[] values = args(archive);
+		DependencyResolver engine = DependencyResolver.create();
+		try {
+			List<URL> urls = new ThinJarLauncher(values, engine).resolve(values);
+			log.info("Prefetched dependencies of " + archive + " in " + (System.currentTimeMillis() - t0) + "ms");
+			return urls;
+		}
+		catch (Exception e) {
+			log.info("Cannot prefetch dependencies of " + archive + " (" + e + ")");
+			return null;
+		}
+		finally {
+			// Don't keep the resolver (and its container) alive in the application
+			engine.dispose();
+		}
+	}
+
+	private boolean isWatched(File file) {
+		return file.isFile() && !file.getName().endsWith(".jar");
+	}
+
+	private String[] args(String archive) {
+		List<String> result = new ArrayList<>();
+		for (String arg : this.args) {
+			if (!arg.startsWith("--" + ThinJarLauncher.THIN_ARCHIVE) && !arg.startsWith("--" + ThinJarLauncher.THIN_PREFETCH)
+					&& !arg.startsWith("--" + ThinJarLauncher.THIN_DAEMON)) {
+				result.add(arg);
+			}
+		}
+		result.add("--" + ThinJarLauncher.THIN_ARCHIVE + "=" + archive);
+		// Make sure everything is downloaded
+		result.add("--" + ThinJarLauncher.THIN_DRYRUN + "=true");
+		return result.toArray(new String[0]);
+	}
+
+}
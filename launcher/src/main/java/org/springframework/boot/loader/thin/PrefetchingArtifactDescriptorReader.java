@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import javax.inject.Inject;
+
+import org.apache.maven.repository.internal.DefaultArtifactDescriptorReader;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.impl.ArtifactDescriptorReader;
+import org.eclipse.aether.resolution.ArtifactDescriptorException;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+
+/**
+ * An {@link ArtifactDescriptorReader} that hands each artifact to the
+ * {@link DownloadPipeline} of the session (if there is one) as soon as its descriptor
+ * has been read, so the download can start while collection carries on.
+ */
+class PrefetchingArtifactDescriptorReader implements ArtifactDescriptorReader {
+
+	private final ArtifactDescriptorReader delegate;
+
+	@Inject
+	public PrefetchingArtifactDescriptorReader(DefaultArtifactDescriptorReader delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public ArtifactDescriptorResult readArtifactDescriptor(RepositorySystemSession session,
+			ArtifactDescriptorRequest request) throws ArtifactDescriptorException {
+		ArtifactDescriptorResult result = this.delegate.readArtifactDescriptor(session, request);
+		DownloadPipeline pipeline = DownloadPipeline.get(session);
+		if (pipeline != null && result.getRelocations().isEmpty()) {
+			pipeline.prefetch(session, result.getArtifact(), request.getRepositories(), request.getRequestContext());
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A memory mapped index of the artifacts in a local repository, keyed by their
+ * coordinates, recording the path, size, timestamp and SHA-1 checksum of each file, and
+ * the id of the remote repository it came from (empty if it was installed locally). It
+ * is used to answer presence checks without touching the file system. When it is loaded
+ * a handful of entries are compared with the file system and if any of them is stale
+ * the whole index is discarded.
+ */
+class RepositoryIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(RepositoryIndex.class);
+
+	static final String NAME = ".thin-index";
+
+	private static final int MAGIC = 0x54484e49; // "THNI"
+
+	private static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 16;
+
+	private static final int ENTRY_SIZE = 56;
+
+	private static final int SAMPLES = 4;
+
+	private static final byte[] NO_CHECKSUM = new byte[20];
+
+	private final File repository;
+
+	private final File file;
+
+	private final ByteBuffer buffer;
+
+	private final int entries;
+
+	private final int slots;
+
+	private final int entriesOffset;
+
+	private final int namesOffset;
+
+	private final Map<String, Record> added = new ConcurrentHashMap<>();
+
+	private volatile boolean dirty;
+
+	private RepositoryIndex(File repository, ByteBuffer buffer) {
+		this.repository = repository;
+		this.file = new File(repository, NAME);
+		this.buffer = buffer;
+		if (buffer != null) {
+			this.entries = buffer.getInt(8);
+			this.slots = buffer.getInt(12);
+			this.entriesOffset = HEADER_SIZE + 4 * this.slots;
+			this.namesOffset = this.entriesOffset + ENTRY_SIZE * this.entries;
+		}
+		else {
+			this.entries = 0;
+			this.slots = 0;
+			this.entriesOffset = 0;
+			this.namesOffset = 0;
+		}
+	}
+
+	/**
+	 * Load the index for a local repository, or create an empty one if there is no index
+	 * yet or the existing one is invalid or out of date.
+	 * @param repository the local repository
+	 * @return an index
+	 */
+	public static RepositoryIndex load(File repository) {
+		File file = new File(repository, NAME);
+		if (file.exists()) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size >= HEADER_SIZE && size <= Integer.MAX_VALUE) {
+					ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+					if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+						RepositoryIndex index = new RepositoryIndex(repository, buffer);
+						if (index.isConsistent()) {
+							return index;
+						}
+					}
+				}
+				log.info("Discarding out of date repository index: " + file);
+			}
+			catch (IOException | RuntimeException e) {
+				log.info("Discarding invalid repository index: " + file);
+			}
+		}
+		return new RepositoryIndex(repository, null);
+	}
+
+	private boolean isConsistent() {
+		if (this.slots <= 0 || Integer.bitCount(this.slots) != 1 || this.namesOffset > this.buffer.capacity()) {
+			return false;
+		}
+		int step = Math.max(1, this.entries / SAMPLES);
+		for (int i = 0; i < this.entries; i += step) {
+			Record record = record(i);
+			File file = new File(this.repository, record.getPath());
+			if (file.length() != record.getSize() || file.lastModified() != record.getModified()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public File getRepository() {
+		return this.repository;
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	public boolean isDirty() {
+		return this.dirty;
+	}
+
+	/**
+	 * Look up the record for an artifact.
+	 * @param key the coordinates of the artifact
+	 * @return the record or null if the index does not know about it
+	 */
+	public Record find(String key) {
+		Record record = this.added.get(key);
+		if (record != null || this.buffer == null) {
+			return record;
+		}
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		int hash = key.hashCode();
+		for (int slot = hash & (this.slots - 1);; slot = (slot + 1) & (this.slots - 1)) {
+			int index = this.buffer.getInt(HEADER_SIZE + 4 * slot) - 1;
+			if (index < 0) {
+				return null;
+			}
+			int offset = this.entriesOffset + ENTRY_SIZE * index;
+			if (this.buffer.getInt(offset) == hash && matches(offset, bytes)) {
+				return record(index);
+			}
+		}
+	}
+
+	/**
+	 * Record the current state of a file in the local repository.
+	 * @param key the coordinates of the artifact
+	 * @param path the path of the file relative to the repository
+	 * @param origin the id of the remote repository that the file came from (empty if
+	 * it was installed locally)
+	 * @return the new record, or null if the file does not exist
+	 */
+	public Record add(String key, String path, String origin) {
+		File file = new File(this.repository, path);
+		long size = file.length();
+		long modified = file.lastModified();
+		if (modified == 0L) {
+			return null;
+		}
+		Record record = new Record(key, path, origin, size, modified, checksum(file));
+		this.added.put(key, record);
+		this.dirty = true;
+		return record;
+	}
+
+	/**
+	 * Write the index back to disk if anything was added since it was loaded. Failures
+	 * are logged and ignored because the index is only a cache.
+	 */
+	public synchronized void save() {
+		if (!isDirty()) {
+			return;
+		}
+		Map<String, Record> records = new LinkedHashMap<>();
+		for (int i = 0; i < this.entries; i++) {
+			Record record = record(i);
+			records.put(record.getKey(), record);
+		}
+		records.putAll(this.added);
+		this.dirty = false;
+		try {
+			if (!this.repository.exists() && !this.repository.mkdirs()) {
+				throw new IOException("Cannot create local repository: " + this.repository);
+			}
+			List<Record> list = new ArrayList<>(records.values());
+			LauncherUtils.write(this.file, stream -> write(stream, list));
+			log.info("Updated repository index: " + this.file + " (" + records.size() + " entries)");
+		}
+		catch (IOException e) {
+			log.info("Cannot update repository index: " + this.file + " (" + e.getMessage() + ")");
+		}
+	}
+
+	private static void write(OutputStream stream, List<Record> list) throws IOException {
+		int slots = Integer.highestOneBit(Math.max(list.size(), 1) * 4);
+		int[] table = new int[slots];
+		ByteArrayOutputStream names = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 65536));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(list.size());
+		output.writeInt(slots);
+		for (int i = 0; i < list.size(); i++) {
+			int slot = list.get(i).getKey().hashCode() & (slots - 1);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (slots - 1);
+			}
+			table[slot] = i + 1;
+		}
+		for (int head : table) {
+			output.writeInt(head);
+		}
+		for (Record record : list) {
+			byte[] key = record.getKey().getBytes(StandardCharsets.UTF_8);
+			byte[] path = record.getPath().getBytes(StandardCharsets.UTF_8);
+			byte[] origin = record.getOrigin().getBytes(StandardCharsets.UTF_8);
+			output.writeInt(record.getKey().hashCode());
+			output.writeInt(names.size());
+			output.writeInt(key.length);
+			output.writeInt(path.length);
+			output.writeLong(record.getSize());
+			output.writeLong(record.getModified());
+			output.write(record.checksum);
+			output.writeInt(origin.length);
+			names.write(key);
+			names.write(path);
+			names.write(origin);
+		}
+		names.writeTo(output);
+		output.flush();
+	}
+
+	private boolean matches(int offset, byte[] bytes) {
+		if (this.buffer.getInt(offset + 8) != bytes.length) {
+			return false;
+		}
+		int start = this.namesOffset + this.buffer.getInt(offset + 4);
+		for (int i = 0; i < bytes.length; i++) {
+			if (this.buffer.get(start + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Record record(int index) {
+		int offset = this.entriesOffset + ENTRY_SIZE * index;
+		int start = this.namesOffset + this.buffer.getInt(offset + 4);
+		int keyLength = this.buffer.getInt(offset + 8);
+		int pathLength = this.buffer.getInt(offset + 12);
+		int originLength = this.buffer.getInt(offset + 52);
+		byte[] checksum = new byte[20];
+		for (int i = 0; i < checksum.length; i++) {
+			checksum[i] = this.buffer.get(offset + 32 + i);
+		}
+		return new Record(string(start, keyLength), string(start + keyLength, pathLength),
+				string(start + keyLength + pathLength, originLength), this.buffer.getLong(offset + 16), this.buffer.getLong(offset + 24), checksum);
+	}
+
+	private String string(int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = this.buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] checksum(File file) {
+		// Re-use the checksum downloaded with the artifact, if there is one
+		File sha1 = new File(file.getPath() + ".sha1");
+		try {
+			String value = new String(Files.readAllBytes(sha1.toPath()), StandardCharsets.US_ASCII).trim();
+			if (value.length() >= 40) {
+				byte[] bytes = new byte[20];
+				for (int i = 0; i < bytes.length; i++) {
+					bytes[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+				}
+				return bytes;
+			}
+		}
+		catch (IOException | NumberFormatException e) {
+			// no checksum
+		}
+		return NO_CHECKSUM;
+	}
+
+	/**
+	 * The state of a single file in the local repository.
+	 */
+	static class Record {
+
+		private final String key;
+
+		private final String path;
+
+		private final String origin;
+
+		private final long size;
+
+		private final long modified;
+
+		private final byte[] checksum;
+
+		Record(String key, String path, String origin, long size, long modified, byte[] checksum) {
+			this.key = key;
+			this.path = path;
+			this.origin = origin == null ? "" : origin;
+			this.size = size;
+			this.modified = modified;
+			this.checksum = checksum;
+		}
+
+		public String getKey() {
+			return this.key;
+		}
+
+		public String getPath() {
+			return this.path;
+		}
+
+		/**
+		 * The id of the remote repository that the file came from.
+		 * @return the repository id, or empty if it was installed locally
+		 */
+		public String getOrigin() {
+			return this.origin;
+		}
+
+		public long getSize() {
+			return this.size;
+		}
+
+		public long getModified() {
+			return this.modified;
+		}
+
+		/**
+		 * The SHA-1 checksum of the file as a hex string, if it was known when the file
+		 * was indexed.
+		 * @return the checksum or null
+		 */
+		public String getChecksum() {
+			if (Arrays.equals(this.checksum, NO_CHECKSUM)) {
+				return null;
+			}
+			return LauncherUtils.hex(this.checksum);
+		}
+
+	}
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositoryListener;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Statistics for a resolution, written as JSON for dashboards and alerts: how many
+ * artifacts were already in the local repository and how many were downloaded, the
+ * requests, hits, misses, bytes and time for each remote repository (split between
+ * metadata and jars), and the slowest artifacts. It listens to the repository and
+ * transfer events of every session that {@link DependencyResolver} creates while it is
+ * registered.
+ */
+class ResolutionReport {
+
+	private static final Logger log = LoggerFactory.getLogger(ResolutionReport.class);
+
+	private static final int SLOWEST = 10;
+
+	private final Map<String, Repository> repositories = new LinkedHashMap<>();
+
+	private final Map<String, Long> resolving = new HashMap<>();
+
+	/**
+	 * Artifacts that were downloaded (possibly in a different thread from the one that
+	 * resolves them).
+	 */
+	private final Set<String> downloads = new HashSet<>();
+
+	private final List<Resolved> artifacts = new ArrayList<>();
+
+	private final Map<String, Long> times = new HashMap<>();
+
+	private final Transfers metadata = new Transfers();
+
+	private final Transfers jars = new Transfers();
+
+	private final RepositoryListener repositoryListener = new AbstractRepositoryListener() {
+
+		@Override
+		public void artifactResolving(RepositoryEvent event) {
+			started(key(event));
+		}
+
+		@Override
+		public void artifactDownloaded(RepositoryEvent event) {
+			downloaded(event);
+		}
+
+		@Override
+		public void artifactResolved(RepositoryEvent event) {
+			resolved(key(event), event);
+		}
+
+	};
+
+	private final TransferListener transferListener = new AbstractTransferListener() {
+
+		@Override
+		public void transferInitiated(TransferEvent event) {
+			initiated(event.getResource());
+		}
+
+		@Override
+		public void transferSucceeded(TransferEvent event) {
+			finished(event.getResource(), event.getTransferredBytes(), null);
+		}
+
+		@Override
+		public void transferFailed(TransferEvent event) {
+			finished(event.getResource(), event.getTransferredBytes(), event.getException());
+		}
+
+	};
+
+	RepositoryListener getRepositoryListener() {
+		return this.repositoryListener;
+	}
+
+	TransferListener getTransferListener() {
+		return this.transferListener;
+	}
+
+	private synchronized void started(String key) {
+		this.resolving.put(key, System.currentTimeMillis());
+	}
+
+	private synchronized void downloaded(RepositoryEvent event) {
+		if (event.getException() == null) {
+			this.downloads.add(ResolvedGraph.id(event.getArtifact()));
+		}
+	}
+
+	private synchronized void resolved(String key, RepositoryEvent event) {
+		Long start = this.resolving.remove(key);
+		// The repository is where it came from originally, even if it was already local
+		ArtifactRepository repository = event.getRepository();
+		if (repository instanceof RemoteRepository) {
+			repository(((RemoteRepository) repository).getUrl()).id = repository.getId();
+		}
+		boolean downloaded = this.downloads.contains(ResolvedGraph.id(event.getArtifact()));
+		File file = event.getArtifact().getFile();
+		long time = start == null ? 0 : System.currentTimeMillis() - start;
+		this.times.put(ResolvedGraph.id(event.getArtifact()), time);
+		this.artifacts.add(new Resolved(event.getArtifact().toString(),
+				repository == null ? null : repository.getId(), downloaded,
+				file == null ? -1 : file.length(), time));
+	}
+
+	/**
+	 * @param artifact an artifact
+	 * @return true if the artifact was downloaded while the report was registered
+	 */
+	synchronized boolean isDownloaded(Artifact artifact) {
+		return this.downloads.contains(ResolvedGraph.id(artifact));
+	}
+
+	/**
+	 * @param artifact an artifact
+	 * @return the time it took to resolve the artifact in milliseconds (0 if it was not
+	 * resolved while the report was registered)
+	 */
+	synchronized long getTime(Artifact artifact) {
+		Long time = this.times.get(ResolvedGraph.id(artifact));
+		return time == null ? 0 : time;
+	}
+
+	private synchronized void initiated(TransferResource resource) {
+		repository(resource.getRepositoryUrl()).requests++;
+	}
+
+	private synchronized void finished(TransferResource resource, long bytes, Exception error) {
+		Repository repository = repository(resource.getRepositoryUrl());
+		long time = resource.getTransferStartTime() > 0
+				? System.currentTimeMillis() - resource.getTransferStartTime()
+				: 0;
+		repository.bytes += bytes;
+		repository.time += time;
+		if (error == null) {
+			repository.hits++;
+		}
+		else if (error instanceof ArtifactNotFoundException
+				|| error instanceof MetadataNotFoundException) {
+			repository.misses++;
+		}
+		else {
+			repository.errors++;
+		}
+		Transfers transfers = resource.getResourceName().endsWith(".jar") ? this.jars
+				: this.metadata;
+		transfers.count++;
+		transfers.bytes += bytes;
+		transfers.time += time;
+	}
+
+	private Repository repository(String url) {
+		// Transfers and repositories don't agree about the trailing slash
+		String key = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+		return this.repositories.computeIfAbsent(key, Repository::new);
+	}
+
+	private static String key(RepositoryEvent event) {
+		return Thread.currentThread().getId() + ":" + ResolvedGraph.id(event.getArtifact());
+	}
+
+	synchronized String toJson(String archive, long time) {
+		int downloaded = 0;
+		for (Resolved artifact : this.artifacts) {
+			if (artifact.downloaded) {
+				downloaded++;
+			}
+		}
+		int total = this.artifacts.size();
+		StringBuilder json = new StringBuilder("{\n");
+		json.append("  \"archive\": ").append(LauncherUtils.json(archive)).append(",\n");
+		json.append("  \"time\": ").append(time).append(",\n");
+		String rate = total == 0 ? "1.0"
+				: String.format(Locale.ROOT, "%.3f", (total - downloaded) / (double) total);
+		json.append("  \"artifacts\": { \"resolved\": ").append(total).append(", \"local\": ")
+				.append(total - downloaded).append(", \"downloaded\": ").append(downloaded)
+				.append(", \"hitRate\": ").append(rate).append(" },\n");
+		json.append("  \"transfers\": { \"metadata\": ").append(this.metadata)
+				.append(", \"jars\": ").append(this.jars).append(" },\n");
+		json.append("  \"repositories\": [");
+		String separator = "\n";
+		for (Repository repository : this.repositories.values()) {
+			json.append(separator).append("    ").append(repository);
+			separator = ",\n";
+		}
+		json.append(this.repositories.isEmpty() ? "],\n" : "\n  ],\n");
+		List<Resolved> slowest = new ArrayList<>(this.artifacts);
+		Collections.sort(slowest, (one, two) -> Long.compare(two.time, one.time));
+		json.append("  \"slowest\": [");
+		separator = "\n";
+		for (Resolved artifact : slowest.subList(0, Math.min(SLOWEST, slowest.size()))) {
+			json.append(separator).append("    ").append(artifact);
+			separator = ",\n";
+		}
+		json.append(slowest.isEmpty() ? "]\n" : "\n  ]\n");
+		return json.append("}\n").toString();
+	}
+
+	/**
+	 * Write the report atomically, so a dashboard never reads half of it.
+	 */
+	void write(File file, String archive, long time) {
+		try {
+			LauncherUtils.write(file, stream -> stream.write(toJson(archive, time).getBytes(StandardCharsets.UTF_8)));
+			log.info("Saved resolution report: " + file);
+		}
+		catch (IOException e) {
+			log.info("Cannot save resolution report: " + file + " (" + e.getMessage() + ")");
+		}
+	}
+
+	private static class Repository {
+
+		private final String url;
+
+		private String id;
+
+		private int requests;
+
+		private int hits;
+
+		private int misses;
+
+		private int errors;
+
+		private long bytes;
+
+		private long time;
+
+		Repository(String url) {
+			this.url = url;
+		}
+
+		@Override
+		public String toString() {
+			return "{ \"id\": " + LauncherUtils.json(this.id) + ", \"url\": " + LauncherUtils.json(this.url)
+					+ ", \"requests\": " + this.requests + ", \"hits\": " + this.hits + ", \"misses\": " + this.misses
+					+ ", \"errors\": " + this.errors + ", \"bytes\": " + this.bytes + ", \"time\": "
+					+ this.time + " }";
+		}
+
+	}
+
+	private static class Transfers {
+
+		private int count;
+
+		private long bytes;
+
+		private long time;
+
+		@Override
+		public String toString() {
+			return "{ \"count\": " + this.count + ", \"bytes\": " + this.bytes + ", \"time\": " + this.time
+					+ " }";
+		}
+
+	}
+
+	private static class Resolved {
+
+		private final String artifact;
+
+		private final String repository;
+
+		private final boolean downloaded;
+
+		private final long bytes;
+
+		private final long time;
+
+		Resolved(String artifact, String repository, boolean downloaded, long bytes, long time) {
+			this.artifact = artifact;
+			this.repository = repository;
+			this.downloaded = downloaded;
+			this.bytes = bytes;
+			this.time = time;
+		}
+
+		@Override
+		public String toString() {
+			return "{ \"artifact\": " + LauncherUtils.json(this.artifact) + ", \"repository\": "
+					+ LauncherUtils.json(this.repository) + ", \"downloaded\": " + this.downloaded
+					+ ", \"bytes\": " + this.bytes + ", \"time\": " + this.time + " }";
+		}
+
+	}
+
+}
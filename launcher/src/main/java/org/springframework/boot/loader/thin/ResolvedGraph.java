@@ -0,0 +1,592 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * A snapshot of a resolved dependency graph: the direct dependencies and dependency
+ * management of the project it came from, the repositories it was resolved against and
+ * the flattened result. A profile that only adds dependencies or exclusions can be
+ * resolved on top of a snapshot of the base graph without building the project again.
+ * Snapshots that do not depend on anything that can change on its own (snapshot
+ * versions or version ranges) are also saved in the local repository, so the next
+ * launch with a different profile can use them. They are keyed on the pom, the
+ * properties and the repositories, and record the parent and imported poms that the
+ * model was built from, so a change to any of those makes them out of date.
+ */
+class ResolvedGraph {
+
+	private static final Logger log = LoggerFactory.getLogger(ResolvedGraph.class);
+
+	static final String DIRECTORY = ".thin-graphs";
+
+	private final List<Dependency> direct;
+
+	private final List<Dependency> managed;
+
+	private final List<RemoteRepository> repositories;
+
+	private final Set<String> profiles;
+
+	private final List<Dependency> dependencies;
+
+	private final List<Source> sources;
+
+	private final boolean ranges;
+
+	ResolvedGraph(List<Dependency> direct, List<Dependency> managed, List<RemoteRepository> repositories,
+			Set<String> profiles, List<Dependency> dependencies) {
+		this(direct, managed, repositories, profiles, dependencies, Collections.<Source>emptyList(), false);
+	}
+
+	/**
+	 * @param sources the parent and imported poms that the model was built from
+	 * @param ranges true if any version in the graph came from a range
+	 */
+	ResolvedGraph(List<Dependency> direct, List<Dependency> managed, List<RemoteRepository> repositories,
+			Set<String> profiles, List<Dependency> dependencies, List<Source> sources, boolean ranges) {
+		this.direct = direct;
+		this.managed = managed;
+		this.repositories = repositories;
+		this.profiles = profiles;
+		this.dependencies = dependencies;
+		this.sources = sources;
+		this.ranges = ranges;
+	}
+
+	/**
+	 * A graph with nothing but the resolved dependencies (e.g. from pre-computed
+	 * properties).
+	 */
+	ResolvedGraph(List<Dependency> dependencies) {
+		this(Collections.<Dependency>emptyList(), Collections.<Dependency>emptyList(),
+				Collections.<RemoteRepository>emptyList(), Collections.<String>emptySet(), dependencies);
+	}
+
+	public List<Dependency> getDirect() {
+		return this.direct;
+	}
+
+	public List<Dependency> getManaged() {
+		return this.managed;
+	}
+
+	public List<RemoteRepository> getRepositories() {
+		return this.repositories;
+	}
+
+	/**
+	 * The ids of the Maven profiles declared in the project and its parents. Activating
+	 * any of them changes the model, so a delta is not enough.
+	 */
+	public Set<String> getProfiles() {
+		return this.profiles;
+	}
+
+	public List<Dependency> getDependencies() {
+		return this.dependencies;
+	}
+
+	public boolean isSnapshot() {
+		for (Dependency dependency : this.dependencies) {
+			if (dependency.getArtifact().isSnapshot()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The parent and imported poms that the model was built from.
+	 */
+	public List<Source> getSources() {
+		return this.sources;
+	}
+
+	/**
+	 * Check if the graph can be saved for another launch. It must not depend on
+	 * anything that can change while the pom, the properties and the repositories stay
+	 * the same: snapshots or version ranges, in the dependencies or in the parent and
+	 * imported poms.
+	 */
+	public boolean isPersistable() {
+		if (this.ranges || isSnapshot()) {
+			return false;
+		}
+		for (Dependency dependency : this.managed) {
+			if (isRange(dependency.getArtifact().getVersion())) {
+				return false;
+			}
+		}
+		for (Source source : this.sources) {
+			if (source.isSnapshot() || isRange(source.getVersion())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isRange(String version) {
+		return version != null && (version.startsWith("[") || version.startsWith("("));
+	}
+
+	/**
+	 * Compute a cache key for the graph of this pom resolved with these properties
+	 * against these repositories (the ones from the settings; the ones declared in the
+	 * pom and its parents are covered by the pom itself and the sources).
+	 */
+	public static String key(Resource pom, Properties properties, List<RemoteRepository> repositories) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			try (InputStream stream = pom.getInputStream()) {
+				digest.update(StreamUtils.copyToByteArray(stream));
+			}
+			for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+				digest.update((name + "=" + properties.getProperty(name) + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+			for (RemoteRepository repository : repositories) {
+				digest.update(("repository=" + repository.getId() + " " + repository.getUrl() + "\n")
+						.getBytes(StandardCharsets.UTF_8));
+			}
+			return LauncherUtils.hex(digest.digest());
+		}
+		catch (IOException | NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Cannot compute key for: " + pom, e);
+		}
+	}
+
+	public static ResolvedGraph load(File repository, String key) {
+		File file = new File(new File(repository, DIRECTORY), key + ".properties");
+		if (!file.exists()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream stream = Files.newInputStream(file.toPath())) {
+			properties.load(stream);
+			List<RemoteRepository> repositories = new ArrayList<>();
+			for (int i = 0; properties.containsKey("repositories." + i); i++) {
+				String prefix = "repositories." + i;
+				repositories.add(new RemoteRepository.Builder(properties.getProperty(prefix),
+						properties.getProperty(prefix + ".layout", "default"), properties.getProperty(prefix + ".url"))
+								.setReleasePolicy(policy(properties, prefix + ".releases"))
+								.setSnapshotPolicy(policy(properties, prefix + ".snapshots")).build());
+			}
+			List<Source> sources = new ArrayList<>();
+			for (int i = 0; properties.containsKey("sources." + i); i++) {
+				String prefix = "sources." + i;
+				Source source = new Source(properties.getProperty(prefix), new File(properties.getProperty(prefix + ".file")),
+						Long.valueOf(properties.getProperty(prefix + ".length")),
+						Long.valueOf(properties.getProperty(prefix + ".modified")));
+				if (!source.isCurrent()) {
+					log.info("Discarding out of date dependency graph: " + file + " (" + source + " has changed)");
+					return null;
+				}
+				sources.add(source);
+			}
+			log.info("Loaded dependency graph: " + file);
+			return new ResolvedGraph(dependencies(properties, "direct"), dependencies(properties, "managed"),
+					repositories, StringUtils.commaDelimitedListToSet(properties.getProperty("profiles", "")),
+					dependencies(properties, "resolved"), sources, false);
+		}
+		catch (IOException | RuntimeException e) {
+			log.info("Discarding invalid dependency graph: " + file);
+			return null;
+		}
+	}
+
+	public void save(File repository, String key) {
+		File directory = new File(repository, DIRECTORY);
+		File file = new File(directory, key + ".properties");
+		Properties properties = new Properties();
+		properties.setProperty("profiles", StringUtils.collectionToCommaDelimitedString(this.profiles));
+		store(properties, "direct", this.direct);
+		store(properties, "managed", this.managed);
+		store(properties, "resolved", this.dependencies);
+		for (int i = 0; i < this.repositories.size(); i++) {
+			RemoteRepository remote = this.repositories.get(i);
+			String prefix = "repositories." + i;
+			properties.setProperty(prefix, remote.getId());
+			properties.setProperty(prefix + ".url", remote.getUrl());
+			properties.setProperty(prefix + ".layout", remote.getContentType());
+			properties.setProperty(prefix + ".releases", String.valueOf(remote.getPolicy(false).isEnabled()));
+			properties.setProperty(prefix + ".snapshots", String.valueOf(remote.getPolicy(true).isEnabled()));
+		}
+		for (int i = 0; i < this.sources.size(); i++) {
+			Source source = this.sources.get(i);
+			String prefix = "sources." + i;
+			properties.setProperty(prefix, source.getCoordinates());
+			properties.setProperty(prefix + ".file", source.getFile().getAbsolutePath());
+			properties.setProperty(prefix + ".length", String.valueOf(source.getLength()));
+			properties.setProperty(prefix + ".modified", String.valueOf(source.getModified()));
+		}
+		try {
+			LauncherUtils.write(file, stream -> properties.store(stream, null));
+			log.info("Saved dependency graph: " + file);
+		}
+		catch (IOException e) {
+			log.info("Cannot save dependency graph: " + file + " (" + e.getMessage() + ")");
+		}
+	}
+
+	private static RepositoryPolicy policy(Properties properties, String name) {
+		return new RepositoryPolicy(!"false".equals(properties.getProperty(name)), null, null);
+	}
+
+	private static List<Dependency> dependencies(Properties properties, String prefix) {
+		List<Dependency> list = new ArrayList<>();
+		for (int i = 0; properties.containsKey(prefix + "." + i); i++) {
+			String name = prefix + "." + i;
+			List<Exclusion> exclusions = new ArrayList<>();
+			for (String value : StringUtils.commaDelimitedListToStringArray(properties.getProperty(name + ".exclusions", ""))) {
+				String[] tokens = value.split(":", -1);
+				exclusions.add(new Exclusion(tokens[0], tokens[1], tokens[2], tokens[3]));
+			}
+			list.add(new Dependency(new DefaultArtifact(properties.getProperty(name)),
+					properties.getProperty(name + ".scope", ""),
+					properties.containsKey(name + ".optional") ? true : null, exclusions));
+		}
+		return list;
+	}
+
+	private static void store(Properties properties, String prefix, List<Dependency> dependencies) {
+		for (int i = 0; i < dependencies.size(); i++) {
+			Dependency dependency = dependencies.get(i);
+			String name = prefix + "." + i;
+			properties.setProperty(name, dependency.getArtifact().toString());
+			properties.setProperty(name + ".scope", dependency.getScope());
+			if (dependency.isOptional()) {
+				properties.setProperty(name + ".optional", "true");
+			}
+			if (!dependency.getExclusions().isEmpty()) {
+				List<String> exclusions = new ArrayList<>();
+				for (Exclusion exclusion : dependency.getExclusions()) {
+					exclusions.add(exclusion.getGroupId() + ":" + exclusion.getArtifactId() + ":"
+							+ exclusion.getClassifier() + ":" + exclusion.getExtension());
+				}
+				properties.setProperty(name + ".exclusions", StringUtils.collectionToCommaDelimitedString(exclusions));
+			}
+		}
+	}
+
+	/**
+	 * The identity of an artifact in the graph, ignoring the version, so that
+	 * different versions of the same artifact can be recognized as a conflict.
+	 */
+	static String id(Artifact artifact) {
+		return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getExtension() + ":"
+				+ artifact.getClassifier();
+	}
+
+	/**
+	 * Compare the properties for the base graph with the properties for a profile and
+	 * work out the dependencies it adds and the artifacts it excludes. Returns null if
+	 * the profile changes anything else (e.g. boms or properties that other values
+	 * refer to), in which case the profile has to be resolved from scratch.
+	 */
+	public static Delta delta(Properties base, Properties properties) {
+		Delta delta = new Delta();
+		Set<String> names = new TreeSet<>(base.stringPropertyNames());
+		names.addAll(properties.stringPropertyNames());
+		for (String name : names) {
+			String before = base.getProperty(name);
+			String after = properties.getProperty(name);
+			if (ObjectUtils.nullSafeEquals(before, after) || ThinJarLauncher.THIN_PROFILE.equals(name)) {
+				continue;
+			}
+			if (after != null && name.startsWith("dependencies.")) {
+				delta.additions.add(artifact(properties, after));
+			}
+			else if (after != null && name.startsWith("exclusions.")) {
+				delta.exclusions.add(artifact(properties, after));
+			}
+			else if (after == null && name.startsWith("dependencies.")
+					&& properties.containsKey("exclusions." + name.substring("dependencies.".length()))) {
+				// Replaced by an exclusion, which is already in the delta
+				continue;
+			}
+			else {
+				return null;
+			}
+		}
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith("exclusions.")) {
+				Artifact artifact = artifact(properties, properties.getProperty(name));
+				delta.global.add(new Exclusion(artifact.getGroupId(), artifact.getArtifactId(), "*", "*"));
+			}
+		}
+		if (properties.containsKey(ThinJarLauncher.THIN_PROFILE)) {
+			delta.profiles.addAll(
+					StringUtils.commaDelimitedListToSet(properties.getProperty(ThinJarLauncher.THIN_PROFILE)));
+		}
+		return delta;
+	}
+
+	private static Artifact artifact(Properties properties, String value) {
+		return ThinPropertiesModelProcessor
+				.artifact(ThinPropertiesModelProcessor.replacePlaceholder(properties, value));
+	}
+
+	/**
+	 * A parent or imported pom that a model was built from, with the state of its file
+	 * at the time.
+	 */
+	static class Source {
+
+		private final String coordinates;
+
+		private final File file;
+
+		private final long length;
+
+		private final long modified;
+
+		Source(String coordinates, File file) {
+			this(coordinates, file, file.length(), file.lastModified());
+		}
+
+		Source(String coordinates, File file, long length, long modified) {
+			this.coordinates = coordinates;
+			this.file = file;
+			this.length = length;
+			this.modified = modified;
+		}
+
+		public String getCoordinates() {
+			return this.coordinates;
+		}
+
+		public String getVersion() {
+			return this.coordinates.substring(this.coordinates.lastIndexOf(':') + 1);
+		}
+
+		public File getFile() {
+			return this.file;
+		}
+
+		public long getLength() {
+			return this.length;
+		}
+
+		public long getModified() {
+			return this.modified;
+		}
+
+		public boolean isSnapshot() {
+			return getVersion().endsWith("SNAPSHOT");
+		}
+
+		/**
+		 * Check if the file is still the same as when the model was built.
+		 */
+		public boolean isCurrent() {
+			return this.file.length() == this.length && this.file.lastModified() == this.modified;
+		}
+
+		@Override
+		public String toString() {
+			return this.coordinates;
+		}
+
+	}
+
+	/**
+	 * The difference between the properties of a profile and the properties of the base
+	 * graph, in terms of added dependencies and exclusions.
+	 */
+	static class Delta {
+
+		private final List<Artifact> additions = new ArrayList<>();
+
+		private final List<Artifact> exclusions = new ArrayList<>();
+
+		private final Set<Exclusion> global = new LinkedHashSet<>();
+
+		private final Set<String> profiles = new LinkedHashSet<>();
+
+		/**
+		 * Check if the delta can be applied to the graph at all, i.e. that it does not
+		 * activate a Maven profile in the project.
+		 */
+		public boolean isApplicable(ResolvedGraph graph) {
+			return Collections.disjoint(this.profiles, graph.getProfiles());
+		}
+
+		/**
+		 * Check if the delta only adds new direct dependencies to the graph, so that
+		 * they can be resolved on their own and merged with it.
+		 */
+		public boolean isAdditive(ResolvedGraph graph) {
+			if (!this.exclusions.isEmpty()) {
+				return false;
+			}
+			for (Artifact artifact : this.additions) {
+				for (Dependency dependency : graph.getDirect()) {
+					if (isSameArtifact(artifact, dependency.getArtifact())) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * The added dependencies on their own, with dependency management applied.
+		 */
+		public List<Dependency> additions(ResolvedGraph graph) {
+			List<Dependency> list = new ArrayList<>();
+			for (Artifact artifact : this.additions) {
+				list.add(manage(artifact, graph.getManaged()));
+			}
+			return list;
+		}
+
+		/**
+		 * The direct dependencies of the graph with the delta applied, the same way
+		 * that {@link ThinPropertiesModelProcessor} applies it to a model.
+		 */
+		public List<Dependency> apply(ResolvedGraph graph) {
+			List<Dependency> list = new ArrayList<>(graph.getDirect());
+			for (Artifact artifact : this.additions) {
+				boolean replaced = false;
+				for (int i = 0; i < list.size(); i++) {
+					Dependency dependency = list.get(i);
+					if (isSameArtifact(artifact, dependency.getArtifact())) {
+						if (StringUtils.hasText(artifact.getVersion())) {
+							dependency = dependency.setArtifact(
+									dependency.getArtifact().setVersion(artifact.getVersion()));
+						}
+						list.set(i, dependency.setScope("runtime"));
+						replaced = true;
+					}
+				}
+				if (!replaced) {
+					list.add(manage(artifact, graph.getManaged()));
+				}
+			}
+			for (Artifact artifact : this.exclusions) {
+				for (int i = list.size() - 1; i >= 0; i--) {
+					Artifact target = list.get(i).getArtifact();
+					if (target.getGroupId().equals(artifact.getGroupId())
+							&& target.getArtifactId().equals(artifact.getArtifactId())
+							&& target.getClassifier().equals(artifact.getClassifier())) {
+						list.remove(i);
+					}
+				}
+			}
+			for (int i = 0; i < list.size(); i++) {
+				list.set(i, exclude(list.get(i)));
+			}
+			return list;
+		}
+
+		private Dependency manage(Artifact artifact, List<Dependency> managed) {
+			Dependency dependency = new Dependency(artifact, "");
+			for (Dependency candidate : managed) {
+				if (id(candidate.getArtifact()).equals(id(artifact))) {
+					if (!StringUtils.hasText(artifact.getVersion())) {
+						dependency = dependency.setArtifact(artifact.setVersion(candidate.getArtifact().getVersion()));
+					}
+					dependency = dependency.setScope(candidate.getScope())
+							.setExclusions(candidate.getExclusions());
+					break;
+				}
+			}
+			if (!StringUtils.hasText(dependency.getArtifact().getVersion())) {
+				throw new IllegalStateException("No version for dependency: " + artifact);
+			}
+			if (!StringUtils.hasText(dependency.getScope())) {
+				dependency = dependency.setScope("compile");
+			}
+			return exclude(dependency);
+		}
+
+		private Dependency exclude(Dependency dependency) {
+			if (this.global.isEmpty()) {
+				return dependency;
+			}
+			Set<Exclusion> exclusions = new LinkedHashSet<>(dependency.getExclusions());
+			exclusions.addAll(this.global);
+			return dependency.setExclusions(exclusions);
+		}
+
+		private static boolean isSameArtifact(Artifact artifact, Artifact target) {
+			return target.getGroupId().equals(artifact.getGroupId())
+					&& target.getArtifactId().equals(artifact.getArtifactId())
+					&& ObjectUtils.nullSafeEquals(StringUtils.trimWhitespace(artifact.getClassifier()),
+							StringUtils.trimWhitespace(target.getClassifier()));
+		}
+
+	}
+
+	/**
+	 * Merge the resolved dependencies of a delta (or a child) into the dependencies of
+	 * the graph. Returns null if they bring in a different version of an artifact that
+	 * is already in the graph, since then the two have to be mediated together.
+	 */
+	public List<Dependency> merge(List<Dependency> added) {
+		Map<String, String> versions = new HashMap<>();
+		for (Dependency dependency : this.dependencies) {
+			versions.put(id(dependency.getArtifact()), dependency.getArtifact().getBaseVersion());
+		}
+		List<Dependency> result = new ArrayList<>(this.dependencies);
+		for (Dependency dependency : added) {
+			String id = id(dependency.getArtifact());
+			String version = versions.get(id);
+			if (version == null) {
+				versions.put(id, dependency.getArtifact().getBaseVersion());
+				result.add(dependency);
+			}
+			else if (!version.equals(dependency.getArtifact().getBaseVersion())) {
+				log.info("Conflict with base dependency graph: " + dependency.getArtifact() + " (base has "
+						+ version + ")");
+				return null;
+			}
+		}
+		return result;
+	}
+
+}
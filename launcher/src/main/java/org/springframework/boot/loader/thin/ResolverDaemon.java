@@ -0,0 +1,376 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-lived process that keeps a warm {@link DependencyResolver} (container, settings,
+ * caches) and resolves class paths for launches on the same host. It listens on the
+ * loopback interface and advertises its port and a random token in a file that only the
+ * owner can read, so only processes that can read that file can use it.
+ * <p>
+ * The protocol is line based (UTF-8): the client sends the token, a command
+ * (<code>RESOLVE</code>, <code>PING</code> or <code>STOP</code>), one URL-encoded launcher
+ * argument per line and a blank line. The daemon answers <code>OK</code> followed by one
+ * URL per line and a blank line, or <code>ERROR</code> and a message.
+ */
+class ResolverDaemon implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(ResolverDaemon.class);
+
+	static final String FILE = "daemon.properties";
+
+	static final String RESOLVE = "RESOLVE";
+
+	static final String PING = "PING";
+
+	static final String STOP = "STOP";
+
+	private static final int TIMEOUT = 5000;
+
+	private final File directory;
+
+	private final long idle;
+
+	private final Resolver resolver;
+
+	private final String token = token();
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	private volatile long lastUsed = System.currentTimeMillis();
+
+	private ServerSocket server;
+
+	private ExecutorService workers;
+
+	ResolverDaemon(File directory, long idle, Resolver resolver) {
+		this.directory = directory;
+		this.idle = idle;
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Bind to a free port on the loopback interface, advertise it and start accepting
+	 * requests in the background.
+	 * @return the port
+	 */
+	int start() throws IOException {
+		this.server = new ServerSocket();
+		this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		this.server.setSoTimeout((int) Math.max(10, Math.min(this.idle, 1000)));
+		this.workers = Executors.newCachedThreadPool(DependencyResolver.threads("thin-daemon-worker-"));
+		advertise(this.server.getLocalPort());
+		Thread acceptor = new Thread(this::accept, "thin-daemon");
+		acceptor.start();
+		log.info("Resolver daemon listening on port: " + this.server.getLocalPort());
+		return this.server.getLocalPort();
+	}
+
+	/**
+	 * Block until the daemon is stopped or has been idle for too long.
+	 */
+	void await() throws InterruptedException {
+		this.stopped.await();
+	}
+
+	@Override
+	public void close() {
+		try {
+			if (this.server != null) {
+				this.server.close();
+			}
+		}
+		catch (IOException e) {
+			// ignore
+		}
+		if (this.workers != null) {
+			this.workers.shutdown();
+		}
+		File file = new File(this.directory, FILE);
+		Properties properties = read(file);
+		if (properties != null && this.token.equals(properties.getProperty("token"))) {
+			// Leave it alone if another daemon has taken over since we started
+			file.delete();
+		}
+		this.stopped.countDown();
+	}
+
+	private void accept() {
+		try {
+			while (!this.server.isClosed()) {
+				Socket socket;
+				try {
+					socket = this.server.accept();
+				}
+				catch (SocketTimeoutException e) {
+					if (this.active.get() == 0 && System.currentTimeMillis() - this.lastUsed > this.idle) {
+						log.info("Resolver daemon idle, shutting down");
+						break;
+					}
+					continue;
+				}
+				this.active.incrementAndGet();
+				this.workers.execute(() -> handle(socket));
+			}
+		}
+		catch (IOException e) {
+			if (!this.server.isClosed()) {
+				log.info("Resolver daemon failed: " + e);
+			}
+		}
+		finally {
+			close();
+		}
+	}
+
+	private void handle(Socket socket) {
+		try {
+			socket.setSoTimeout(TIMEOUT);
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter writer = writer(socket.getOutputStream());
+			if (!matches(this.token, reader.readLine())) {
+				writer.print("ERROR Invalid token\n");
+				writer.flush();
+				return;
+			}
+			String command = reader.readLine();
+			List<String> args = readArgs(reader);
+			if (PING.equals(command)) {
+				writer.print("OK\n\n");
+			}
+			else if (STOP.equals(command)) {
+				writer.print("OK\n\n");
+				writer.flush();
+				this.server.close();
+			}
+			else if (RESOLVE.equals(command)) {
+				// Resolution can take as long as it needs (e.g. downloads)
+				socket.setSoTimeout(0);
+				try {
+					List<URL> urls = this.resolver.resolve(args.toArray(new String[0]));
+					writer.print("OK\n");
+					for (URL url : urls) {
+						writer.print(url + "\n");
+					}
+					writer.print("\n");
+				}
+				catch (Exception e) {
+					log.info("Cannot resolve: " + args + " (" + e + ")");
+					writer.print("ERROR " + String.valueOf(e).replace('\n', ' ') + "\n");
+				}
+			}
+			else {
+				writer.print("ERROR Unknown command: " + command + "\n");
+			}
+			writer.flush();
+		}
+		catch (IOException e) {
+			log.info("Resolver daemon request failed: " + e);
+		}
+		finally {
+			this.lastUsed = System.currentTimeMillis();
+			this.active.decrementAndGet();
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private void advertise(int port) throws IOException {
+		if (!this.directory.exists() && !this.directory.mkdirs()) {
+			throw new IOException("Cannot create daemon directory: " + this.directory);
+		}
+		Properties properties = new Properties();
+		properties.setProperty("port", String.valueOf(port));
+		properties.setProperty("token", this.token);
+		File file = new File(this.directory, FILE);
+		File temp = File.createTempFile("daemon", ".tmp", this.directory);
+		// Readable only by the owner, before anything is written to it
+		temp.setReadable(false, false);
+		temp.setReadable(true, true);
+		temp.setWritable(false, false);
+		temp.setWritable(true, true);
+		try (OutputStream output = new FileOutputStream(temp)) {
+			properties.store(output, "Thin launcher resolver daemon");
+		}
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Cannot write daemon file: " + file);
+			}
+		}
+	}
+
+	/**
+	 * Ask a running daemon (if there is one) to resolve the class path for the launcher
+	 * arguments provided.
+	 * @return the class path URLs, or null if there is no daemon or it cannot help
+	 */
+	static List<URL> resolve(File directory, List<String> args) {
+		List<String> lines = send(directory, RESOLVE, args);
+		if (lines == null) {
+			return null;
+		}
+		try {
+			List<URL> urls = new ArrayList<>();
+			for (String line : lines) {
+				urls.add(new URL(line));
+			}
+			return urls;
+		}
+		catch (IOException e) {
+			log.info("Invalid response from resolver daemon: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Send a command to a running daemon.
+	 * @return the lines of a successful response, or null if there is no daemon or the
+	 * command failed
+	 */
+	static List<String> send(File directory, String command, List<String> args) {
+		Properties properties = read(new File(directory, FILE));
+		if (properties == null) {
+			return null;
+		}
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+					Integer.parseInt(properties.getProperty("port", "0"))), TIMEOUT);
+			PrintWriter writer = writer(socket.getOutputStream());
+			writer.print(properties.getProperty("token", "") + "\n");
+			writer.print(command + "\n");
+			for (String arg : args) {
+				writer.print(URLEncoder.encode(arg, "UTF-8") + "\n");
+			}
+			writer.print("\n");
+			writer.flush();
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			String status = reader.readLine();
+			if (!"OK".equals(status)) {
+				log.info("Resolver daemon cannot help: " + status);
+				return null;
+			}
+			List<String> lines = new ArrayList<>();
+			String line = reader.readLine();
+			while (line != null && line.length() > 0) {
+				lines.add(line);
+				line = reader.readLine();
+			}
+			return lines;
+		}
+		catch (Exception e) {
+			log.info("Resolver daemon not available: " + e);
+			return null;
+		}
+	}
+
+	private static List<String> readArgs(BufferedReader reader) throws IOException {
+		List<String> args = new ArrayList<>();
+		String line = reader.readLine();
+		while (line != null && line.length() > 0) {
+			args.add(URLDecoder.decode(line, "UTF-8"));
+			line = reader.readLine();
+		}
+		return args;
+	}
+
+	private static Properties read(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream input = new FileInputStream(file)) {
+			properties.load(input);
+		}
+		catch (IOException e) {
+			return null;
+		}
+		return properties;
+	}
+
+	private static PrintWriter writer(OutputStream output) {
+		Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+		return new PrintWriter(writer);
+	}
+
+	private static boolean matches(String token, String value) {
+		if (value == null) {
+			return false;
+		}
+		return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+				value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String token() {
+		byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		return LauncherUtils.hex(bytes);
+	}
+
+	/**
+	 * Strategy for turning launcher arguments into a class path.
+	 */
+	interface Resolver {
+
+		List<URL> resolve(String[] args) throws Exception;
+
+	}
+
+}
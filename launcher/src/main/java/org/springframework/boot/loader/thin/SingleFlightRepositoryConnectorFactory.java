@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.inject.Inject;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.ArtifactDownload;
+import org.eclipse.aether.spi.connector.ArtifactUpload;
+import org.eclipse.aether.spi.connector.MetadataDownload;
+import org.eclipse.aether.spi.connector.MetadataUpload;
+import org.eclipse.aether.spi.connector.RepositoryConnector;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.Transfer;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+import org.eclipse.aether.transfer.MetadataTransferException;
+import org.eclipse.aether.transfer.NoRepositoryConnectorException;
+
+/**
+ * A {@link RepositoryConnectorFactory} that makes sure only one thread in the JVM at a
+ * time downloads a given file from a given repository. Other threads asking for the same
+ * file wait for the transfer in flight and share its result, instead of downloading it
+ * again and racing on the local file. This matters when several apps are deployed at
+ * once and resolve overlapping dependency graphs.
+ */
+class SingleFlightRepositoryConnectorFactory implements RepositoryConnectorFactory {
+
+	private static final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+	private final RepositoryConnectorFactory delegate;
+
+	@Inject
+	public SingleFlightRepositoryConnectorFactory(BasicRepositoryConnectorFactory delegate) {
+		this((RepositoryConnectorFactory) delegate);
+	}
+
+	SingleFlightRepositoryConnectorFactory(RepositoryConnectorFactory delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public RepositoryConnector newInstance(RepositorySystemSession session, RemoteRepository repository)
+			throws NoRepositoryConnectorException {
+		return new SingleFlightRepositoryConnector(this.delegate.newInstance(session, repository), repository);
+	}
+
+	@Override
+	public float getPriority() {
+		return this.delegate.getPriority();
+	}
+
+	private static class SingleFlightRepositoryConnector implements RepositoryConnector {
+
+		private final RepositoryConnector delegate;
+
+		private final RemoteRepository repository;
+
+		SingleFlightRepositoryConnector(RepositoryConnector delegate, RemoteRepository repository) {
+			this.delegate = delegate;
+			this.repository = repository;
+		}
+
+		@Override
+		public void get(Collection<? extends ArtifactDownload> artifactDownloads,
+				Collection<? extends MetadataDownload> metadataDownloads) {
+			List<ArtifactDownload> artifacts = new ArrayList<>();
+			List<MetadataDownload> metadata = new ArrayList<>();
+			Map<String, Transfer> owned = new LinkedHashMap<>();
+			Map<Transfer, Flight> waiting = new LinkedHashMap<>();
+			if (artifactDownloads != null) {
+				for (ArtifactDownload download : artifactDownloads) {
+					if (download.isExistenceCheck() || download.getFile() == null
+							|| join(key(download.getFile().getAbsolutePath()), download, owned, waiting)) {
+						artifacts.add(download);
+					}
+				}
+			}
+			if (metadataDownloads != null) {
+				for (MetadataDownload download : metadataDownloads) {
+					if (download.getFile() == null
+							|| join(key(download.getFile().getAbsolutePath()), download, owned, waiting)) {
+						metadata.add(download);
+					}
+				}
+			}
+			try {
+				// Finish our own transfers before waiting for anyone else's, so there is no
+				// chance of a deadlock
+				this.delegate.get(artifacts, metadata);
+			}
+			finally {
+				for (Map.Entry<String, Transfer> entry : owned.entrySet()) {
+					flights.remove(entry.getKey()).complete(entry.getValue().getException());
+				}
+			}
+			for (Map.Entry<Transfer, Flight> entry : waiting.entrySet()) {
+				Transfer transfer = entry.getKey();
+				Exception exception;
+				try {
+					exception = entry.getValue().await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					exception = interrupted(transfer);
+				}
+				if (transfer instanceof ArtifactDownload && exception instanceof ArtifactTransferException) {
+					((ArtifactDownload) transfer).setException((ArtifactTransferException) exception);
+				}
+				else if (transfer instanceof MetadataDownload && exception instanceof MetadataTransferException) {
+					((MetadataDownload) transfer).setException((MetadataTransferException) exception);
+				}
+			}
+		}
+
+		private Exception interrupted(Transfer transfer) {
+			String message = "Interrupted while waiting for download";
+			if (transfer instanceof ArtifactDownload) {
+				return new ArtifactTransferException(((ArtifactDownload) transfer).getArtifact(), this.repository,
+						message);
+			}
+			return new MetadataTransferException(((MetadataDownload) transfer).getMetadata(), this.repository,
+					message);
+		}
+
+		private String key(String path) {
+			return this.repository.getUrl() + "|" + path;
+		}
+
+		/**
+		 * Register interest in a transfer, returning true if the caller owns it and
+		 * should go ahead with it.
+		 */
+		private boolean join(String key, Transfer transfer, Map<String, Transfer> owned,
+				Map<Transfer, Flight> waiting) {
+			if (owned.containsKey(key)) {
+				// Same file twice in one request, let the connector deal with it
+				return true;
+			}
+			Flight flight = new Flight();
+			Flight existing = flights.putIfAbsent(key, flight);
+			if (existing != null) {
+				waiting.put(transfer, existing);
+				return false;
+			}
+			owned.put(key, transfer);
+			return true;
+		}
+
+		@Override
+		public void put(Collection<? extends ArtifactUpload> artifactUploads,
+				Collection<? extends MetadataUpload> metadataUploads) {
+			this.delegate.put(artifactUploads, metadataUploads);
+		}
+
+		@Override
+		public void close() {
+			this.delegate.close();
+		}
+
+	}
+
+	private static class Flight {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		private volatile Exception exception;
+
+		void complete(Exception exception) {
+			this.exception = exception;
+			this.latch.countDown();
+		}
+
+		Exception await() throws InterruptedException {
+			this.latch.await();
+			return this.exception;
+		}
+
+	}
+
+}
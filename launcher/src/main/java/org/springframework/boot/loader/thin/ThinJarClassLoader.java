@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.loader.thin;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.springframework.boot.loader.LaunchedURLClassLoader;
+
+/**
+ * Class loader for the launched application, optionally child first.
+ *
+ * @author Dave Syer
+ */
+class ThinJarClassLoader extends LaunchedURLClassLoader {
+
+	static {
+		// Class loading locks are per class name (see loadClass), like the superclass
+		ClassLoader.registerAsParallelCapable();
+	}
+
+	private boolean parentFirst = false;
+
+	private ClassPathUsage usage;
+
+	public ThinJarClassLoader(URL[] urls, ClassLoader parent) {
+		super(urls, parent);
+	}
+
+	public void setParentFirst(boolean parentFirst) {
+		this.parentFirst = parentFirst;
+	}
+
+	/**
+	 * Record the classes and resources that are loaded from each jar.
+	 * @param usage the usage to record hits in (or null to stop recording)
+	 */
+	public void setUsage(ClassPathUsage usage) {
+		this.usage = usage;
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		Class<?> type = super.findClass(name);
+		if (this.usage != null) {
+			this.usage.hit(type);
+		}
+		return type;
+	}
+
+	@Override
+	public URL findResource(String name) {
+		URL url = super.findResource(name);
+		if (this.usage != null) {
+			this.usage.hit(url);
+		}
+		return url;
+	}
+
+	@Override
+	public Enumeration<URL> findResources(String name) throws IOException {
+		Enumeration<URL> urls = super.findResources(name);
+		if (this.usage == null) {
+			return urls;
+		}
+		List<URL> list = new ArrayList<>();
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+			this.usage.hit(url);
+			list.add(url);
+		}
+		return Collections.enumeration(list);
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve)
+			throws ClassNotFoundException {
+		synchronized (getClassLoadingLock(name)) {
+			// First, check if the class has already been loaded
+			Class<?> c = findLoadedClass(name);
+			if (c == null) {
+				try {
+					if (!parentFirst) {
+						return findClass(name);
+					}
+				}
+				catch (ClassNotFoundException e) {
+				}
+				return super.loadClass(name, resolve);
+			}
+			return c;
+		}
+	}
+
+	@Override
+	public URL getResource(String name) {
+
+		URL url = null;
+
+		if (parentFirst) {
+			url = getParent().getResource(name);
+			if (url != null) {
+				return (url);
+			}
+		}
+
+		url = findResource(name);
+		if (url != null) {
+			return (url);
+		}
+
+		if (!parentFirst) {
+			url = getParent().getResource(name);
+			if (url != null) {
+				return (url);
+			}
+		}
+
+		return (null);
+
+	}
+
+}
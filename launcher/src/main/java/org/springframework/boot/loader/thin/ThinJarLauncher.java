@@ -17,14 +17,20 @@
 package org.springframework.boot.loader.thin;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
 import java.net.URL;
 import java.security.AccessControlException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.graph.Dependency;
@@ -32,7 +38,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.boot.loader.ExecutableArchiveLauncher;
-import org.springframework.boot.loader.LaunchedURLClassLoader;
 import org.springframework.boot.loader.archive.Archive;
 import org.springframework.boot.loader.archive.Archive.Entry;
 import org.springframework.boot.loader.archive.ExplodedArchive;
@@ -76,7 +81,11 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 	/**
 	 * System property to signal a "classpath run" where dependencies are resolved but the
 	 * main method is not executed and the output is in the form of a classpath. Supported
-	 * formats are "path" and "properties".
+	 * formats are "path" and "properties", plus "jar" and "argfile", which write a
+	 * pathing jar or a <code>java @argfile</code> (with the main class) to
+	 * <code>${thin.root}/classpath</code> and print its location, and "graph" and "dot",
+	 * which print the dependency tree (with version mediation decisions, sizes and
+	 * download times) as JSON or in Graphviz format.
 	 */
 	public static final String THIN_CLASSPATH = "thin.classpath";
 
@@ -132,17 +141,159 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 	 */
 	public static final String THIN_PARENT_BOOT = "thin.parent.boot";
 
+	/**
+	 * Flag to say that the resolved dependencies should be served from a single
+	 * memory-mapped pack file (under <code>${thin.root}/packs</code>), instead of
+	 * opening each jar file. The pack is created the first time a given classpath is
+	 * seen (e.g. in a dry run) and re-used after that. Default false.
+	 */
+	public static final String THIN_PACK = "thin.pack";
+
+	/**
+	 * Flag to say that presence checks for artifacts in the local repository should use
+	 * a memory-mapped index (<code>.thin-index</code> in the repository) instead of the
+	 * file system. The index is updated when artifacts are downloaded. Default false.
+	 */
+	public static final String THIN_INDEX = "thin.index";
+
+	/**
+	 * Flag to say that any artifact present in the local repository should be trusted,
+	 * whichever remote repository it came from, and that no remote repository should be
+	 * contacted (implies offline). Useful when <code>${thin.root}</code> was populated
+	 * when an image was built. Default false.
+	 */
+	public static final String THIN_LOCAL_TRUST = "thin.local.trust";
+
+	/**
+	 * Flag to say that artifacts should be downloaded in the background as soon as they
+	 * are found while the dependency graph is being collected, instead of waiting for the
+	 * whole graph first. Default false.
+	 */
+	public static final String THIN_PIPELINE = "thin.pipeline";
+
+	/**
+	 * The transport to use for http and https repositories. Set to "jdk" to use the JDK
+	 * HTTP client, which keeps connections alive for the whole process and resumes
+	 * interrupted downloads. Defaults to the Maven resolver's own transport.
+	 */
+	public static final String THIN_TRANSPORT = "thin.transport";
+
+	/**
+	 * Flag to say that the dependency graph without any profiles should be cached (in
+	 * memory and in the local repository), and profiles that only add dependencies or
+	 * exclusions should be resolved on top of it. Default false.
+	 */
+	public static final String THIN_DELTA = "thin.delta";
+
+	/**
+	 * Resident resolver daemon mode. Set to "serve" to start a long-lived process that
+	 * keeps a warm dependency resolver and resolves class paths for other launches on
+	 * the same host (it stops after <code>thin.daemon.idle</code> seconds without
+	 * requests, default 1800). Set to "true" to ask a running daemon for the class path
+	 * first and fall back to resolving in process if there isn't one. The daemon
+	 * advertises itself in <code>thin.daemon.dir</code> (default
+	 * <code>${user.home}/.thin</code>). Default false.
+	 */
+	public static final String THIN_DAEMON = "thin.daemon";
+
+	/**
+	 * Another archive (a path or "maven://group:artifact:version") whose dependencies
+	 * should be downloaded in a low priority background thread once the application
+	 * has been launched, e.g. the next version during a rolling upgrade. It can also be
+	 * a text file containing the archive, which is then checked every
+	 * <code>thin.prefetch.interval</code> seconds (default 60) for a new value.
+	 */
+	public static final String THIN_PREFETCH = "thin.prefetch";
+
+	/**
+	 * Flag to say that libraries embedded in the archive (under BOOT-INF/lib) should be
+	 * used for the dependencies with the same coordinates, so only the rest are
+	 * downloaded. Default false.
+	 */
+	public static final String THIN_HYBRID = "thin.hybrid";
+
+	/**
+	 * Flag to say that a launch descriptor (class path, main class and fingerprints of
+	 * the inputs) should be written to <code>${thin.root}/launch</code>, and used by the
+	 * <code>ThinJarWrapper</code> to launch the application directly, without the
+	 * launcher, as long as it is still valid. Only plain (not fat or packed) jars with
+	 * the default parent first class loader are supported. Default false.
+	 */
+	public static final String THIN_DESCRIPTOR = "thin.descriptor";
+
+	/**
+	 * Flag to say that the resolved jars should be loaded as modules (explicit, or
+	 * automatic if they have no module descriptor) in a module layer, instead of from a
+	 * flat class path. Jars that cannot be modules (e.g. because they split a package
+	 * with another jar) are left on the class path in the parent of the layer. Only
+	 * works on Java 9 and above (ignored with a warning otherwise). Default false.
+	 */
+	public static final String THIN_MODULEPATH = "thin.modulepath";
+
+	/**
+	 * A file to write a JSON report to after the dependencies are resolved, with the
+	 * number of artifacts that were in the local repository and that were downloaded,
+	 * the requests, hits, misses, bytes and time for each remote repository, and the
+	 * slowest artifacts.
+	 */
+	public static final String THIN_REPORT = "thin.report";
+
+	/**
+	 * A directory to write a thin profile (<code>thin-trimmed.properties</code>) to when
+	 * the application exits, with <code>exclusions.*</code> for the dependencies that
+	 * no class or resource was loaded from (neither from them nor from anything they
+	 * pull in transitively), and a comment with the number of hits and
+	 * the size of each jar. Run the application through a representative workload and
+	 * then launch it with <code>thin.profile=trimmed</code>. "true" means the current
+	 * directory (where the profile is found by default). Only plain (not packed or
+	 * module path) class loaders are instrumented.
+	 */
+	public static final String THIN_TRIM = "thin.trim";
+
+	/**
+	 * Flag to say that the application should be run in a restart loop for local
+	 * development: the dependencies are loaded once, in a class loader that is kept, and
+	 * the application classes of an exploded archive in a child class loader that is
+	 * created again (and the application restarted) when they change. Changes to a pom
+	 * or thin properties resolve the dependencies again. The interval between scans for
+	 * changes is <code>thin.watch.interval</code> milliseconds (default 1000). Default
+	 * false.
+	 */
+	public static final String THIN_WATCH = "thin.watch";
+
 	private StandardEnvironment environment = new StandardEnvironment();
 
+	private String[] args = new String[0];
+
+	/**
+	 * Coordinates of the resolved dependencies, keyed by the URL of their jars.
+	 */
+	private Map<String, String> coordinates = new HashMap<>();
+
 	private boolean debug;
 
+	/**
+	 * The resolver to use, if not the shared one.
+	 */
+	private DependencyResolver engine;
+
 	public static void main(String[] args) throws Exception {
 		LogUtils.setLogLevel(Level.OFF);
+		BatchResolver batch = BatchResolver.create(args);
+		if (batch != null) {
+			batch.run(System.out);
+			return;
+		}
 		new ThinJarLauncher(args).launch(args);
 	}
 
 	protected ThinJarLauncher(String[] args) throws Exception {
-		super(computeArchive(args));
+		super(computeArchive(args, DependencyResolver.instance()));
+	}
+
+	ThinJarLauncher(String[] args, DependencyResolver engine) throws Exception {
+		super(computeArchive(args, engine));
+		this.engine = engine;
 	}
 
 	@Override
@@ -155,9 +306,11 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		boolean classpath = "".equals(classpathValue) || "true".equals(classpathValue)
 				|| "path".equals(classpathValue);
 		boolean compute = "properties".equals(classpathValue);
+		boolean tree = "graph".equals(classpathValue) || "dot".equals(classpathValue);
+		boolean pathing = "jar".equals(classpathValue) || "argfile".equals(classpathValue);
 		boolean trace = !"false"
 				.equals(environment.resolvePlaceholders("${thin.trace:${trace:false}}"));
-		if (classpath || compute) {
+		if (classpath || compute || pathing || tree) {
 			this.debug = false;
 			LogUtils.setLogLevel(Level.OFF);
 		}
@@ -173,9 +326,35 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 				LogUtils.setLogLevel(Level.INFO);
 			}
 		}
+		String daemon = environment.resolvePlaceholders("${" + THIN_DAEMON + ":false}");
+		if ("serve".equals(daemon)) {
+			serve(root);
+			return;
+		}
+		if (!isDaemonClient()) {
+			// Nothing before the first resolution needs the container or the Maven
+			// settings, so get them started in the background
+			bootstrap(root);
+		}
 		if (classpath) {
 			List<Archive> archives = getClassPathArchives();
-			System.out.println(classpath(archives));
+			System.out.println(StringUtils.collectionToDelimitedString(paths(archives),
+					File.pathSeparator));
+			return;
+		}
+		if (pathing) {
+			List<String> paths = paths(getClassPathArchives());
+			File directory = new File(environment
+					.resolvePlaceholders("${" + THIN_ROOT + ":${user.home}/.m2}"));
+			String mainClass = getMainClass();
+			if (mainClass == null) {
+				throw new IllegalStateException(
+						"Cannot locate main class in " + getArchive());
+			}
+			File file = "jar".equals(classpathValue)
+					? ClassPathFile.jar(directory, mainClass, paths)
+					: ClassPathFile.argfile(directory, mainClass, paths);
+			System.out.println(file.getAbsolutePath());
 			return;
 		}
 		if (compute) {
@@ -183,21 +362,267 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 			System.out.println(properties(dependencies));
 			return;
 		}
+		if (tree) {
+			DependencyGraph graph = getDependencyGraph();
+			System.out.println("dot".equals(classpathValue)
+					? graph.toDot(ArchiveUtils.getArchiveRoot(getArchive()).getName())
+					: graph.toJson());
+			return;
+		}
 		log.info("Version: " + getVersion());
 		if (!"false".equals(
 				environment.resolvePlaceholders("${" + THIN_DRYRUN + ":false}"))) {
-			getClassPathArchives(
+			List<Archive> archives = getClassPathArchives(
 					environment.resolvePlaceholders("${" + THIN_ROOT + ":}"));
+			if (isPack()) {
+				List<URL> urls = new ArrayList<>();
+				for (Archive archive : archives) {
+					urls.add(archive.getUrl());
+				}
+				pack(urls).close();
+			}
 			log.info("Downloaded dependencies"
 					+ (!StringUtils.hasText(root) ? "" : " to " + root));
 			return;
 		}
+		if (!"false".equals(
+				environment.resolvePlaceholders("${" + THIN_WATCH + ":false}"))) {
+			watch(args);
+			return;
+		}
 		super.launch(args);
 	}
 
+	private void watch(String[] args) throws Exception {
+		Archive archive = getArchive();
+		if (!(archive instanceof ExplodedArchive) || isPack()) {
+			log.info("Cannot watch archive (only exploded archives without packs): " + archive);
+			super.launch(args);
+			return;
+		}
+		String mainClass = getMainClass();
+		if (mainClass == null) {
+			throw new IllegalStateException("Cannot locate main class in " + archive);
+		}
+		List<URL> application = new ArrayList<>(
+				ArchiveUtils.nestedClasses(archive, "BOOT-INF/classes/"));
+		application.add(archive.getUrl());
+		String name = environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_NAME + ":thin}");
+		List<File> inputs = new ArrayList<>();
+		File directory = ArchiveUtils.getArchiveRoot(archive);
+		if (directory.getPath().replace('\\', '/').endsWith("target/classes")) {
+			// The pom of the project that the classes were compiled from
+			inputs.add(new File(directory, "../../pom.xml").getCanonicalFile());
+		}
+		inputs.add(new File(name + ".properties").getAbsoluteFile());
+		for (String profile : environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_PROFILE + ":}").split(",")) {
+			if (StringUtils.hasText(profile)) {
+				inputs.add(new File(name + "-" + profile.trim() + ".properties")
+						.getAbsoluteFile());
+			}
+		}
+		ApplicationWatcher watcher = new ApplicationWatcher(
+				application.toArray(new URL[0]), dependencies(getClassPathArchives()),
+				inputs, name, () -> {
+					URL[] dependencies = dependencies(resolveClassPathArchives());
+					release();
+					return dependencies;
+				}, getParentClassLoader(), mainClass, args);
+		release();
+		watcher.setInterval(
+				Long.valueOf(environment.resolvePlaceholders("${thin.watch.interval:1000}")));
+		// Restore default
+		LogUtils.setLogLevel(Level.INFO);
+		log.info("Watching for changes: " + application);
+		watcher.run();
+	}
+
+	private URL[] dependencies(List<Archive> archives) throws Exception {
+		String root = getArchive().getUrl().toString();
+		List<URL> urls = new ArrayList<>();
+		for (Archive archive : archives) {
+			if (!root.equals(archive.getUrl().toString())) {
+				urls.add(archive.getUrl());
+			}
+		}
+		return urls.toArray(new URL[0]);
+	}
+
+	private void bootstrap(String root) {
+		Properties properties = new Properties();
+		if (StringUtils.hasText(root)) {
+			properties.setProperty(THIN_ROOT, root);
+		}
+		DependencyResolver.instance().bootstrap(properties);
+	}
+
+	private void serve(String root) throws Exception {
+		bootstrap(root);
+		long idle = Long.valueOf(environment.resolvePlaceholders("${thin.daemon.idle:1800}"));
+		ResolverDaemon daemon = new ResolverDaemon(getDaemonDirectory(),
+				TimeUnit.SECONDS.toMillis(idle), args -> new ThinJarLauncher(args).resolve(args));
+		daemon.start();
+		log.info("Version: " + getVersion());
+		daemon.await();
+	}
+
+	/**
+	 * Resolve the class path for a launch with the arguments provided, without launching
+	 * anything (for the daemon and for batch dry runs). The resolver is shared with other
+	 * requests, so it is not released.
+	 */
+	List<URL> resolve(String[] args) throws Exception {
+		addCommandLineProperties(args);
+		List<URL> urls = new ArrayList<>();
+		for (Archive archive : resolveClassPathArchives()) {
+			urls.add(archive.getUrl());
+		}
+		return urls;
+	}
+
+	private File getDaemonDirectory() {
+		return new File(environment.resolvePlaceholders("${thin.daemon.dir:${user.home}/.thin}"));
+	}
+
+	private boolean isDaemonClient() {
+		return "true".equals(environment.resolvePlaceholders("${" + THIN_DAEMON + ":false}"));
+	}
+
+	private List<Archive> getDaemonArchives() throws Exception {
+		List<String> args = new ArrayList<>();
+		args.add("--" + THIN_ARCHIVE + "=" + ArchiveUtils.getArchiveRoot(getArchive()).getAbsolutePath());
+		Map<String, String> values = getThinProperties();
+		if (!values.containsKey(THIN_LOCATION)) {
+			// The daemon has a different working directory
+			values.put(THIN_LOCATION, "classpath:/,file:.");
+		}
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			String key = entry.getKey();
+			if (key.equals(THIN_ARCHIVE) || key.startsWith(THIN_DAEMON)) {
+				continue;
+			}
+			args.add("--" + key + "=" + absolute(key, entry.getValue()));
+		}
+		long t0 = System.currentTimeMillis();
+		List<URL> urls = ResolverDaemon.resolve(getDaemonDirectory(), args);
+		if (urls == null || urls.isEmpty()) {
+			return null;
+		}
+		List<Archive> archives = new ArrayList<>();
+		archives.add(getArchive());
+		for (URL url : urls.subList(1, urls.size())) {
+			archives.add(new UrlArchive(url));
+		}
+		if (log.isInfoEnabled()) {
+			log.info("Dependencies resolved by daemon in: " + (System.currentTimeMillis() - t0) + "ms");
+		}
+		return archives;
+	}
+
+	private Map<String, String> getThinProperties() {
+		Map<String, String> values = new TreeMap<>();
+		try {
+			Properties system = System.getProperties();
+			for (String name : system.stringPropertyNames()) {
+				if (name.startsWith("thin.")) {
+					values.put(name, system.getProperty(name));
+				}
+			}
+		}
+		catch (AccessControlException e) {
+			// ignore
+		}
+		if (environment.getPropertySources().contains("commandArgs")) {
+			SimpleCommandLinePropertySource commandArgs = (SimpleCommandLinePropertySource) environment
+					.getPropertySources().get("commandArgs");
+			for (String name : commandArgs.getPropertyNames()) {
+				if (name.startsWith("thin.")) {
+					values.put(name, commandArgs.getProperty(name));
+				}
+			}
+		}
+		return values;
+	}
+
+	private static String absolute(String key, String value) {
+		if (THIN_ROOT.equals(key) || THIN_PARENT.equals(key) || THIN_REPORT.equals(key)) {
+			return value.contains(":") ? value : new File(value).getAbsolutePath();
+		}
+		if (THIN_TRIM.equals(key)) {
+			return new File("true".equals(value) ? "." : value).getAbsolutePath();
+		}
+		if (THIN_LOCATION.equals(key)) {
+			StringBuilder builder = new StringBuilder();
+			for (String location : StringUtils.commaDelimitedListToStringArray(value)) {
+				location = location.trim();
+				if (location.startsWith("file:") && !location.startsWith("file:/")) {
+					location = "file:" + new File(location.substring("file:".length())).getAbsolutePath();
+				}
+				if (builder.length() > 0) {
+					builder.append(",");
+				}
+				builder.append(location);
+			}
+			return builder.toString();
+		}
+		return value;
+	}
+
 	@Override
 	protected Iterator<Archive> getClassPathArchivesIterator() throws Exception {
-		return getClassPathArchives().iterator();
+		List<Archive> archives = getClassPathArchives();
+		for (Archive archive : archives) {
+			if (archive instanceof UrlArchive
+					&& ((UrlArchive) archive).getCoordinates() != null) {
+				this.coordinates.put(archive.getUrl().toString(),
+						((UrlArchive) archive).getCoordinates());
+			}
+		}
+		// The class path is all we need from the resolver, and the application might
+		// run for a long time, so let go of it before the main method is called (a
+		// prefetch creates another one, and closes it when it is done)
+		release();
+		String prefetch = environment.resolvePlaceholders("${" + THIN_PREFETCH + ":}");
+		if (StringUtils.hasText(prefetch)) {
+			long interval = Long
+					.valueOf(environment.resolvePlaceholders("${thin.prefetch.interval:60}"));
+			new Prefetcher(this.args, prefetch, TimeUnit.SECONDS.toMillis(interval)).start();
+		}
+		return archives.iterator();
+	}
+
+	private void release() {
+		if (!log.isInfoEnabled()) {
+			DependencyResolver.close();
+			return;
+		}
+		// Only pay for the garbage collections if someone is going to see the result
+		System.gc();
+		long heap = heap();
+		long metaspace = metaspace();
+		DependencyResolver.close();
+		System.gc();
+		log.info("Released dependency resolver: heap " + kilobytes(heap - heap()) + ", metaspace "
+				+ kilobytes(metaspace - metaspace()));
+	}
+
+	private static long heap() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long metaspace() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ("Metaspace".equals(pool.getName())) {
+				return pool.getUsage().getUsed();
+			}
+		}
+		return 0;
+	}
+
+	private static String kilobytes(long bytes) {
+		return (bytes / 1024) + "KB";
 	}
 
 	private static String getVersion() {
@@ -262,26 +687,19 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 				+ artifact.getVersion();
 	}
 
-	private String classpath(List<Archive> archives) throws Exception {
-		StringBuilder builder = new StringBuilder();
-		String separator = System.getProperty("path.separator");
+	private List<String> paths(List<Archive> archives) throws Exception {
+		List<String> paths = new ArrayList<>();
 		Archive local = getArchive();
 		if (local instanceof ExplodedArchive) {
 			for (URL url : ArchiveUtils.nestedClasses(local, "BOOT-INF/classes/")) {
-				if (builder.length() > 0) {
-					builder.append(separator);
-				}
-				builder.append(path(url));
+				paths.add(path(url));
 			}
 		}
 		for (Archive archive : archives) {
-			if (builder.length() > 0) {
-				builder.append(separator);
-			}
 			log.info("Archive: {}", archive);
-			builder.append(path(archive.getUrl()));
+			paths.add(path(archive.getUrl()));
 		}
-		return builder.toString();
+		return paths;
 	}
 
 	private String path(URL url) throws Exception {
@@ -295,13 +713,15 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		if (uri.endsWith("!/")) {
 			uri = uri.substring(0, uri.length() - "!/".length());
 		}
-		return new File(uri).getCanonicalPath();
+		// Normalizing is enough (and unlike canonicalizing doesn't touch the disk)
+		return new File(uri).getAbsoluteFile().toPath().normalize().toString();
 	}
 
 	private void addCommandLineProperties(String[] args) {
 		if (args == null || args.length == 0) {
 			return;
 		}
+		this.args = args;
 		MutablePropertySources properties = environment.getPropertySources();
 		SimpleCommandLinePropertySource source = new SimpleCommandLinePropertySource(
 				"commandArgs", args);
@@ -313,18 +733,59 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		}
 	}
 
+	@Override
+	protected void launch(String[] args, String launchClass, ClassLoader classLoader)
+			throws Exception {
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("main", launchClass)) {
+			super.launch(args, launchClass, classLoader);
+		}
+	}
+
 	@Override
 	protected ClassLoader createClassLoader(URL[] urls) throws Exception {
-		// Use the system classloader (the one that the JVM started with), not the one
-		// from this class:
-		ClassLoader parent = ClassLoader.getSystemClassLoader();
-		if ("true".equals(
-				environment.resolvePlaceholders("${" + THIN_PARENT_BOOT + ":true}"))) {
-			parent = parent.getParent();
+		try (LaunchEvents.Phase phase = LaunchEvents.phase("classloader", urls.length)) {
+			return newClassLoader(urls);
+		}
+	}
+
+	private ClassLoader newClassLoader(URL[] urls) throws Exception {
+		ClassLoader parent = getParentClassLoader();
+		ThinJarClassLoader loader;
+		ModulePath modules = null;
+		if (isPack()) {
+			DependencyPack pack = pack(Arrays.asList(urls));
+			List<URL> unpacked = new ArrayList<>();
+			for (URL url : urls) {
+				if (!pack.getSources().contains(packable(url))) {
+					unpacked.add(url);
+				}
+			}
+			loader = new PackedThinJarClassLoader(
+					ArchiveUtils.addNestedClasses(getArchive(),
+							unpacked.toArray(new URL[0]), "BOOT-INF/classes/"),
+					pack, parent);
+		}
+		else {
+			URL[] classpath = ArchiveUtils.addNestedClasses(getArchive(), urls,
+					"BOOT-INF/classes/");
+			String trim = environment.resolvePlaceholders("${" + THIN_TRIM + ":}");
+			if (StringUtils.hasText(trim)) {
+				loader = new ThinJarClassLoader(classpath, parent);
+				trim(loader, classpath, "true".equals(trim) ? "." : trim);
+			}
+			else {
+				if (!"false".equals(environment
+						.resolvePlaceholders("${" + THIN_MODULEPATH + ":false}"))) {
+					modules = ModulePath.resolve(classpath);
+				}
+				loader = new ThinJarClassLoader(
+						modules != null ? modules.getClassPath() : classpath, parent);
+			}
+			if (modules == null && !"false".equals(environment
+					.resolvePlaceholders("${" + THIN_DESCRIPTOR + ":false}"))) {
+				saveDescriptor(urls, classpath);
+			}
 		}
-		ThinJarClassLoader loader = new ThinJarClassLoader(
-				ArchiveUtils.addNestedClasses(getArchive(), urls, "BOOT-INF/classes/"),
-				parent);
 		if ("true".equals(
 				environment.resolvePlaceholders("${" + THIN_PARENT_FIRST + ":true}"))) {
 			// Use a (traditional) parent first class loader
@@ -335,9 +796,107 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		}
 		// Restore default
 		LogUtils.setLogLevel(Level.INFO);
+		if (modules != null) {
+			return modules.createClassLoader(loader);
+		}
 		return loader;
 	}
 
+	private ClassLoader getParentClassLoader() {
+		// Use the system classloader (the one that the JVM started with), not the one
+		// from this class:
+		ClassLoader parent = ClassLoader.getSystemClassLoader();
+		if ("true".equals(
+				environment.resolvePlaceholders("${" + THIN_PARENT_BOOT + ":true}"))) {
+			parent = parent.getParent();
+		}
+		return parent;
+	}
+
+	private void trim(ThinJarClassLoader loader, URL[] classpath, String directory) {
+		// Exclusions take whole subtrees with them, so we need the tree (and then the
+		// resolver can be released again)
+		Map<String, Set<String>> subtrees = getDependencyGraph().getSubtrees();
+		DependencyResolver.close();
+		ClassPathUsage usage = new ClassPathUsage(classpath, this.coordinates, subtrees);
+		loader.setUsage(usage);
+		File file = new File(directory).getAbsoluteFile();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> usage.write(file)));
+	}
+
+	private void saveDescriptor(URL[] urls, URL[] classpath) throws Exception {
+		File archive = ArchiveUtils.getArchiveRoot(getArchive());
+		if (classpath.length != urls.length || !archive.isFile() || !"true".equals(
+				environment.resolvePlaceholders("${" + THIN_PARENT_FIRST + ":true}"))) {
+			// The wrapper can only create a plain URLClassLoader
+			log.info("Cannot use launch descriptor for: " + archive);
+			return;
+		}
+		List<File> files = new ArrayList<>();
+		for (URL url : urls) {
+			files.add(new File(path(url)));
+		}
+		List<File> inputs = new ArrayList<>(files);
+		String locations = environment.resolvePlaceholders(
+				"${" + ThinJarLauncher.THIN_LOCATION + ":classpath:/,file:.}");
+		String name = environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_NAME + ":thin}");
+		String[] profiles = environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_PROFILE + ":}")
+				.split(",");
+		for (String location : StringUtils.commaDelimitedListToStringArray(locations)) {
+			if (location.trim().startsWith("file:")) {
+				// Properties files that would change the class path if they appeared
+				File directory = new File(location.trim().substring("file:".length()));
+				for (String profile : profiles) {
+					inputs.add(new File(directory,
+							name + ("".equals(profile) ? "" : "-") + profile + ".properties")
+									.getAbsoluteFile());
+				}
+			}
+		}
+		String root = environment
+				.resolvePlaceholders("${" + THIN_ROOT + ":${user.home}/.m2}");
+		String key = LaunchDescriptor.key(archive.getAbsolutePath(),
+				new File("").getAbsolutePath(), getThinProperties());
+		new LaunchDescriptor(getMainClass(), "true".equals(
+				environment.resolvePlaceholders("${" + THIN_PARENT_BOOT + ":true}")),
+				files, inputs).save(new File(root), key);
+	}
+
+	private boolean isPack() {
+		return !"false"
+				.equals(environment.resolvePlaceholders("${" + THIN_PACK + ":false}"));
+	}
+
+	private DependencyPack pack(List<URL> urls) throws Exception {
+		List<File> jars = new ArrayList<>();
+		for (URL url : urls) {
+			File jar = packable(url);
+			if (jar != null) {
+				jars.add(jar);
+			}
+		}
+		String root = environment
+				.resolvePlaceholders("${" + THIN_ROOT + ":${user.home}/.m2}");
+		File directory = new File(root, "packs");
+		return DependencyPack.build(DependencyPack.location(directory, jars), jars);
+	}
+
+	private File packable(URL url) {
+		try {
+			// The application archive is not packed, only its dependencies
+			if ("file".equals(url.getProtocol()) && url.getPath().endsWith(".jar")
+					&& !url.equals(getArchive().getUrl())) {
+				return new File(url.toURI()).getAbsoluteFile();
+			}
+		}
+		catch (Exception e) {
+			// not a file
+		}
+		return null;
+	}
+
 	@Override
 	protected String getMainClass() throws Exception {
 		String mainClass = environment.resolvePlaceholders("${" + THIN_MAIN + ":}");
@@ -353,6 +912,16 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 	}
 
 	private List<Archive> getClassPathArchives(String root) throws Exception {
+		if (isDaemonClient()) {
+			List<Archive> archives = getDaemonArchives();
+			if (archives != null) {
+				return archives;
+			}
+		}
+		return resolveClassPathArchives();
+	}
+
+	private List<Archive> resolveClassPathArchives() throws Exception {
 		String parent = environment
 				.resolvePlaceholders("${" + ThinJarLauncher.THIN_PARENT + ":}");
 		String name = environment
@@ -385,14 +954,33 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		return resolver.extract(getArchive(), name, profiles);
 	}
 
+	private DependencyGraph getDependencyGraph() {
+		String name = environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_NAME + ":thin}");
+		String[] profiles = environment
+				.resolvePlaceholders("${" + ThinJarLauncher.THIN_PROFILE + ":}")
+				.split(",");
+		return getResolver().tree(getArchive(), name, profiles);
+	}
+
 	private PathResolver getResolver() {
 		String locations = environment
 				.resolvePlaceholders("${" + ThinJarLauncher.THIN_LOCATION + ":}");
 		String root = environment.resolvePlaceholders("${" + THIN_ROOT + ":}");
 		String offline = environment.resolvePlaceholders("${" + THIN_OFFLINE + ":false}");
+		String index = environment.resolvePlaceholders("${" + THIN_INDEX + ":false}");
+		String trust = environment
+				.resolvePlaceholders("${" + THIN_LOCAL_TRUST + ":false}");
+		String pipeline = environment
+				.resolvePlaceholders("${" + THIN_PIPELINE + ":false}");
+		String transport = environment.resolvePlaceholders("${" + THIN_TRANSPORT + ":}");
+		String delta = environment.resolvePlaceholders("${" + THIN_DELTA + ":false}");
+		String hybrid = environment.resolvePlaceholders("${" + THIN_HYBRID + ":false}");
+		String report = environment.resolvePlaceholders("${" + THIN_REPORT + ":}");
 		String force = environment.resolvePlaceholders(
 				"${" + THIN_FORCE + ":${" + THIN_DRYRUN + ":false}}");
-		PathResolver resolver = new PathResolver(DependencyResolver.instance());
+		PathResolver resolver = new PathResolver(
+				this.engine != null ? this.engine : DependencyResolver.instance());
 		if (StringUtils.hasText(locations)) {
 			resolver.setLocations(locations.split(","));
 		}
@@ -409,6 +997,27 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		if (!"false".equals(force)) {
 			resolver.setForce(true);
 		}
+		if (!"false".equals(index)) {
+			resolver.setIndex(true);
+		}
+		if (!"false".equals(trust)) {
+			resolver.setTrustLocal(true);
+		}
+		if (!"false".equals(pipeline)) {
+			resolver.setPipeline(true);
+		}
+		if (StringUtils.hasText(transport)) {
+			resolver.setTransport(transport);
+		}
+		if (!"false".equals(delta)) {
+			resolver.setDelta(true);
+		}
+		if (!"false".equals(hybrid)) {
+			resolver.setHybrid(true);
+		}
+		if (StringUtils.hasText(report)) {
+			resolver.setReport(new File(report));
+		}
 		resolver.setOverrides(getSystemProperties());
 		return resolver;
 	}
@@ -447,7 +1056,8 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		return false;
 	}
 
-	private static Archive computeArchive(String[] args) throws Exception {
+	private static Archive computeArchive(String[] args, DependencyResolver engine)
+			throws Exception {
 		String path = getProperty(THIN_ARCHIVE);
 		String prefix = "--" + THIN_ARCHIVE;
 		for (String arg : args) {
@@ -462,7 +1072,7 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 				}
 			}
 		}
-		return ArchiveUtils.getArchive(path);
+		return ArchiveUtils.getArchive(path, engine);
 	}
 
 	static String getProperty(String key) {
@@ -472,66 +1082,4 @@ public class ThinJarLauncher extends ExecutableArchiveLauncher {
 		return System.getenv(key.replace(".", "_").toUpperCase());
 	}
 
-	private static class ThinJarClassLoader extends LaunchedURLClassLoader {
-
-		private boolean parentFirst = false;
-
-		public ThinJarClassLoader(URL[] urls, ClassLoader parent) {
-			super(urls, parent);
-		}
-
-		public void setParentFirst(boolean parentFirst) {
-			this.parentFirst = parentFirst;
-		}
-
-		@Override
-		protected Class<?> loadClass(String name, boolean resolve)
-				throws ClassNotFoundException {
-			synchronized (getClassLoadingLock(name)) {
-				// First, check if the class has already been loaded
-				Class<?> c = findLoadedClass(name);
-				if (c == null) {
-					try {
-						if (!parentFirst) {
-							return findClass(name);
-						}
-					}
-					catch (ClassNotFoundException e) {
-					}
-					return super.loadClass(name, resolve);
-				}
-				return c;
-			}
-		}
-
-		@Override
-		public URL getResource(String name) {
-
-			URL url = null;
-
-			if (parentFirst) {
-				url = getParent().getResource(name);
-				if (url != null) {
-					return (url);
-				}
-			}
-
-			url = findResource(name);
-			if (url != null) {
-				return (url);
-			}
-
-			if (!parentFirst) {
-				url = getParent().getResource(name);
-				if (url != null) {
-					return (url);
-				}
-			}
-
-			return (null);
-
-		}
-
-	}
-
 }
@@ -168,7 +168,7 @@ class ThinPropertiesModelProcessor extends DefaultModelProcessor {
 				&& dependency.getArtifactId().equals(target.getArtifactId()) && classifierMatch;
 	}
 
-	private static String replacePlaceholder(Properties properties, String value) {
+	static String replacePlaceholder(Properties properties, String value) {
 		PropertyPlaceholderHelper helper = new PropertyPlaceholderHelper("${", "}");
 		return helper.replacePlaceholders(value, properties);
 	}
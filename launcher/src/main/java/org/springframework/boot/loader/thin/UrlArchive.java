@@ -33,10 +33,17 @@ public class UrlArchive implements Archive {
 
 	private URL url;
 
+	private String coordinates;
+
 	public UrlArchive(URL url) {
 		this.url = url;
 	}
 
+	public UrlArchive(URL url, String coordinates) {
+		this.url = url;
+		this.coordinates = coordinates;
+	}
+
 	public UrlArchive(Archive url) {
 		try {
 			this.url = url.getUrl();
@@ -56,6 +63,14 @@ public class UrlArchive implements Archive {
 		return this.url;
 	}
 
+	/**
+	 * @return the group and artifact ids ("group:artifact") of the dependency that this
+	 * archive was resolved from (or null if it is not known)
+	 */
+	public String getCoordinates() {
+		return this.coordinates;
+	}
+
 	@Override
 	public Manifest getManifest() throws IOException {
 		throw new UnsupportedOperationException();
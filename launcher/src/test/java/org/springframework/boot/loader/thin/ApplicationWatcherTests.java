@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.util.FileSystemUtils.deleteRecursively;
+
+public class ApplicationWatcherTests {
+
+	private static final String RUNS = "thin.watch.test.runs";
+
+	private final File directory = new File("target/thin/watch");
+
+	private final AtomicInteger resolved = new AtomicInteger();
+
+	private ApplicationWatcher watcher;
+
+	@BeforeEach
+	public void init() throws Exception {
+		deleteRecursively(this.directory);
+		String path = Application.class.getName().replace('.', '/') + ".class";
+		File classes = new File(this.directory, "classes");
+		File target = new File(classes, path);
+		target.getParentFile().mkdirs();
+		Files.copy(new File("target/test-classes", path).toPath(), target.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		System.clearProperty(RUNS);
+		URL[] dependencies = new URL[] { new File("target/classes").toURI().toURL() };
+		this.watcher = new ApplicationWatcher(new URL[] { classes.toURI().toURL() },
+				dependencies, Collections.emptyList(), "thin", () -> {
+					this.resolved.incrementAndGet();
+					return new URL[0];
+				}, getClass().getClassLoader().getParent(), Application.class.getName(),
+				new String[0]);
+	}
+
+	@AfterEach
+	public void close() throws Exception {
+		this.watcher.stop();
+		System.clearProperty(RUNS);
+		System.clearProperty("spring.application.admin.enabled");
+	}
+
+	@Test
+	public void restartApplication() throws Exception {
+		this.watcher.start();
+		ClassLoader dependencies = this.watcher.getDependencyLoader();
+		ClassLoader application = this.watcher.getApplicationLoader();
+		this.watcher.restart(this.watcher.scan().keySet());
+		this.watcher.stop();
+		assertThat(System.getProperty(RUNS)).isEqualTo("2");
+		assertThat(this.watcher.getDependencyLoader()).isSameAs(dependencies);
+		assertThat(this.watcher.getApplicationLoader()).isNull();
+		assertThat(application).isNotNull();
+		assertThat(this.resolved.get()).isEqualTo(0);
+	}
+
+	@Test
+	public void resolveAgain() throws Exception {
+		this.watcher.start();
+		ClassLoader dependencies = this.watcher.getDependencyLoader();
+		this.watcher.restart(Collections.singleton(new File(this.directory, "thin.properties")));
+		this.watcher.stop();
+		assertThat(System.getProperty(RUNS)).isEqualTo("2");
+		assertThat(this.resolved.get()).isEqualTo(1);
+		assertThat(this.watcher.getDependencyLoader()).isNotSameAs(dependencies);
+	}
+
+	@Test
+	public void scan() throws Exception {
+		assertThat(this.watcher.scan()).hasSize(1);
+	}
+
+	public static class Application {
+
+		public static void main(String[] args) {
+			String runs = System.getProperty(RUNS, "0");
+			System.setProperty(RUNS, String.valueOf(Integer.valueOf(runs) + 1));
+		}
+
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import org.springframework.util.StringUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClassPathUsageTests {
+
+	@Test
+	public void classesAndResources() throws Exception {
+		URL core = StringUtils.class.getProtectionDomain().getCodeSource().getLocation();
+		URL slf4j = Logger.class.getProtectionDomain().getCodeSource().getLocation();
+		ClassPathUsage usage = new ClassPathUsage(new URL[] { core, slf4j },
+				new HashMap<>(), new HashMap<>());
+		try (ThinJarClassLoader loader = new ThinJarClassLoader(new URL[] { core, slf4j },
+				getClass().getClassLoader().getParent())) {
+			loader.setUsage(usage);
+			loader.loadClass(StringUtils.class.getName());
+			loader.getResource("META-INF/spring.factories");
+			loader.getResources("META-INF/MANIFEST.MF");
+		}
+		assertThat(usage.getHits(core)).isGreaterThan(1);
+		// Only the manifest
+		assertThat(usage.getHits(slf4j)).isEqualTo(1);
+	}
+
+	@Test
+	public void profile() throws Exception {
+		URL used = new URL("file:/tmp/used.jar");
+		URL unused = new URL("file:/tmp/unused.jar");
+		URL unknown = new URL("file:/tmp/unknown.jar");
+		Map<String, String> coordinates = new HashMap<>();
+		coordinates.put(used.toString(), "com.example:used");
+		coordinates.put(unused.toString(), "com.example:unused");
+		Map<String, Set<String>> subtrees = new HashMap<>();
+		subtrees.put("com.example:used", Collections.emptySet());
+		subtrees.put("com.example:unused", Collections.emptySet());
+		ClassPathUsage usage = new ClassPathUsage(new URL[] { used, unused, unknown },
+				coordinates, subtrees);
+		usage.hit(new URL("jar:file:/tmp/used.jar!/com/example/Used.class"));
+		File directory = new File("target/thin/trim");
+		usage.write(directory);
+		String profile = new String(
+				Files.readAllBytes(new File(directory, "thin-trimmed.properties").toPath()),
+				StandardCharsets.UTF_8);
+		assertThat(profile).contains("exclusions.unused=com.example:unused");
+		assertThat(profile).doesNotContain("exclusions.used=");
+		assertThat(profile).doesNotContain("exclusions.unknown=");
+		assertThat(profile).contains("com.example:used (file:/tmp/used.jar)");
+		assertThat(profile).contains("file:/tmp/unknown.jar");
+	}
+
+	@Test
+	public void starter() throws Exception {
+		URL starter = new URL("file:/tmp/starter.jar");
+		URL web = new URL("file:/tmp/web.jar");
+		URL json = new URL("file:/tmp/json.jar");
+		URL yaml = new URL("file:/tmp/yaml.jar");
+		Map<String, String> coordinates = new HashMap<>();
+		coordinates.put(starter.toString(), "com.example:starter");
+		coordinates.put(web.toString(), "com.example:web");
+		coordinates.put(json.toString(), "com.example:json");
+		coordinates.put(yaml.toString(), "com.example:yaml");
+		// starter -> (web -> json), yaml
+		DependencyNode root = new DefaultDependencyNode((Dependency) null);
+		DependencyNode node = node("com.example:starter:1.0");
+		DependencyNode child = node("com.example:web:1.0");
+		child.getChildren().add(node("com.example:json:1.0"));
+		node.getChildren().add(child);
+		node.getChildren().add(node("com.example:yaml:1.0"));
+		root.getChildren().add(node);
+		DependencyGraph graph = new DependencyGraph(root, Collections.emptyList(),
+				new ResolutionReport());
+		ClassPathUsage usage = new ClassPathUsage(new URL[] { starter, web, json, yaml },
+				coordinates, graph.getSubtrees());
+		// The starter itself has no classes
+		usage.hit(new URL("jar:file:/tmp/json.jar!/com/example/Json.class"));
+		String profile = usage.toProperties();
+		assertThat(profile).contains("exclusions.yaml=com.example:yaml");
+		assertThat(profile).doesNotContain("exclusions.starter=");
+		assertThat(profile).doesNotContain("exclusions.web=");
+		assertThat(profile).doesNotContain("exclusions.json=");
+	}
+
+	private DependencyNode node(String coordinates) {
+		return new DefaultDependencyNode(
+				new Dependency(new DefaultArtifact(coordinates), "compile"));
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DependencyPackTests {
+
+	private File directory = new File("target/packs");
+
+	private File first;
+
+	private File second;
+
+	@BeforeEach
+	public void init() throws Exception {
+		FileSystemUtils.deleteRecursively(this.directory);
+		this.directory.mkdirs();
+		this.first = jar("first.jar", "META-INF/info.properties", "first");
+		this.second = jar("second.jar", "META-INF/info.properties", "second");
+	}
+
+	@AfterEach
+	public void close() {
+		FileSystemUtils.deleteRecursively(this.directory);
+	}
+
+	@Test
+	public void findFirst() throws Exception {
+		try (DependencyPack pack = build()) {
+			DependencyPack.Entry entry = pack.find("META-INF/info.properties");
+			assertThat(entry).isNotNull();
+			assertThat(content(pack.read(entry))).isEqualTo("first");
+			assertThat(pack.find("META-INF/missing.properties")).isNull();
+		}
+	}
+
+	@Test
+	public void findAllInClasspathOrder() throws Exception {
+		try (DependencyPack pack = build()) {
+			List<DependencyPack.Entry> entries = pack.findAll("META-INF/info.properties");
+			assertThat(entries).hasSize(2);
+			assertThat(content(pack.read(entries.get(0)))).isEqualTo("first");
+			assertThat(content(pack.read(entries.get(1)))).isEqualTo("second");
+		}
+	}
+
+	@Test
+	public void reusedWhenFingerprintMatches() throws Exception {
+		File location = DependencyPack.location(this.directory, Arrays.asList(this.first, this.second));
+		try (DependencyPack pack = build()) {
+			assertThat(pack.getFile()).isEqualTo(location);
+		}
+		long modified = location.lastModified();
+		try (DependencyPack pack = build()) {
+			assertThat(pack.getFile().lastModified()).isEqualTo(modified);
+		}
+		assertThat(DependencyPack.location(this.directory, Arrays.asList(this.second, this.first)))
+				.isNotEqualTo(location);
+	}
+
+	@Test
+	public void resourceUrlLooksLikeJar() throws Exception {
+		try (DependencyPack pack = build()) {
+			URL url = pack.getUrl(pack.find("META-INF/info.properties"));
+			assertThat(url.toString()).startsWith("jar:file:").endsWith("first.jar!/META-INF/info.properties");
+			try (InputStream stream = url.openStream()) {
+				assertThat(StreamUtils.copyToString(stream, StandardCharsets.UTF_8)).isEqualTo("first");
+			}
+		}
+	}
+
+	@Test
+	public void classLoader() throws Exception {
+		String name = Level.class.getName();
+		byte[] bytes = StreamUtils
+				.copyToByteArray(new ClassPathResource(name.replace('.', '/') + ".class").getInputStream());
+		File classes = new File(this.directory, "classes.jar");
+		try (JarOutputStream output = new JarOutputStream(new FileOutputStream(classes))) {
+			output.putNextEntry(new JarEntry(name.replace('.', '/') + ".class"));
+			output.write(bytes);
+		}
+		List<File> jars = Collections.singletonList(classes);
+		try (DependencyPack pack = DependencyPack.build(DependencyPack.location(this.directory, jars), jars)) {
+			PackedThinJarClassLoader loader = new PackedThinJarClassLoader(new URL[0], pack, null);
+			Class<?> type = loader.loadClass(name);
+			assertThat(type.getClassLoader()).isSameAs(loader);
+			assertThat(type.getPackage()).isNotNull();
+			assertThat(type.getProtectionDomain().getCodeSource().getLocation())
+					.isEqualTo(classes.getAbsoluteFile().toURI().toURL());
+			assertThat(loader.getResources("META-INF/info.properties").hasMoreElements()).isFalse();
+		}
+	}
+
+	@Test
+	public void multiReleaseWithNonNumericVersion() throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Multi-Release", "true");
+		File file = new File(this.directory, "multi.jar");
+		try (JarOutputStream output = new JarOutputStream(new FileOutputStream(file), manifest)) {
+			output.putNextEntry(new JarEntry("META-INF/versions/9/info.txt"));
+			output.write("nine".getBytes(StandardCharsets.UTF_8));
+			output.putNextEntry(new JarEntry("META-INF/versions/foo/info.txt"));
+			output.write("foo".getBytes(StandardCharsets.UTF_8));
+		}
+		List<File> jars = Collections.singletonList(file);
+		try (DependencyPack pack = DependencyPack.build(DependencyPack.location(this.directory, jars), jars)) {
+			assertThat(content(pack.read(pack.find("info.txt")))).isEqualTo("nine");
+			assertThat(content(pack.read(pack.find("META-INF/versions/foo/info.txt")))).isEqualTo("foo");
+		}
+	}
+
+	private DependencyPack build() throws Exception {
+		List<File> jars = Arrays.asList(this.first, this.second);
+		return DependencyPack.build(DependencyPack.location(this.directory, jars), jars);
+	}
+
+	private File jar(String name, String entry, String content) throws Exception {
+		File file = new File(this.directory, name);
+		try (JarOutputStream output = new JarOutputStream(new FileOutputStream(file))) {
+			output.putNextEntry(new JarEntry("META-INF/"));
+			output.putNextEntry(new JarEntry(entry));
+			output.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return file.getAbsoluteFile();
+	}
+
+	private String content(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -1,6 +1,7 @@
 package org.springframework.boot.loader.thin;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
@@ -15,6 +16,7 @@ import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.util.FileSystemUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -47,6 +49,24 @@ public class DependencyResolverTests {
 		assertThat(dependencies.size()).isEqualTo(0);
 	}
 
+	@Test
+	public void bootstrap() throws Exception {
+		DependencyResolver.close();
+		DependencyResolver resolver = DependencyResolver.instance();
+		try {
+			resolver.bootstrap(new Properties());
+			assertThat(ReflectionTestUtils.getField(resolver, "pendingContainer")).isNotNull();
+			Resource resource = new ClassPathResource("META-INF/thin/empty-pom.xml");
+			assertThat(resolver.dependencies(resource)).isEmpty();
+			assertThat(ReflectionTestUtils.getField(resolver, "pendingContainer")).isNull();
+			assertThat(ReflectionTestUtils.getField(resolver, "container")).isNotNull();
+		}
+		finally {
+			DependencyResolver.close();
+			this.resolver = DependencyResolver.instance();
+		}
+	}
+
 	@Test
 	public void petclinic() throws Exception {
 		Resource resource = new ClassPathResource("apps/petclinic/pom.xml");
@@ -328,6 +348,87 @@ public class DependencyResolverTests {
 		});
 	}
 
+	@Test
+	public void deltaWithAddedDependency() throws Exception {
+		Resource resource = new ClassPathResource("apps/basic/pom.xml");
+		Properties base = new Properties();
+		base.setProperty(DependencyResolver.THIN_DELTA, "true");
+		Properties properties = new Properties();
+		properties.putAll(base);
+		properties.setProperty(ThinJarLauncher.THIN_PROFILE, "actr");
+		properties.setProperty("dependencies.spring-boot-starter-actuator",
+				"org.springframework.boot:spring-boot-starter-actuator");
+		List<Dependency> dependencies = resolver.dependencies(resource, base, properties);
+		assertThat(dependencies).filteredOn("artifact.artifactId", "micrometer-core").hasSize(1);
+		assertThat(dependencies).are(resolved());
+		assertThat(coordinates(dependencies))
+				.containsExactlyInAnyOrderElementsOf(coordinates(resolver.dependencies(resource, properties)));
+	}
+
+	@Test
+	public void deltaWithExclusion() throws Exception {
+		Resource resource = new ClassPathResource("apps/basic/pom.xml");
+		Properties base = new Properties();
+		base.setProperty(DependencyResolver.THIN_DELTA, "true");
+		Properties properties = new Properties();
+		properties.putAll(base);
+		properties.setProperty(ThinJarLauncher.THIN_PROFILE, "jetty");
+		properties.setProperty("exclusions.spring-boot-starter-tomcat",
+				"org.springframework.boot:spring-boot-starter-tomcat");
+		properties.setProperty("dependencies.spring-boot-starter-jetty",
+				"org.springframework.boot:spring-boot-starter-jetty");
+		List<Dependency> dependencies = resolver.dependencies(resource, base, properties);
+		assertThat(dependencies).filteredOn("artifact.artifactId", "tomcat-embed-core").isEmpty();
+		assertThat(dependencies).filteredOn("artifact.artifactId", "jetty-server").hasSize(1);
+		assertThat(coordinates(dependencies))
+				.containsExactlyInAnyOrderElementsOf(coordinates(resolver.dependencies(resource, properties)));
+	}
+
+	@Test
+	public void mergeChildWithParentManagement() throws Exception {
+		// Parent on Spring Boot 2.2.0, child on 2.3.1
+		ResolvedGraph parent = resolver.graph(new ClassPathResource("apps/child/pom.xml"), new Properties(), true);
+		ResolvedGraph child = resolver.model(new ClassPathResource("apps/basic/pom.xml"), new Properties());
+		// Nothing resolved at the child's own versions
+		assertThat(child.getDependencies()).isEmpty();
+		assertThat(child.getDirect()).isNotEmpty();
+		List<Dependency> dependencies = resolver.merge(parent, child, new Properties());
+		assertThat(dependencies).are(resolved());
+		// Declared by the child
+		assertThat(dependencies).filteredOn("artifact.artifactId", "spring-boot-starter-web").first()
+				.is(version("2.3.1.RELEASE"));
+		// Only in the child, but managed by the parent, with the dependencies of that
+		// version
+		assertThat(dependencies).filteredOn("artifact.artifactId", "spring-webmvc").hasSize(1).first()
+				.is(version("5.2.0.RELEASE"));
+		assertThat(dependencies).filteredOn("artifact.artifactId", "spring-core").hasSize(1).first()
+				.is(version("5.2.0.RELEASE"));
+	}
+
+	@Test
+	public void graphRecordsParentsAndImports() throws Exception {
+		Resource resource = new ClassPathResource("apps/basic/pom.xml");
+		ResolvedGraph graph = resolver.graph(resource, new Properties(), false);
+		List<String> sources = new ArrayList<>();
+		for (ResolvedGraph.Source source : graph.getSources()) {
+			assertThat(source.getFile()).as(source.getCoordinates()).exists();
+			sources.add(source.getCoordinates());
+		}
+		assertThat(sources).contains("org.springframework.boot:spring-boot-starter-parent:2.3.1.RELEASE",
+				"org.springframework.boot:spring-boot-dependencies:2.3.1.RELEASE");
+		// Boms imported by spring-boot-dependencies, with their versions interpolated
+		assertThat(sources).anyMatch(value -> value.startsWith("com.fasterxml.jackson:jackson-bom:2."));
+		assertThat(graph.isPersistable()).isTrue();
+	}
+
+	private static List<String> coordinates(List<Dependency> dependencies) {
+		List<String> list = new ArrayList<>();
+		for (Dependency dependency : dependencies) {
+			list.add(dependency.getArtifact().toString());
+		}
+		return list;
+	}
+
 	@Test
 	@Disabled("Set up a secure server and declare it in your settings.xml to run this test. Point it at your .m2/repository so it can resolve the app sample from this project.")
 	public void authentication() throws Exception {
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.repository.internal.DefaultArtifactDescriptorReader;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositoryEvent.EventType;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.impl.ArtifactResolver;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DownloadPipelineTests {
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	private final List<String> downloads = new CopyOnWriteArrayList<>();
+
+	private final CountDownLatch started = new CountDownLatch(1);
+
+	private final CountDownLatch finish = new CountDownLatch(1);
+
+	private final DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+
+	private DownloadPipeline pipeline;
+
+	private PrefetchingArtifactDescriptorReader reader;
+
+	@BeforeEach
+	public void init() {
+		this.pipeline = new DownloadPipeline(this.executor, new Downloader());
+		this.pipeline.register(this.session);
+		this.reader = new PrefetchingArtifactDescriptorReader(new DefaultArtifactDescriptorReader() {
+			@Override
+			public ArtifactDescriptorResult readArtifactDescriptor(RepositorySystemSession session,
+					ArtifactDescriptorRequest request) {
+				ArtifactDescriptorResult result = new ArtifactDescriptorResult(request);
+				result.setArtifact(request.getArtifact());
+				return result;
+			}
+		});
+	}
+
+	@AfterEach
+	public void close() {
+		this.finish.countDown();
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void downloadStartsDuringCollection() throws Exception {
+		read("com.example:first:1.0");
+		// Collection is still going on (only one descriptor has been read), but the jar
+		// is already on its way
+		assertThat(this.started.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(this.downloads).containsExactly("com.example:first:jar:1.0");
+		read("com.example:second:1.0");
+		this.finish.countDown();
+		this.executor.shutdown();
+		assertThat(this.executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(this.downloads).containsExactly("com.example:first:jar:1.0", "com.example:second:jar:1.0");
+	}
+
+	@Test
+	public void onlyOncePerArtifact() throws Exception {
+		read("com.example:first:1.0");
+		read("com.example:first:1.1");
+		read("com.example:first:pom:1.0");
+		read("com.example:snapshot:1.0-SNAPSHOT");
+		this.finish.countDown();
+		this.executor.shutdown();
+		assertThat(this.executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(this.downloads).containsExactly("com.example:first:jar:1.0");
+	}
+
+	@Test
+	public void resolutionWaitsForPrefetch() throws Exception {
+		read("com.example:first:1.0");
+		assertThat(this.started.await(10, TimeUnit.SECONDS)).isTrue();
+		RepositoryEvent event = new RepositoryEvent.Builder(this.session, EventType.ARTIFACT_RESOLVING)
+				.setArtifact(new DefaultArtifact("com.example:first:1.0")).build();
+		ExecutorService resolution = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> resolving = resolution.submit(() -> this.pipeline.artifactResolving(event));
+			Thread.sleep(200L);
+			assertThat(resolving.isDone()).isFalse();
+			this.finish.countDown();
+			resolving.get(10, TimeUnit.SECONDS);
+		}
+		finally {
+			resolution.shutdownNow();
+		}
+	}
+
+	private void read(String coordinates) throws Exception {
+		this.reader.readArtifactDescriptor(this.session,
+				new ArtifactDescriptorRequest(new DefaultArtifact(coordinates), Collections.emptyList(), null));
+	}
+
+	private class Downloader implements ArtifactResolver {
+
+		@Override
+		public ArtifactResult resolveArtifact(RepositorySystemSession session, ArtifactRequest request) {
+			Artifact artifact = request.getArtifact();
+			downloads.add(artifact.toString());
+			started.countDown();
+			try {
+				finish.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new ArtifactResult(request).setArtifact(artifact);
+		}
+
+		@Override
+		public List<ArtifactResult> resolveArtifacts(RepositorySystemSession session,
+				Collection<? extends ArtifactRequest> requests) {
+			List<ArtifactResult> results = new ArrayList<>();
+			for (ArtifactRequest request : requests) {
+				results.add(resolveArtifact(session, request));
+			}
+			return results;
+		}
+
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmbeddedWorkspaceReaderTests {
+
+	private static final String POM = "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">"
+			+ "<modelVersion>4.0.0</modelVersion><groupId>com.example</groupId>"
+			+ "<artifactId>%s</artifactId><version>%s</version>%s</project>";
+
+	private final File directory = new File("target/thin/hybrid");
+
+	private final File repository = new File(this.directory, "repository");
+
+	private File archive;
+
+	@BeforeEach
+	public void init() throws Exception {
+		FileSystemUtils.deleteRecursively(this.directory);
+		this.directory.mkdirs();
+		this.archive = new File(this.directory, "app.jar");
+		try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(this.archive))) {
+			jar.putNextEntry(new JarEntry("BOOT-INF/lib/foo-1.0.jar"));
+			jar.write(library("foo", "1.0", true));
+			jar.putNextEntry(new JarEntry("BOOT-INF/lib/bar-2.0.jar"));
+			jar.write(library("bar", "2.0", false));
+		}
+	}
+
+	@Test
+	public void findByPomProperties() throws Exception {
+		EmbeddedWorkspaceReader reader = EmbeddedWorkspaceReader.load(this.archive, this.repository);
+		File file = reader.findArtifact(new DefaultArtifact("com.example:foo:1.0"));
+		assertThat(file).exists();
+		assertThat(file.getParentFile().getParentFile().getName()).isEqualTo(EmbeddedWorkspaceReader.DIRECTORY);
+		File pom = reader.findArtifact(new DefaultArtifact("com.example:foo:pom:1.0"));
+		assertThat(new String(Files.readAllBytes(pom.toPath()), StandardCharsets.UTF_8)).contains("<artifactId>foo");
+		assertThat(reader.findVersions(new DefaultArtifact("com.example:foo:1.0"))).containsExactly("1.0");
+	}
+
+	@Test
+	public void findByFileName() throws Exception {
+		EmbeddedWorkspaceReader reader = EmbeddedWorkspaceReader.load(this.archive, this.repository);
+		assertThat(reader.findArtifact(new DefaultArtifact("org.other:bar:2.0"))).exists();
+		assertThat(reader.findArtifact(new DefaultArtifact("org.other:bar:pom:2.0"))).isNull();
+	}
+
+	@Test
+	public void otherVersionNotFound() throws Exception {
+		EmbeddedWorkspaceReader reader = EmbeddedWorkspaceReader.load(this.archive, this.repository);
+		assertThat(reader.findArtifact(new DefaultArtifact("com.example:foo:1.1"))).isNull();
+		assertThat(reader.findArtifact(new DefaultArtifact("com.example:foo:jar:sources:1.0"))).isNull();
+	}
+
+	@Test
+	public void indexReused() throws Exception {
+		EmbeddedWorkspaceReader.load(this.archive, this.repository);
+		File[] indexes = new File(this.repository, EmbeddedWorkspaceReader.DIRECTORY).listFiles();
+		assertThat(indexes).hasSize(1);
+		assertThat(new File(indexes[0], "index.properties")).exists();
+		EmbeddedWorkspaceReader reader = EmbeddedWorkspaceReader.load(this.archive, this.repository);
+		assertThat(reader.findArtifact(new DefaultArtifact("com.example:foo:1.0"))).exists();
+	}
+
+	@Test
+	public void resolveOfflineFromArchive() throws Exception {
+		File pom = new File(this.directory, "pom.xml");
+		Files.write(pom.toPath(), String.format(POM, "app", "0.0.1",
+				"<dependencies><dependency><groupId>com.example</groupId><artifactId>foo</artifactId>"
+						+ "<version>1.0</version></dependency></dependencies>")
+				.getBytes(StandardCharsets.UTF_8));
+		Properties properties = new Properties();
+		properties.setProperty(DependencyResolver.THIN_ROOT, this.directory.getPath());
+		properties.setProperty(DependencyResolver.THIN_OFFLINE, "true");
+		properties.setProperty(DependencyResolver.THIN_HYBRID, this.archive.getAbsolutePath());
+		List<Dependency> dependencies = DependencyResolver.instance().dependencies(new FileSystemResource(pom),
+				properties);
+		assertThat(dependencies).hasSize(1);
+		assertThat(dependencies.get(0).getArtifact().getFile()).exists();
+		assertThat(new File(this.repository, "com/example/foo")).doesNotExist();
+	}
+
+	private static byte[] library(String artifactId, String version, boolean metadata) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JarOutputStream jar = new JarOutputStream(bytes)) {
+			jar.putNextEntry(new JarEntry("com/example/" + artifactId + "/Empty.class"));
+			if (metadata) {
+				String base = "META-INF/maven/com.example/" + artifactId + "/";
+				jar.putNextEntry(new JarEntry(base + "pom.properties"));
+				jar.write(("groupId=com.example\nartifactId=" + artifactId + "\nversion=" + version + "\n")
+						.getBytes(StandardCharsets.UTF_8));
+				jar.putNextEntry(new JarEntry(base + "pom.xml"));
+				jar.write(String.format(POM, artifactId, version, "").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.internal.impl.EnhancedLocalRepositoryManagerFactory;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexedLocalRepositoryManagerTests {
+
+	private static final String KEY = "com.example:demo:jar:1.0";
+
+	private static final String PATH = "com/example/demo/1.0/demo-1.0.jar";
+
+	private final File repository = new File("target/index/managed");
+
+	private final RemoteRepository central = new RemoteRepository.Builder("central", "default",
+			"https://repo1.maven.org/maven2").build();
+
+	private final DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+
+	private RepositoryIndex index;
+
+	@BeforeEach
+	public void init() throws Exception {
+		FileSystemUtils.deleteRecursively(this.repository);
+		File jar = new File(this.repository, PATH);
+		jar.getParentFile().mkdirs();
+		FileCopyUtils.copy("demo".getBytes(StandardCharsets.UTF_8), new FileOutputStream(jar));
+		this.index = RepositoryIndex.load(this.repository);
+	}
+
+	@AfterEach
+	public void close() {
+		FileSystemUtils.deleteRecursively(this.repository);
+	}
+
+	@Test
+	public void recordsOrigin() throws Exception {
+		origin("central");
+		LocalArtifactResult result = find(manager(false));
+		assertThat(result.isAvailable()).isTrue();
+		assertThat(this.index.find(KEY).getOrigin()).isEqualTo("central");
+		// Now from the index
+		result = find(manager(false));
+		assertThat(result.isAvailable()).isTrue();
+		assertThat(result.getRepository()).isEqualTo(this.central);
+	}
+
+	@Test
+	public void otherOrigin() throws Exception {
+		origin("other");
+		this.index.add(KEY, PATH, "other");
+		assertThat(find(manager(false)).isAvailable()).isFalse();
+	}
+
+	@Test
+	public void otherOriginTrusted() throws Exception {
+		this.index.add(KEY, PATH, "other");
+		assertThat(find(manager(true)).isAvailable()).isTrue();
+	}
+
+	@Test
+	public void missingFile() throws Exception {
+		this.index.add(KEY, PATH, "central");
+		new File(this.repository, PATH).delete();
+		assertThat(find(manager(true)).isAvailable()).isFalse();
+	}
+
+	private IndexedLocalRepositoryManager manager(boolean trusted) throws Exception {
+		return new IndexedLocalRepositoryManager(new EnhancedLocalRepositoryManagerFactory()
+				.newInstance(this.session, new LocalRepository(this.repository)), this.index, trusted);
+	}
+
+	private LocalArtifactResult find(IndexedLocalRepositoryManager manager) {
+		return manager.find(this.session, new LocalArtifactRequest(new DefaultArtifact(KEY),
+				Collections.singletonList(this.central), null));
+	}
+
+	private void origin(String id) throws Exception {
+		FileCopyUtils.copy(("demo-1.0.jar>" + id + "=\n").getBytes(StandardCharsets.UTF_8),
+				new FileOutputStream(new File(this.repository, "com/example/demo/1.0/_remote.repositories")));
+	}
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.repository.Proxy;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.util.repository.AuthenticationBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class JdkHttpTransporterTests {
+
+	private static final byte[] CONTENT = new byte[10000];
+
+	static {
+		for (int i = 0; i < CONTENT.length; i++) {
+			CONTENT[i] = (byte) i;
+		}
+	}
+
+	private HttpServer server;
+
+	private List<String> ranges = new CopyOnWriteArrayList<>();
+
+	private List<Integer> ports = new CopyOnWriteArrayList<>();
+
+	private int shift;
+
+	private List<String> proxyAuthorizations = new CopyOnWriteArrayList<>();
+
+	private DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+
+	private RemoteRepository repository;
+
+	private File directory = new File("target/transport");
+
+	@BeforeEach
+	public void init() throws Exception {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/repo/", this::handle);
+		this.server.start();
+		this.repository = new RemoteRepository.Builder("test", "default",
+				"http://localhost:" + this.server.getAddress().getPort() + "/repo").build();
+		this.session.setConfigProperty(JdkHttpTransporterFactory.ENABLED, true);
+		FileSystemUtils.deleteRecursively(this.directory);
+		this.directory.mkdirs();
+	}
+
+	@AfterEach
+	public void close() {
+		this.server.stop(0);
+		FileSystemUtils.deleteRecursively(this.directory);
+	}
+
+	@Test
+	public void disabledByDefault() throws Exception {
+		assertThatExceptionOfType(NoTransporterException.class).isThrownBy(() -> new JdkHttpTransporterFactory()
+				.newInstance(MavenRepositorySystemUtils.newSession(), this.repository));
+	}
+
+	@Test
+	public void get() throws Exception {
+		try (Transporter transporter = transporter()) {
+			GetTask task = new GetTask(URI.create("com/example/demo.jar"));
+			transporter.get(task);
+			assertThat(task.getDataBytes()).isEqualTo(CONTENT);
+		}
+	}
+
+	@Test
+	public void notFound() throws Exception {
+		try (Transporter transporter = transporter()) {
+			Exception error = null;
+			try {
+				transporter.get(new GetTask(URI.create("com/example/missing.jar")));
+			}
+			catch (Exception e) {
+				error = e;
+			}
+			assertThat(error).isNotNull();
+			assertThat(transporter.classify(error)).isEqualTo(Transporter.ERROR_NOT_FOUND);
+		}
+	}
+
+	@Test
+	public void resume() throws Exception {
+		File file = new File(this.directory, "demo.jar");
+		Files.write(file.toPath(), Arrays.copyOf(CONTENT, 4000));
+		try (Transporter transporter = transporter()) {
+			GetTask task = new GetTask(URI.create("com/example/demo.jar")).setDataFile(file, true);
+			transporter.get(task);
+		}
+		assertThat(this.ranges).containsExactly("bytes=4000-");
+		assertThat(Files.readAllBytes(file.toPath())).isEqualTo(CONTENT);
+	}
+
+	@Test
+	public void resumeBeyondEnd() throws Exception {
+		File file = new File(this.directory, "demo.jar");
+		Files.write(file.toPath(), new byte[CONTENT.length + 2000]);
+		try (Transporter transporter = transporter()) {
+			GetTask task = new GetTask(URI.create("com/example/demo.jar")).setDataFile(file, true);
+			transporter.get(task);
+		}
+		assertThat(this.ranges).containsExactly("bytes=12000-");
+		assertThat(Files.readAllBytes(file.toPath())).isEqualTo(CONTENT);
+	}
+
+	@Test
+	public void resumeWithWrongContentRange() throws Exception {
+		this.shift = 1000;
+		File file = new File(this.directory, "demo.jar");
+		Files.write(file.toPath(), Arrays.copyOf(CONTENT, 4000));
+		try (Transporter transporter = transporter()) {
+			GetTask task = new GetTask(URI.create("com/example/demo.jar")).setDataFile(file, true);
+			transporter.get(task);
+		}
+		assertThat(this.ranges).containsExactly("bytes=4000-");
+		assertThat(Files.readAllBytes(file.toPath())).isEqualTo(CONTENT);
+	}
+
+	@Test
+	public void connectionReused() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			try (Transporter transporter = transporter()) {
+				transporter.get(new GetTask(URI.create("com/example/demo.jar")));
+			}
+		}
+		assertThat(this.ports).hasSize(3);
+		assertThat(this.ports.stream().distinct()).hasSize(1);
+	}
+
+	@Test
+	public void proxyAuthentication() throws Exception {
+		// The test server is the proxy as well (it gets the absolute URI)
+		this.repository = new RemoteRepository.Builder(this.repository).setProxy(proxy()).build();
+		try (Transporter transporter = transporter()) {
+			GetTask task = new GetTask(URI.create("com/example/demo.jar"));
+			transporter.get(task);
+			assertThat(task.getDataBytes()).isEqualTo(CONTENT);
+		}
+		assertThat(this.proxyAuthorizations).containsExactly(
+				"Basic " + Base64.getEncoder().encodeToString("user:secret".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void noProxyAuthenticationForHttps() throws Exception {
+		RemoteRepository https = new RemoteRepository.Builder("test", "default", "https://localhost/repo")
+				.setProxy(proxy()).build();
+		assertThatExceptionOfType(NoTransporterException.class)
+				.isThrownBy(() -> new JdkHttpTransporterFactory().newInstance(this.session, https));
+	}
+
+	@Test
+	public void proxyForHttps() throws Exception {
+		RemoteRepository https = new RemoteRepository.Builder("test", "default", "https://localhost/repo")
+				.setProxy(new Proxy("http", "localhost", this.server.getAddress().getPort())).build();
+		try (Transporter transporter = new JdkHttpTransporterFactory().newInstance(this.session, https)) {
+			assertThat(transporter).isNotNull();
+		}
+	}
+
+	private Proxy proxy() {
+		return new Proxy("http", "localhost", this.server.getAddress().getPort(),
+				new AuthenticationBuilder().addUsername("user").addPassword("secret").build());
+	}
+
+	private Transporter transporter() throws Exception {
+		return new JdkHttpTransporterFactory().newInstance(this.session, this.repository);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		this.ports.add(exchange.getRemoteAddress().getPort());
+		String authorization = exchange.getRequestHeaders().getFirst("Proxy-Authorization");
+		if (authorization != null) {
+			this.proxyAuthorizations.add(authorization);
+		}
+		if (!exchange.getRequestURI().getPath().endsWith("/demo.jar")) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		int offset = 0;
+		if (range != null) {
+			this.ranges.add(range);
+			offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+			if (offset >= CONTENT.length) {
+				exchange.sendResponseHeaders(416, -1);
+				exchange.close();
+				return;
+			}
+			offset -= this.shift;
+			exchange.getResponseHeaders().add("Content-Range",
+					"bytes " + offset + "-" + (CONTENT.length - 1) + "/" + CONTENT.length);
+			exchange.sendResponseHeaders(206, CONTENT.length - offset);
+		}
+		else {
+			exchange.sendResponseHeaders(200, CONTENT.length);
+		}
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(CONTENT, offset, CONTENT.length - offset);
+		}
+	}
+
+}
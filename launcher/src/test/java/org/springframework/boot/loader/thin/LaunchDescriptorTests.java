@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LaunchDescriptorTests {
+
+	@Test
+	public void key() {
+		// Same as the wrapper (ThinJarWrapperTests)
+		Map<String, String> properties = new HashMap<>();
+		properties.put("thin.root", "/root");
+		properties.put("thin.profile", "foo");
+		properties.put("thin.debug", "true");
+		properties.put("thin.archive", "/other.jar");
+		properties.put("server.port", "0");
+		assertThat(LaunchDescriptor.key("/app.jar", "/work", properties))
+				.isEqualTo("abc75fd313e73d6f257cee62e2abb26583426b83");
+	}
+
+	@Test
+	public void missingInput() {
+		File missing = new File("target/missing.properties");
+		Properties properties = new LaunchDescriptor("com.example.Main", true,
+				Arrays.asList(new File("pom.xml")), Collections.singletonList(missing)).toProperties();
+		assertThat(properties.getProperty("classpath.0")).isEqualTo(new File("pom.xml").getAbsolutePath());
+		assertThat(properties.getProperty("input.0.length")).isEqualTo("-1");
+		assertThat(properties.getProperty("input.0.modified")).isEqualTo("0");
+	}
+
+}
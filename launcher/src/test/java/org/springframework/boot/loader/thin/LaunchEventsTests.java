@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositoryEvent.EventType;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class LaunchEventsTests {
+
+	private final File root = new File("target/thin/events");
+
+	@BeforeEach
+	public void init() {
+		assumeTrue(LaunchEvents.isAvailable());
+		this.root.mkdirs();
+	}
+
+	@Test
+	public void notRecording() throws Exception {
+		assertThat(LaunchEvents.phase("foo", null)).isSameAs(LaunchEvents.phase("bar", null));
+		assertThat(LaunchEvents.artifact("com.example:foo:1.0")).isNull();
+	}
+
+	@Test
+	public void phase() throws Exception {
+		List<String> events = record(() -> {
+			try (LaunchEvents.Phase phase = LaunchEvents.phase("model", "pom.xml")) {
+				assertThat(phase).isNotSameAs(LaunchEvents.phase("other", null));
+			}
+		}, "detail");
+		assertThat(events).contains("org.springframework.boot.thin.Phase: model pom.xml");
+	}
+
+	@Test
+	public void artifact() throws Exception {
+		ArtifactEventListener listener = new ArtifactEventListener();
+		DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+		Artifact artifact = new DefaultArtifact("com.example:foo:1.0");
+		RemoteRepository central = new RemoteRepository.Builder("central", "default",
+				"https://repo1.maven.org/maven2").build();
+		List<String> events = record(() -> {
+			listener.artifactResolving(new RepositoryEvent.Builder(session,
+					EventType.ARTIFACT_RESOLVING).setArtifact(artifact).build());
+			listener.artifactResolved(
+					new RepositoryEvent.Builder(session, EventType.ARTIFACT_RESOLVED)
+							.setArtifact(artifact).setRepository(central).build());
+		}, "repository");
+		assertThat(events).contains(
+				"org.springframework.boot.thin.Artifact: com.example:foo:jar:1.0 central");
+	}
+
+	/**
+	 * Run the task in a flight recording and list the events in the form "type: name
+	 * value" (the flight recorder API is not available at Java 8 source level).
+	 */
+	private List<String> record(Runnable task, String field) throws Exception {
+		Class<?> type = Class.forName("jdk.jfr.Recording");
+		Object recording = type.getConstructor().newInstance();
+		type.getMethod("start").invoke(recording);
+		try {
+			task.run();
+		}
+		finally {
+			type.getMethod("stop").invoke(recording);
+		}
+		Path file = new File(this.root, "test.jfr").toPath();
+		type.getMethod("dump", Path.class).invoke(recording, file);
+		type.getMethod("close").invoke(recording);
+		Class<?> recorded = Class.forName("jdk.jfr.consumer.RecordedEvent");
+		List<String> result = new ArrayList<>();
+		for (Object event : (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+				.getMethod("readAllEvents", Path.class).invoke(null, file)) {
+			Object eventType = recorded.getMethod("getEventType").invoke(event);
+			String name = (String) eventType.getClass().getMethod("getName").invoke(eventType);
+			if (name.startsWith("org.springframework.boot.thin.")) {
+				Object first = recorded.getMethod("getValue", String.class).invoke(event,
+						name.endsWith("Phase") ? "name" : "coordinates");
+				Object second = recorded.getMethod("getValue", String.class).invoke(event,
+						field);
+				result.add(name + ": " + first + " " + second);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.logging.Log;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ModulePathTests {
+
+	private final File root = new File("target/thin/modulepath");
+
+	@BeforeEach
+	public void init() {
+		assumeTrue(ModulePath.isAvailable());
+		FileSystemUtils.deleteRecursively(this.root);
+		this.root.mkdirs();
+	}
+
+	@Test
+	public void modules() throws Exception {
+		URL core = StringUtils.class.getProtectionDomain().getCodeSource().getLocation();
+		URL jcl = Log.class.getProtectionDomain().getCodeSource().getLocation();
+		ModulePath path = ModulePath.resolve(new URL[] { core, jcl });
+		assertThat(path.getModules()).isEqualTo(2);
+		assertThat(path.getClassPath()).isEmpty();
+		ClassLoader loader = path
+				.createClassLoader(new URLClassLoader(path.getClassPath(), null));
+		assertThat(module(loader.loadClass(StringUtils.class.getName())))
+				.isEqualTo("spring.core");
+	}
+
+	@Test
+	public void splitPackages() throws Exception {
+		URL core = StringUtils.class.getProtectionDomain().getCodeSource().getLocation();
+		URL first = jar("first.jar", "com/example/split/First.class");
+		URL second = jar("second.jar", "com/example/split/Second.class");
+		URL nested = new URL("jar:" + first + "!/BOOT-INF/classes/");
+		ModulePath path = ModulePath.resolve(new URL[] { core, first, second, nested });
+		assertThat(path.getModules()).isEqualTo(1);
+		assertThat(path.getClassPath()).containsExactlyInAnyOrder(first, second, nested);
+	}
+
+	@Test
+	public void noModules() throws Exception {
+		URL nested = new URL("jar:" + jar("first.jar", "First.class") + "!/BOOT-INF/classes/");
+		ModulePath path = ModulePath.resolve(new URL[] { nested });
+		assertThat(path.getModules()).isEqualTo(0);
+		ClassLoader parent = new URLClassLoader(path.getClassPath(), null);
+		assertThat(path.createClassLoader(parent)).isSameAs(parent);
+	}
+
+	@Test
+	public void applicationUsesModules() throws Exception {
+		URL core = StringUtils.class.getProtectionDomain().getCodeSource().getLocation();
+		URL jcl = Log.class.getProtectionDomain().getCodeSource().getLocation();
+		URL classes = compile("app.Application",
+				"package app; public class Application { public static String run() {"
+						+ " return org.springframework.util.StringUtils.capitalize(\"app\"); } }",
+				core);
+		URL[] urls = new URL[] { classes, core, jcl };
+		assertThat(ModulePath.resolve(urls)).isNull();
+		// So the launcher uses a plain class path
+		ClassLoader loader = new URLClassLoader(urls, null);
+		assertThat(loader.loadClass("app.Application").getMethod("run").invoke(null))
+				.isEqualTo("App");
+	}
+
+	@Test
+	public void applicationUsesClassPath() throws Exception {
+		URL core = StringUtils.class.getProtectionDomain().getCodeSource().getLocation();
+		URL classes = compile("app.Application",
+				"package app; public class Application { public static String run() {"
+						+ " return java.util.Collections.singletonList(\"app\").get(0); } }");
+		ModulePath path = ModulePath.resolve(new URL[] { classes, core });
+		assertThat(path.getModules()).isEqualTo(1);
+		assertThat(path.getClassPath()).containsExactly(classes);
+	}
+
+	private URL compile(String type, String source, URL... classpath) throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assumeTrue(compiler != null);
+		File sources = new File(this.root, "src/" + type.replace(".", "/") + ".java");
+		sources.getParentFile().mkdirs();
+		Files.write(sources.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		File classes = new File(this.root, "classes");
+		classes.mkdirs();
+		List<String> args = new ArrayList<>(Arrays.asList("-d", classes.getPath()));
+		if (classpath.length > 0) {
+			args.add("-classpath");
+			args.add(new File(classpath[0].toURI()).getPath());
+		}
+		args.add(sources.getPath());
+		assertThat(compiler.run(null, null, null, args.toArray(new String[0]))).isEqualTo(0);
+		return classes.toURI().toURL();
+	}
+
+	private URL jar(String name, String entry) throws Exception {
+		File file = new File(this.root, name);
+		try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(file))) {
+			jar.putNextEntry(new JarEntry(entry));
+			jar.write(new byte[] { 0 });
+			jar.closeEntry();
+		}
+		return file.toURI().toURL();
+	}
+
+	private String module(Class<?> type) throws Exception {
+		// Java 8 source level
+		Object module = Class.class.getMethod("getModule").invoke(type);
+		return (String) module.getClass().getMethod("getName").invoke(module);
+	}
+
+}
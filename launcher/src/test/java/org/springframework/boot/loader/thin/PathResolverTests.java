@@ -16,13 +16,16 @@
 package org.springframework.boot.loader.thin;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.graph.Dependency;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -30,6 +33,8 @@ import org.springframework.boot.loader.archive.Archive;
 import org.springframework.boot.loader.archive.ExplodedArchive;
 import org.springframework.core.io.Resource;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -43,6 +48,11 @@ public class PathResolverTests {
 	private DependencyResolver dependencies = Mockito.mock(DependencyResolver.class);
 	private PathResolver resolver = new PathResolver(dependencies);
 
+	@BeforeEach
+	public void init() {
+		Mockito.when(dependencies.executor()).thenReturn((Executor) Runnable::run);
+	}
+
 	@Test
 	public void petclinic() throws Exception {
 		Archive parent = new ExplodedArchive(
@@ -143,4 +153,44 @@ public class PathResolverTests {
 				.endsWith("META-INF/maven/com.example/fake/pom.xml");
 	}
 
+	@Test
+	public void localSnapshotPromoted() throws Exception {
+		File base = new File("target/snapshots");
+		FileSystemUtils.deleteRecursively(base);
+		String path = "com/example/demo/1.0-SNAPSHOT/demo-1.0-SNAPSHOT";
+		File local = new File(base, "local");
+		write(new File(local, path + ".jar"), "local");
+		write(new File(local, path + ".pom"), "<project/>");
+		File root = new File(base, "root");
+		File jar = new File(root, "repository/" + path + ".jar");
+		write(jar, "remote");
+		File tracking = new File(jar.getParentFile(), "_remote.repositories");
+		write(tracking, "demo-1.0-SNAPSHOT.jar>remote=");
+		Artifact artifact = new DefaultArtifact("com.example:demo:1.0-SNAPSHOT").setFile(jar);
+		Mockito.when(dependencies.dependencies(any(Resource.class), any(Properties.class)))
+				.thenReturn(Arrays.asList(new Dependency(artifact, "compile")));
+		Mockito.when(dependencies.getLocalRepository()).thenReturn(local);
+		ReflectionTestUtils.setField(DependencyResolver.class, "instance", dependencies);
+		try {
+			resolver.setRoot(root.getPath());
+			Archive archive = new ExplodedArchive(new File("src/test/resources/apps/petclinic"));
+			resolver.extract(archive, "thin", new String[0]);
+			assertThat(jar).hasContent("local");
+			assertThat(jar.lastModified()).isEqualTo(new File(local, path + ".jar").lastModified());
+			assertThat(new File(root, "repository/" + path + ".pom")).hasContent("<project/>");
+			assertThat(tracking).doesNotExist();
+			long modified = jar.lastModified();
+			resolver.extract(archive, "thin", new String[0]);
+			assertThat(jar.lastModified()).isEqualTo(modified);
+		}
+		finally {
+			DependencyResolver.close();
+		}
+	}
+
+	private void write(File file, String content) throws Exception {
+		file.getParentFile().mkdirs();
+		FileCopyUtils.copy(content.getBytes(StandardCharsets.UTF_8), file);
+	}
+
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrefetcherTests {
+
+	private final File root = new File("target/thin/prefetch");
+
+	private final Prefetcher prefetcher = new Prefetcher(
+			new String[] { "--thin.root=" + this.root, "--thin.prefetch=ignored" },
+			"src/test/resources/apps/basic", 1000L);
+
+	@BeforeEach
+	public void init() {
+		FileSystemUtils.deleteRecursively(this.root);
+	}
+
+	@Test
+	public void prefetch() throws Exception {
+		this.prefetcher.start().join(60000L);
+		assertThat(new File(this.root,
+				"repository/org/springframework/spring-web/5.2.7.RELEASE/spring-web-5.2.7.RELEASE.jar"))
+						.exists();
+	}
+
+	@Test
+	public void leavesSharedResolver() throws Exception {
+		DependencyResolver resolver = DependencyResolver.instance();
+		assertThat(this.prefetcher.prefetch("src/test/resources/apps/basic")).isNotEmpty();
+		assertThat(DependencyResolver.instance()).isSameAs(resolver);
+	}
+
+	@Test
+	public void missing() throws Exception {
+		assertThat(this.prefetcher.prefetch("src/test/resources/apps/nonexistent")).isNull();
+	}
+
+	@Test
+	public void watchedFile() throws Exception {
+		File file = new File("target/thin/prefetch.txt");
+		Files.write(file.toPath(), "src/test/resources/apps/basic\n".getBytes(StandardCharsets.UTF_8));
+		assertThat(this.prefetcher.poll(file)).isTrue();
+		assertThat(new File(this.root,
+				"repository/org/springframework/spring-web/5.2.7.RELEASE/spring-web-5.2.7.RELEASE.jar"))
+						.exists();
+		assertThat(this.prefetcher.poll(file)).isFalse();
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RepositoryIndexTests {
+
+	private static final String KEY = "com.example:demo:jar:1.0";
+
+	private static final String PATH = "com/example/demo/1.0/demo-1.0.jar";
+
+	private File repository = new File("target/index/repository");
+
+	@BeforeEach
+	public void init() throws Exception {
+		FileSystemUtils.deleteRecursively(this.repository);
+		File jar = new File(this.repository, PATH);
+		jar.getParentFile().mkdirs();
+		FileCopyUtils.copy("demo".getBytes(StandardCharsets.UTF_8), new FileOutputStream(jar));
+		FileCopyUtils.copy("4a7a8a24ec8bd9c1a0f8f3c4a3c5b4b0e2b1d0a9".getBytes(StandardCharsets.UTF_8),
+				new FileOutputStream(new File(this.repository, PATH + ".sha1")));
+	}
+
+	@AfterEach
+	public void close() {
+		FileSystemUtils.deleteRecursively(this.repository);
+	}
+
+	@Test
+	public void emptyWhenMissing() throws Exception {
+		RepositoryIndex index = RepositoryIndex.load(this.repository);
+		assertThat(index.find(KEY)).isNull();
+		assertThat(index.isDirty()).isFalse();
+	}
+
+	@Test
+	public void savedAndLoaded() throws Exception {
+		RepositoryIndex index = RepositoryIndex.load(this.repository);
+		index.add(KEY, PATH, "central");
+		index.add("com.example:other:jar:1.0", "com/example/other/1.0/other-1.0.jar", "");
+		assertThat(index.isDirty()).isTrue();
+		index.save();
+		assertThat(index.isDirty()).isFalse();
+		assertThat(index.getFile()).exists();
+		RepositoryIndex.Record record = RepositoryIndex.load(this.repository).find(KEY);
+		assertThat(record).isNotNull();
+		assertThat(record.getPath()).isEqualTo(PATH);
+		assertThat(record.getOrigin()).isEqualTo("central");
+		assertThat(record.getSize()).isEqualTo(4L);
+		assertThat(record.getChecksum()).isEqualTo("4a7a8a24ec8bd9c1a0f8f3c4a3c5b4b0e2b1d0a9");
+		assertThat(RepositoryIndex.load(this.repository).find("com.example:other:jar:1.0")).isNull();
+	}
+
+	@Test
+	public void discardedWhenStale() throws Exception {
+		RepositoryIndex index = RepositoryIndex.load(this.repository);
+		index.add(KEY, PATH, "central");
+		index.save();
+		File jar = new File(this.repository, PATH);
+		FileCopyUtils.copy("changed".getBytes(StandardCharsets.UTF_8), new FileOutputStream(jar));
+		assertThat(RepositoryIndex.load(this.repository).find(KEY)).isNull();
+	}
+
+}
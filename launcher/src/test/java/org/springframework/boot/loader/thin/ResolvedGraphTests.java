@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResolvedGraphTests {
+
+	@Test
+	public void mergeAddsDependencies() {
+		ResolvedGraph graph = graph(Collections.<String>emptyList(), "com.example:a:1.0");
+		assertThat(coordinates(graph.merge(Arrays.asList(dependency("com.example:a:1.0"),
+				dependency("com.example:b:1.0"))))).containsExactly("com.example:a:jar:1.0", "com.example:b:jar:1.0");
+	}
+
+	@Test
+	public void mergeConflict() {
+		ResolvedGraph graph = graph(Collections.<String>emptyList(), "com.example:a:1.0");
+		assertThat(graph.merge(Collections.singletonList(dependency("com.example:a:2.0")))).isNull();
+	}
+
+	@Test
+	public void deltaWithAddition() {
+		Properties base = new Properties();
+		base.setProperty("dependencies.a", "com.example:a:1.0");
+		Properties properties = new Properties();
+		properties.putAll(base);
+		properties.setProperty(ThinJarLauncher.THIN_PROFILE, "extra");
+		properties.setProperty("dependencies.b", "com.example:b:1.0");
+		ResolvedGraph graph = graph(Collections.<String>emptyList(), "com.example:a:1.0");
+		ResolvedGraph.Delta delta = ResolvedGraph.delta(base, properties);
+		assertThat(delta).isNotNull();
+		assertThat(delta.isAdditive(graph)).isTrue();
+		assertThat(coordinates(delta.additions(graph))).containsExactly("com.example:b:jar:1.0");
+	}
+
+	@Test
+	public void deltaWithBom() {
+		Properties base = new Properties();
+		Properties properties = new Properties();
+		properties.setProperty("boms.b", "com.example:b:1.0");
+		assertThat(ResolvedGraph.delta(base, properties)).isNull();
+	}
+
+	@Test
+	public void keyIncludesRepositories() throws Exception {
+		Resource pom = new ClassPathResource("apps/basic/pom.xml");
+		RemoteRepository central = new RemoteRepository.Builder("central", "default",
+				"https://repo1.maven.org/maven2").build();
+		RemoteRepository mirror = new RemoteRepository.Builder("central", "default",
+				"https://mirror.example.com/maven2").build();
+		assertThat(ResolvedGraph.key(pom, new Properties(), Collections.singletonList(central)))
+				.isNotEqualTo(ResolvedGraph.key(pom, new Properties(), Collections.singletonList(mirror)));
+	}
+
+	@Test
+	public void savedGraphOutOfDateWhenSourceChanges() throws Exception {
+		File repository = new File("target/graphs/repository");
+		FileSystemUtils.deleteRecursively(repository);
+		File parent = new File("target/graphs/parent.xml");
+		parent.getParentFile().mkdirs();
+		Files.write(parent.toPath(), "<project/>".getBytes(StandardCharsets.UTF_8));
+		ResolvedGraph graph = graph(Collections.singletonList(new ResolvedGraph.Source("com.example:parent:1.0", parent)),
+				false);
+		assertThat(graph.isPersistable()).isTrue();
+		graph.save(repository, "key");
+		assertThat(ResolvedGraph.load(repository, "key").getSources()).hasSize(1);
+		Files.write(parent.toPath(), "<project></project>".getBytes(StandardCharsets.UTF_8));
+		assertThat(ResolvedGraph.load(repository, "key")).isNull();
+	}
+
+	@Test
+	public void notPersistableWithSnapshotParent() throws Exception {
+		File parent = new File("target/graphs/parent.xml");
+		assertThat(graph(Collections.singletonList(new ResolvedGraph.Source("com.example:parent:1.0-SNAPSHOT",
+				parent)), false).isPersistable()).isFalse();
+	}
+
+	@Test
+	public void notPersistableWithRanges() throws Exception {
+		assertThat(graph(Collections.<ResolvedGraph.Source>emptyList(), true).isPersistable()).isFalse();
+		assertThat(graph(Collections.singletonList(new ResolvedGraph.Source("com.example:bom:[1.0,2.0)",
+				new File("target/graphs/bom.xml"))), false).isPersistable()).isFalse();
+	}
+
+	private static ResolvedGraph graph(List<ResolvedGraph.Source> sources, boolean ranges) {
+		List<Dependency> dependencies = Collections.singletonList(dependency("com.example:a:1.0"));
+		return new ResolvedGraph(dependencies, new ArrayList<Dependency>(), new ArrayList<RemoteRepository>(),
+				Collections.<String>emptySet(), dependencies, sources, ranges);
+	}
+
+	private static ResolvedGraph graph(List<String> managed, String... resolved) {
+		List<Dependency> dependencies = new ArrayList<>();
+		for (String value : resolved) {
+			dependencies.add(dependency(value));
+		}
+		List<Dependency> management = new ArrayList<>();
+		for (String value : managed) {
+			management.add(dependency(value));
+		}
+		return new ResolvedGraph(new ArrayList<Dependency>(), management, new ArrayList<RemoteRepository>(),
+				Collections.<String>emptySet(), dependencies);
+	}
+
+	private static Dependency dependency(String coordinates) {
+		return new Dependency(new DefaultArtifact(coordinates), "compile");
+	}
+
+	private static List<String> coordinates(List<Dependency> dependencies) {
+		List<String> list = new ArrayList<>();
+		for (Dependency dependency : dependencies) {
+			list.add(dependency.getArtifact().toString());
+		}
+		return list;
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.util.FileSystemUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResolverDaemonTests {
+
+	private final File directory = new File("target/thin/daemon-tests");
+
+	private final List<String> received = new ArrayList<>();
+
+	private ResolverDaemon daemon;
+
+	@BeforeEach
+	public void init() {
+		FileSystemUtils.deleteRecursively(this.directory);
+	}
+
+	@AfterEach
+	public void close() {
+		if (this.daemon != null) {
+			this.daemon.close();
+		}
+	}
+
+	@Test
+	public void resolve() throws Exception {
+		start(60000L);
+		List<URL> urls = ResolverDaemon.resolve(this.directory, Arrays.asList("--thin.name=app", "--thin.root=/a b"));
+		assertThat(urls).containsExactly(new URL("file:/app.jar"), new URL("file:/lib.jar"));
+		assertThat(this.received).containsExactly("--thin.name=app", "--thin.root=/a b");
+	}
+
+	@Test
+	public void ping() throws Exception {
+		start(60000L);
+		assertThat(ResolverDaemon.send(this.directory, ResolverDaemon.PING, Collections.<String>emptyList()))
+				.isEmpty();
+	}
+
+	@Test
+	public void stop() throws Exception {
+		start(60000L);
+		assertThat(new File(this.directory, ResolverDaemon.FILE)).exists();
+		assertThat(ResolverDaemon.send(this.directory, ResolverDaemon.STOP, Collections.<String>emptyList()))
+				.isEmpty();
+		this.daemon.await();
+		assertThat(new File(this.directory, ResolverDaemon.FILE)).doesNotExist();
+		assertThat(ResolverDaemon.resolve(this.directory, Collections.<String>emptyList())).isNull();
+	}
+
+	@Test
+	public void idle() throws Exception {
+		start(100L);
+		this.daemon.await();
+		assertThat(new File(this.directory, ResolverDaemon.FILE)).doesNotExist();
+	}
+
+	@Test
+	public void noDaemon() throws Exception {
+		assertThat(ResolverDaemon.resolve(this.directory, Collections.<String>emptyList())).isNull();
+	}
+
+	@Test
+	public void resolverFails() throws Exception {
+		start(60000L);
+		assertThat(ResolverDaemon.resolve(this.directory, Arrays.asList("--fail"))).isNull();
+	}
+
+	@Test
+	public void invalidToken() throws Exception {
+		int port = start(60000L);
+		Properties properties = new Properties();
+		properties.setProperty("port", String.valueOf(port));
+		properties.setProperty("token", "wrong");
+		File other = new File(this.directory, "other");
+		other.mkdirs();
+		try (OutputStream output = new FileOutputStream(new File(other, ResolverDaemon.FILE))) {
+			properties.store(output, null);
+		}
+		assertThat(ResolverDaemon.resolve(other, Collections.<String>emptyList())).isNull();
+		assertThat(this.received).isEmpty();
+	}
+
+	private int start(long idle) throws Exception {
+		this.daemon = new ResolverDaemon(this.directory, idle, args -> {
+			if (Arrays.asList(args).contains("--fail")) {
+				throw new IllegalStateException("Planned");
+			}
+			this.received.addAll(Arrays.asList(args));
+			return Arrays.asList(new URL("file:/app.jar"), new URL("file:/lib.jar"));
+		});
+		return this.daemon.start();
+	}
+
+}
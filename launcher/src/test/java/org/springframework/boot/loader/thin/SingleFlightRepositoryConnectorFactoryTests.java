@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.ArtifactDownload;
+import org.eclipse.aether.spi.connector.ArtifactUpload;
+import org.eclipse.aether.spi.connector.MetadataDownload;
+import org.eclipse.aether.spi.connector.MetadataUpload;
+import org.eclipse.aether.spi.connector.RepositoryConnector;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SingleFlightRepositoryConnectorFactoryTests {
+
+	private final AtomicInteger transfers = new AtomicInteger();
+
+	private final CountDownLatch started = new CountDownLatch(1);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private boolean missing;
+
+	private final RemoteRepository repository = new RemoteRepository.Builder("test", "default",
+			"https://repo.example.com/repo").build();
+
+	private final SingleFlightRepositoryConnectorFactory factory = new SingleFlightRepositoryConnectorFactory(
+			new BlockingConnectorFactory());
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@AfterEach
+	public void close() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void sameFileDownloadedOnce() throws Exception {
+		Future<ArtifactDownload> first = this.executor.submit(() -> download("target/flight/demo-1.0.jar"));
+		assertThat(this.started.await(10, TimeUnit.SECONDS)).isTrue();
+		Future<ArtifactDownload> second = this.executor.submit(() -> download("target/flight/demo-1.0.jar"));
+		Thread.sleep(100L);
+		this.release.countDown();
+		assertThat(first.get(10, TimeUnit.SECONDS).getException()).isNull();
+		assertThat(second.get(10, TimeUnit.SECONDS).getException()).isNull();
+		assertThat(this.transfers.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void failureShared() throws Exception {
+		this.missing = true;
+		Future<ArtifactDownload> first = this.executor.submit(() -> download("target/flight/missing-1.0.jar"));
+		assertThat(this.started.await(10, TimeUnit.SECONDS)).isTrue();
+		Future<ArtifactDownload> second = this.executor.submit(() -> download("target/flight/missing-1.0.jar"));
+		Thread.sleep(100L);
+		this.release.countDown();
+		assertThat(first.get(10, TimeUnit.SECONDS).getException()).isInstanceOf(ArtifactNotFoundException.class);
+		assertThat(second.get(10, TimeUnit.SECONDS).getException()).isInstanceOf(ArtifactNotFoundException.class);
+		assertThat(this.transfers.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void differentFilesNotShared() throws Exception {
+		this.release.countDown();
+		download("target/flight/demo-1.0.jar");
+		download("target/flight/other-1.0.jar");
+		assertThat(this.transfers.get()).isEqualTo(2);
+	}
+
+	private ArtifactDownload download(String path) throws Exception {
+		RepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+		ArtifactDownload download = new ArtifactDownload(new DefaultArtifact("com.example:demo:1.0"), null,
+				new File(path), null);
+		RepositoryConnector connector = this.factory.newInstance(session, this.repository);
+		try {
+			connector.get(Collections.singletonList(download), null);
+		}
+		finally {
+			connector.close();
+		}
+		return download;
+	}
+
+	private class BlockingConnectorFactory implements RepositoryConnectorFactory {
+
+		@Override
+		public RepositoryConnector newInstance(RepositorySystemSession session, RemoteRepository repository) {
+			return new RepositoryConnector() {
+
+				@Override
+				public void get(Collection<? extends ArtifactDownload> artifactDownloads,
+						Collection<? extends MetadataDownload> metadataDownloads) {
+					for (ArtifactDownload download : artifactDownloads) {
+						transfers.incrementAndGet();
+						started.countDown();
+						try {
+							release.await();
+						}
+						catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						if (missing) {
+							download.setException(new ArtifactNotFoundException(download.getArtifact(), repository));
+						}
+					}
+				}
+
+				@Override
+				public void put(Collection<? extends ArtifactUpload> artifactUploads,
+						Collection<? extends MetadataUpload> metadataUploads) {
+				}
+
+				@Override
+				public void close() {
+				}
+
+			};
+		}
+
+		@Override
+		public float getPriority() {
+			return 0;
+		}
+
+	}
+
+}
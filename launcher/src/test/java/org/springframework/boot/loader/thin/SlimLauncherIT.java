@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.boot.loader.thin;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.util.StreamUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.util.FileSystemUtils.deleteRecursively;
+
+/**
+ * Smoke test for the launcher jar from the "slim" profile: it has to resolve the same
+ * class path as the full launcher jar.
+ */
+public class SlimLauncherIT {
+
+	private final File slim = new File(System.getProperty("slim.jar",
+			"target/spring-boot-thin-launcher-1.0.28.BUILD-SNAPSHOT-slim.jar"));
+
+	private final File exec = new File(
+			this.slim.getPath().replaceAll("-slim\\.jar$", "-exec.jar"));
+
+	@BeforeEach
+	public void init() {
+		assertThat(this.slim).exists();
+		assertThat(this.slim.length()).isLessThan(this.exec.length());
+	}
+
+	@Test
+	public void simple() throws Exception {
+		assertSameClassPath("../samples/simple");
+	}
+
+	@Test
+	public void petclinic() throws Exception {
+		assertSameClassPath("../samples/petclinic");
+	}
+
+	@Test
+	public void properties() throws Exception {
+		assertSameClassPath("src/test/resources/apps/profiles", "--thin.profile=extra");
+	}
+
+	@Test
+	public void dryrun() throws Exception {
+		deleteRecursively(new File("target/thin/slim"));
+		String output = run(this.slim, "--thin.dryrun", "--thin.debug",
+				"--thin.root=target/thin/slim",
+				"--thin.archive=src/test/resources/apps/basic");
+		assertThat(output).contains("Downloaded dependencies");
+		assertThat(new File("target/thin/slim/repository/org/springframework/spring-core"))
+				.exists();
+	}
+
+	private void assertSameClassPath(String archive, String... args) throws Exception {
+		List<String> list = new ArrayList<>(Arrays.asList("--thin.classpath",
+				"--thin.archive=" + archive));
+		list.addAll(Arrays.asList(args));
+		String expected = run(this.exec, list.toArray(new String[0]));
+		assertThat(expected).contains(".jar");
+		assertThat(run(this.slim, list.toArray(new String[0]))).isEqualTo(expected);
+	}
+
+	private String run(File jar, String... args) throws Exception {
+		List<String> command = new ArrayList<>(Arrays.asList(
+				new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(),
+				"-jar", jar.getAbsolutePath()));
+		command.addAll(Arrays.asList(args));
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		String output = StreamUtils.copyToString(process.getInputStream(),
+				StandardCharsets.UTF_8);
+		assertThat(process.waitFor(60, TimeUnit.SECONDS)).isTrue();
+		assertThat(process.exitValue()).as(output).isEqualTo(0);
+		return output;
+	}
+
+}
@@ -18,10 +18,26 @@ package org.springframework.boot.loader.thin;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
-
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpServer;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.graph.Dependency;
 import org.junit.jupiter.api.AfterEach;
@@ -29,15 +45,19 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 
+import org.springframework.boot.loader.archive.Archive;
 import org.springframework.boot.test.system.CapturedOutput;
 import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StreamUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -91,6 +111,7 @@ public class ThinJarLauncherTests {
 		DependencyResolver resolver = mock(DependencyResolver.class);
 		ReflectionTestUtils.setField(DependencyResolver.class, "instance", resolver);
 		ArgumentCaptor<Properties> props = ArgumentCaptor.forClass(Properties.class);
+		when(resolver.executor()).thenReturn((Executor) Runnable::run);
 		when(resolver.dependencies(any(Resource.class), any(Properties.class)))
 				.thenReturn(Collections.<Dependency>emptyList());
 		launcher.launch(args);
@@ -108,6 +129,7 @@ public class ThinJarLauncherTests {
 		DependencyResolver resolver = mock(DependencyResolver.class);
 		ReflectionTestUtils.setField(DependencyResolver.class, "instance", resolver);
 		ArgumentCaptor<Properties> props = ArgumentCaptor.forClass(Properties.class);
+		when(resolver.executor()).thenReturn((Executor) Runnable::run);
 		when(resolver.dependencies(any(Resource.class), any(Properties.class)))
 				.thenReturn(Collections.<Dependency>emptyList());
 		launcher.launch(args);
@@ -151,6 +173,47 @@ public class ThinJarLauncherTests {
 		assertThat(output.toString()).contains("BOOT-INF" + File.separator + "classes");
 	}
 
+	@Test
+	public void classpathJar(CapturedOutput output) throws Exception {
+		deleteRecursively(new File("target/thin/pathing"));
+		String[] args = new String[] { "--thin.classpath=jar",
+				"--thin.root=target/thin/pathing", "--thin.main=app.main.SampleApplication",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		File file = new File(output.toString().trim());
+		assertThat(file.getParentFile().getName()).isEqualTo(ClassPathFile.DIRECTORY);
+		try (JarFile jar = new JarFile(file)) {
+			Attributes attributes = jar.getManifest().getMainAttributes();
+			assertThat(attributes.getValue(Attributes.Name.MAIN_CLASS))
+					.isEqualTo("app.main.SampleApplication");
+			assertThat(attributes.getValue(Attributes.Name.CLASS_PATH))
+					.contains("spring-web-5.2.7.RELEASE.jar file:");
+		}
+		long modified = file.lastModified();
+		ThinJarLauncher.main(args);
+		// Cached by class path
+		assertThat(output.toString()).contains(file.getAbsolutePath() + System.lineSeparator()
+				+ file.getAbsolutePath());
+		assertThat(file.lastModified()).isEqualTo(modified);
+	}
+
+	@Test
+	public void classpathArgfile(CapturedOutput output) throws Exception {
+		deleteRecursively(new File("target/thin/pathing"));
+		String[] args = new String[] { "--thin.classpath=argfile",
+				"--thin.root=target/thin/pathing", "--thin.main=app.main.SampleApplication",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		File file = new File(output.toString().trim());
+		assertThat(file.getName()).endsWith(".args");
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertThat(lines).hasSize(3);
+		assertThat(lines.get(0)).isEqualTo("-cp");
+		assertThat(lines.get(1)).startsWith("\"")
+				.contains("spring-web-5.2.7.RELEASE.jar" + File.pathSeparator);
+		assertThat(lines.get(2)).isEqualTo("app.main.SampleApplication");
+	}
+
 	@Test
 	public void compute(CapturedOutput output) throws Exception {
 		String[] args = new String[] { "--thin.classpath=properties",
@@ -160,6 +223,30 @@ public class ThinJarLauncherTests {
 				"dependencies.spring-web=org.springframework:spring-web:5.2.7.RELEASE\n");
 	}
 
+	@Test
+	public void graph(CapturedOutput output) throws Exception {
+		String[] args = new String[] { "--thin.classpath=graph",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		assertThat(output.toString()).contains(
+				"{ \"artifact\": \"org.springframework.boot:spring-boot-starter-web:2.3.1.RELEASE\", \"scope\": \"compile\", \"mediation\": \"selected\"");
+		assertThat(output.toString()).contains("\"mediation\": \"duplicate\"");
+		assertThat(output.toString()).contains("\"mediation\": \"managed\", \"requested\": \"1.7.25\"");
+		assertThat(output.toString()).contains(
+				"\"path\": [\"org.springframework.boot:spring-boot-starter-web:2.3.1.RELEASE\"]");
+	}
+
+	@Test
+	public void dot(CapturedOutput output) throws Exception {
+		String[] args = new String[] { "--thin.classpath=dot",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		assertThat(output.toString()).contains("digraph dependencies {");
+		assertThat(output.toString()).contains(
+				"\"basic\" -> \"org.springframework.boot:spring-boot-starter-web:2.3.1.RELEASE\";");
+		assertThat(output.toString()).contains("[style=dashed, label=\"duplicate\"];");
+	}
+
 	@Test
 	public void twoClassifiers(CapturedOutput output) throws Exception {
 		String[] args = new String[] { "--thin.classpath=properties",
@@ -182,6 +269,320 @@ public class ThinJarLauncherTests {
 				"dependencies.jersey-client.1=com.sun.jersey:jersey-client:1.19.1\n");
 	}
 
+	@Test
+	public void dryrunPack() throws Exception {
+		deleteRecursively(new File("target/thin/test/packs"));
+		String[] args = new String[] { "--thin.dryrun=true",
+				"--thin.root=target/thin/test", "--thin.pack=true",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		assertThat(new File("target/thin/test/packs").listFiles())
+				.anyMatch(file -> file.getName().endsWith(".pack"));
+	}
+
+	@Test
+	public void dryrunIndex() throws Exception {
+		File index = new File("target/thin/test/repository/.thin-index");
+		index.delete();
+		String[] args = new String[] { "--thin.dryrun=true",
+				"--thin.root=target/thin/test", "--thin.index=true",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		assertThat(index).exists();
+		long size = index.length();
+		DependencyResolver.close();
+		ThinJarLauncher.main(args);
+		assertThat(index.length()).isEqualTo(size);
+	}
+
+	@Test
+	public void dryrunPipeline() throws Exception {
+		deleteRecursively(new File("target/thin/pipeline"));
+		String[] args = new String[] { "--thin.dryrun=true",
+				"--thin.root=target/thin/pipeline", "--thin.pipeline=true",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		assertThat(new File(
+				"target/thin/pipeline/repository/org/springframework/spring-web/5.2.7.RELEASE/spring-web-5.2.7.RELEASE.jar"))
+						.exists();
+	}
+
+	@Test
+	public void dryrunJdkTransport() throws Exception {
+		deleteRecursively(new File("target/thin/transport"));
+		// Serve the local Maven repository over http in place of central, and keep the
+		// resolver from reading it as a file repository
+		File local = new File(System.getProperty("user.home"), ".m2/repository");
+		List<String> downloads = new CopyOnWriteArrayList<>();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/repo/", exchange -> {
+			File file = new File(local,
+					exchange.getRequestURI().getPath().substring("/repo/".length()));
+			if (!file.isFile()) {
+				exchange.sendResponseHeaders(404, -1);
+			}
+			else if ("HEAD".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(200, -1);
+			}
+			else {
+				downloads.add(file.getName());
+				exchange.sendResponseHeaders(200, file.length());
+				try (OutputStream output = exchange.getResponseBody()) {
+					Files.copy(file.toPath(), output);
+				}
+			}
+			exchange.close();
+		});
+		server.start();
+		File settings = new File("target/thin/transport/.m2/settings.xml");
+		settings.getParentFile().mkdirs();
+		Files.write(settings.toPath(), ("<settings><localRepository>"
+				+ new File("target/thin/transport/repository").getAbsolutePath()
+				+ "</localRepository><profiles><profile><id>test</id>"
+				+ "<activation><activeByDefault>true</activeByDefault></activation>"
+				+ "<repositories><repository><id>central</id><url>http://localhost:"
+				+ server.getAddress().getPort() + "/repo</url></repository></repositories>"
+				+ "</profile></profiles></settings>").getBytes(StandardCharsets.UTF_8));
+		List<String> messages = new CopyOnWriteArrayList<>();
+		Handler handler = new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				messages.add(record.getMessage());
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger(JdkHttpTransporterFactory.class.getName());
+		java.util.logging.Level level = logger.getLevel();
+		logger.setLevel(java.util.logging.Level.FINE);
+		logger.addHandler(handler);
+		try {
+			String[] args = new String[] { "--thin.dryrun=true",
+					"--thin.root=target/thin/transport", "--thin.transport=jdk",
+					"--thin.archive=src/test/resources/apps/basic" };
+			ThinJarLauncher.main(args);
+		}
+		finally {
+			logger.removeHandler(handler);
+			logger.setLevel(level);
+			server.stop(0);
+		}
+		assertThat(messages).anyMatch(message -> message.startsWith("Using JDK http transport"));
+		assertThat(downloads).contains("spring-web-5.2.7.RELEASE.jar");
+		assertThat(new File(
+				"target/thin/transport/repository/org/springframework/spring-web/5.2.7.RELEASE/spring-web-5.2.7.RELEASE.jar"))
+						.exists();
+	}
+
+	@Test
+	public void dryrunDelta() throws Exception {
+		deleteRecursively(new File("target/thin/delta"));
+		String[] args = new String[] { "--thin.dryrun=true",
+				"--thin.root=target/thin/delta", "--thin.delta=true", "--thin.profile=foo",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		assertThat(new File(
+				"target/thin/delta/repository/org/springframework/spring-web/5.2.7.RELEASE/spring-web-5.2.7.RELEASE.jar"))
+						.exists();
+		assertThat(new File("target/thin/delta/repository/" + ResolvedGraph.DIRECTORY)
+				.listFiles()).hasSize(1);
+	}
+
+	@Test
+	public void dryrunBatch(CapturedOutput output) throws Exception {
+		deleteRecursively(new File("target/thin/batch"));
+		String[] args = new String[] { "--thin.dryrun=true", "--thin.root=target/thin/batch",
+				"--thin.archive=src/test/resources/apps/basic,src/test/resources/apps/db" };
+		ThinJarLauncher.main(args);
+		assertThat(new File(
+				"target/thin/batch/repository/org/springframework/spring-web/5.2.7.RELEASE/spring-web-5.2.7.RELEASE.jar"))
+						.exists();
+		assertThat(output.toString()).contains("Resolved 2 archives")
+				.contains("OK     src/test/resources/apps/basic")
+				.contains("OK     src/test/resources/apps/db");
+	}
+
+	@Test
+	public void dryrunBatchFailure(CapturedOutput output) throws Exception {
+		String[] args = new String[] { "--thin.dryrun=true", "--thin.root=target/thin/batch",
+				"--thin.archive=src/test/resources/apps/basic,src/test/resources/apps/nonexistent" };
+		assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() -> ThinJarLauncher.main(args))
+				.withMessageContaining("1 of 2");
+		assertThat(output.toString()).contains("OK     src/test/resources/apps/basic")
+				.contains("FAILED src/test/resources/apps/nonexistent");
+	}
+
+	@Test
+	public void batchDirectory() throws Exception {
+		File directory = new File("target/thin/batch-jars");
+		deleteRecursively(directory);
+		directory.mkdirs();
+		new File(directory, "b.jar").createNewFile();
+		new File(directory, "a.jar").createNewFile();
+		new File(directory, "README.txt").createNewFile();
+		assertThat(BatchResolver.archives(directory.getPath())).containsExactly(
+				new File(directory, "a.jar").getPath(), new File(directory, "b.jar").getPath());
+		assertThat(BatchResolver.archives("src/test/resources/apps/basic")).isNull();
+		assertThat(BatchResolver.archives("")).isNull();
+	}
+
+	@Test
+	public void classpathFromDaemon(CapturedOutput output) throws Exception {
+		List<String> requests = new ArrayList<>();
+		ResolverDaemon daemon = new ResolverDaemon(new File("target/thin/daemon"), 60000L,
+				values -> {
+					requests.addAll(Arrays.asList(values));
+					return new ThinJarLauncher(values).resolve(values);
+				});
+		daemon.start();
+		try {
+			String[] args = new String[] { "--thin.classpath", "--thin.daemon=true",
+					"--thin.daemon.dir=target/thin/daemon",
+					"--thin.archive=src/test/resources/apps/basic" };
+			ThinJarLauncher.main(args);
+		}
+		finally {
+			daemon.close();
+		}
+		assertThat(output.toString())
+				.contains("spring-web-5.2.7.RELEASE.jar" + File.pathSeparator);
+		assertThat(requests).contains("--thin.archive="
+				+ new File("src/test/resources/apps/basic").getAbsolutePath());
+		assertThat(new File("target/thin/daemon/" + ResolverDaemon.FILE)).doesNotExist();
+	}
+
+	@Test
+	public void classpathWithoutDaemon(CapturedOutput output) throws Exception {
+		String[] args = new String[] { "--thin.classpath", "--thin.daemon=true",
+				"--thin.daemon.dir=target/thin/nodaemon",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		assertThat(output.toString())
+				.contains("spring-web-5.2.7.RELEASE.jar" + File.pathSeparator);
+	}
+
+	@Test
+	public void descriptor() throws Exception {
+		deleteRecursively(new File("target/thin/descriptor"));
+		String[] args = new String[] { "--thin.root=target/thin/descriptor",
+				"--thin.descriptor=true",
+				"--thin.archive=src/test/resources/app-with-web-in-lib-properties.jar" };
+		ThinJarLauncher launcher = new ThinJarLauncher(args);
+		ReflectionTestUtils.invokeMethod(launcher, "addCommandLineProperties",
+				(Object) args);
+		List<URL> urls = new ArrayList<>();
+		for (Archive archive : launcher.getClassPathArchives()) {
+			urls.add(archive.getUrl());
+		}
+		launcher.createClassLoader(urls.toArray(new URL[0]));
+		File[] files = new File("target/thin/descriptor/" + LaunchDescriptor.DIRECTORY)
+				.listFiles();
+		assertThat(files).hasSize(1);
+		Properties properties = PropertiesLoaderUtils
+				.loadProperties(new FileSystemResource(files[0]));
+		assertThat(properties.getProperty("main"))
+				.isEqualTo("com.example.LauncherApplication");
+		assertThat(properties.getProperty("classpath.0")).endsWith(
+				"app-with-web-in-lib-properties.jar");
+		assertThat(properties.getProperty("classpath." + (urls.size() - 1))).isNotNull();
+		assertThat(properties.getProperty("input.0.length")).isEqualTo(String.valueOf(
+				new File("src/test/resources/app-with-web-in-lib-properties.jar").length()));
+	}
+
+	@Test
+	public void modulepath() throws Exception {
+		assumeTrue(ModulePath.isAvailable());
+		String[] args = new String[] { "--thin.modulepath=true",
+				"--thin.archive=src/test/resources/app-with-web-in-lib-properties.jar" };
+		ThinJarLauncher launcher = new ThinJarLauncher(args);
+		ReflectionTestUtils.invokeMethod(launcher, "addCommandLineProperties",
+				(Object) args);
+		List<URL> urls = new ArrayList<>();
+		for (Archive archive : launcher.getClassPathArchives()) {
+			urls.add(archive.getUrl());
+		}
+		ClassLoader loader = launcher.createClassLoader(urls.toArray(new URL[0]));
+		// The application classes can see the libraries
+		assertThat(loader.loadClass("com.example.LauncherApplication").getAnnotations())
+				.isNotEmpty();
+		Class<?> type = loader.loadClass("org.springframework.web.util.UriUtils");
+		Object module = Class.class.getMethod("getModule").invoke(type);
+		assertThat(module.getClass().getMethod("getName").invoke(module))
+				.isEqualTo("spring.web");
+	}
+
+	@Test
+	public void report() throws Exception {
+		deleteRecursively(new File("target/thin/report"));
+		String[] args = new String[] { "--thin.dryrun=true",
+				"--thin.root=target/thin/report",
+				"--thin.report=target/thin/report/cold.json",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		DependencyResolver.close();
+		String cold = new String(
+				Files.readAllBytes(new File("target/thin/report/cold.json").toPath()),
+				StandardCharsets.UTF_8);
+		assertThat(cold).contains("\"local\": 0,").doesNotContain("\"downloaded\": 0,");
+		assertThat(cold).contains("\"hits\": ");
+		// Which artifacts are the slowest depends on timing, but there are always some
+		assertThat(cold).containsPattern("\"slowest\": \\[\\s*\\{ \"artifact\": ");
+		args[2] = "--thin.report=target/thin/report/warm.json";
+		ThinJarLauncher.main(args);
+		String warm = new String(
+				Files.readAllBytes(new File("target/thin/report/warm.json").toPath()),
+				StandardCharsets.UTF_8);
+		assertThat(warm).contains("\"downloaded\": 0,").contains("\"hitRate\": 1.000");
+	}
+
+	@Test
+	public void resolverReleasedBeforeLaunch() throws Exception {
+		String[] args = new String[] { "--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher launcher = new ThinJarLauncher(args);
+		ReflectionTestUtils.invokeMethod(launcher, "addCommandLineProperties",
+				(Object) args);
+		DependencyResolver resolver = DependencyResolver.instance();
+		assertThat(launcher.getClassPathArchivesIterator().hasNext()).isTrue();
+		assertThat(DependencyResolver.instance()).isNotSameAs(resolver);
+		assertThat(ReflectionTestUtils.getField(resolver, "container")).isNull();
+		assertThat(ReflectionTestUtils.getField(resolver, "projectBuilder")).isNull();
+	}
+
+	@Test
+	public void localTrust(CapturedOutput output) throws Exception {
+		String[] args = new String[] { "--thin.dryrun=true",
+				"--thin.root=target/thin/test",
+				"--thin.archive=src/test/resources/apps/basic" };
+		ThinJarLauncher.main(args);
+		DependencyResolver.close();
+		File tracking = new File(
+				"target/thin/test/repository/org/springframework/spring-web/5.2.7.RELEASE/_remote.repositories");
+		String original = StreamUtils.copyToString(new FileInputStream(tracking),
+				Charset.defaultCharset());
+		// Claim that the jar came from a repository that the app does not know about
+		StreamUtils.copy(
+				"spring-web-5.2.7.RELEASE.jar>elsewhere=\nspring-web-5.2.7.RELEASE.pom>elsewhere=\n",
+				Charset.defaultCharset(), new FileOutputStream(tracking));
+		try {
+			args = new String[] { "--thin.classpath", "--thin.root=target/thin/test",
+					"--thin.local.trust=true",
+					"--thin.archive=src/test/resources/apps/basic" };
+			ThinJarLauncher.main(args);
+			assertThat(output.toString())
+					.contains("spring-web-5.2.7.RELEASE.jar" + File.pathSeparator);
+		}
+		finally {
+			StreamUtils.copy(original, Charset.defaultCharset(),
+					new FileOutputStream(tracking));
+		}
+	}
+
 	@Test
 	public void thinRoot() throws Exception {
 		deleteRecursively(
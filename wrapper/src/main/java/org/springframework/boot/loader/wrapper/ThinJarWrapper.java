@@ -16,17 +16,43 @@
 
 package org.springframework.boot.loader.wrapper;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
@@ -82,6 +108,23 @@ public class ThinJarWrapper {
 	 */
 	public static final String THIN_DEBUG = "thin.debug";
 
+	/**
+	 * Property key for flag to ask a resident resolver daemon (started with
+	 * <code>--thin.daemon=serve</code>) for the class path and launch the
+	 * application directly, without downloading the launcher. Falls back to the
+	 * launcher if there is no daemon. The daemon advertises itself in
+	 * <code>thin.daemon.dir</code> (default <code>${user.home}/.thin</code>).
+	 */
+	public static final String THIN_DAEMON = "thin.daemon";
+
+	/**
+	 * Property key for flag to launch the application directly from the launch
+	 * descriptor that the launcher writes in <code>${thin.root}/launch</code> (when
+	 * the same flag is set), as long as none of its inputs have changed. Falls back to
+	 * the launcher (which writes a fresh one) otherwise.
+	 */
+	public static final String THIN_DESCRIPTOR = "thin.descriptor";
+
 	/**
 	 * Property key to override the location of local Maven cache. If the launcher
 	 * jar is available here it will be used before trying the remote repo. Useful
@@ -89,6 +132,10 @@ public class ThinJarWrapper {
 	 */
 	private static final String MAVEN_REPO_LOCAL = "maven.repo.local";
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final long CHUNK_SIZE = 1024 * 1024;
+
 	private static final String DEFAULT_LAUNCHER_CLASS = "org.springframework.boot.loader.thin.ThinJarLauncher";
 
 	private static final String DEFAULT_LIBRARY = "org.springframework.boot.experimental:spring-boot-thin-launcher:jar:exec:1.0.28.BUILD-SNAPSHOT";
@@ -126,6 +173,13 @@ public class ThinJarWrapper {
 	}
 
 	private void launch(String... args) throws Exception {
+		String descriptor = getProperty(THIN_DESCRIPTOR);
+		if (descriptor != null && !"false".equals(descriptor) && launchFromDescriptor(args)) {
+			return;
+		}
+		if ("true".equals(getProperty(THIN_DAEMON)) && launchFromDaemon(args)) {
+			return;
+		}
 		String target = download();
 		if (!new File(target).exists()) {
 			throw new IllegalStateException("Cannot locate launcher: " + target);
@@ -139,6 +193,276 @@ public class ThinJarWrapper {
 		findMainMethod(launcher).invoke(null, new Object[] { args(launcherClass, args) });
 	}
 
+	boolean launchFromDaemon(String[] args) throws Exception {
+		String archive = getProperty(THIN_ARCHIVE);
+		if (archive == null || !new File(archive).isFile() || getProperty("thin.dryrun") != null
+				|| getProperty("thin.classpath") != null
+				|| !"true".equals(get(getProperty("thin.parent.first"), "true"))) {
+			// Only the launcher knows how to do anything other than run a plain jar in a
+			// parent first class loader
+			return false;
+		}
+		String mainClass = startClass(archive);
+		if (mainClass == null) {
+			return false;
+		}
+		List<URL> urls = daemon(daemonArgs(new File(archive).getAbsolutePath(), args));
+		if (urls == null || urls.isEmpty()) {
+			return false;
+		}
+		if (this.debug) {
+			System.err.println("Using class path from daemon: " + urls);
+		}
+		// Same default as the launcher
+		run(urls, mainClass, "true".equals(get(getProperty("thin.parent.boot"), "true")), args);
+		return true;
+	}
+
+	boolean launchFromDescriptor(String[] args) throws Exception {
+		String archive = getProperty(THIN_ARCHIVE);
+		if (archive == null || !new File(archive).isFile() || getProperty("thin.dryrun") != null
+				|| getProperty("thin.classpath") != null) {
+			return false;
+		}
+		String root = getProperty(THIN_ROOT);
+		File file = new File(root == null ? mvnHome(null) : root,
+				"launch/" + descriptorKey(new File(archive).getAbsolutePath(), args) + ".properties");
+		if (!file.exists()) {
+			return false;
+		}
+		Properties descriptor = new Properties();
+		InputStream input = new FileInputStream(file);
+		try {
+			descriptor.load(input);
+		} finally {
+			input.close();
+		}
+		for (int i = 0; descriptor.getProperty("input." + i) != null; i++) {
+			File path = new File(descriptor.getProperty("input." + i));
+			if (!String.valueOf(path.exists() ? path.length() : -1)
+					.equals(descriptor.getProperty("input." + i + ".length"))
+					|| !String.valueOf(path.lastModified()).equals(descriptor.getProperty("input." + i + ".modified"))) {
+				if (this.debug) {
+					System.err.println("Launch descriptor out of date: " + path + " has changed");
+				}
+				return false;
+			}
+		}
+		String mainClass = descriptor.getProperty("main");
+		List<URL> urls = new ArrayList<>();
+		for (int i = 0; descriptor.getProperty("classpath." + i) != null; i++) {
+			urls.add(new File(descriptor.getProperty("classpath." + i)).toURI().toURL());
+		}
+		if (mainClass == null || urls.isEmpty()) {
+			return false;
+		}
+		if (this.debug) {
+			System.err.println("Using launch descriptor: " + file);
+		}
+		run(urls, mainClass, !"false".equals(descriptor.getProperty("parent.boot")), args);
+		return true;
+	}
+
+	String descriptorKey(String archive, String[] args) throws Exception {
+		Map<String, String> values = new TreeMap<String, String>();
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith("thin.")) {
+				values.put(name, System.getProperty(name));
+			}
+		}
+		Properties overrides = properties(args);
+		for (String name : overrides.stringPropertyNames()) {
+			if (name.startsWith("thin.")) {
+				values.put(name, overrides.getProperty(name));
+			}
+		}
+		return descriptorKey(archive, new File("").getAbsolutePath(), values);
+	}
+
+	/**
+	 * The name of the launch descriptor. Must compute the same as the launcher (which
+	 * writes it): a hash of the archive, the working directory and the thin.*
+	 * properties, apart from the ones that only affect finding the launcher or logging.
+	 */
+	static String descriptorKey(String archive, String directory, Map<String, String> properties)
+			throws Exception {
+		Map<String, String> values = new TreeMap<String, String>(properties);
+		for (String name : new String[] { THIN_ARCHIVE, THIN_LIBRARY, THIN_SOURCE, THIN_DEBUG, "thin.trace" }) {
+			values.remove(name);
+		}
+		StringBuilder builder = new StringBuilder(archive).append("\n").append(directory).append("\n");
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			if (entry.getKey().startsWith("thin.")) {
+				builder.append(entry.getKey()).append("=").append(entry.getValue()).append("\n");
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : MessageDigest.getInstance("SHA-1").digest(builder.toString().getBytes("UTF-8"))) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Run the application main class directly in a new class loader, with the thin
+	 * arguments removed (like the launcher does).
+	 */
+	private void run(List<URL> urls, String mainClass, boolean parentBoot, String[] args) throws Exception {
+		ClassLoader parent = ThinJarWrapper.class.getClassLoader();
+		if (parentBoot) {
+			parent = parent.getParent();
+		}
+		URLClassLoader classLoader = new URLClassLoader(urls.toArray(new URL[0]), parent);
+		Thread.currentThread().setContextClassLoader(classLoader);
+		List<String> result = new ArrayList<>();
+		boolean escaped = false;
+		for (String arg : args) {
+			if ("--".equals(arg)) {
+				escaped = true;
+				continue;
+			}
+			if (!escaped && arg.startsWith("--thin.")) {
+				continue;
+			}
+			result.add(arg);
+		}
+		findMainMethod(classLoader.loadClass(mainClass)).invoke(null,
+				new Object[] { result.toArray(new String[result.size()]) });
+	}
+
+	private String startClass(String archive) {
+		String mainClass = getProperty("thin.main");
+		JarFile jar = null;
+		try {
+			jar = new JarFile(archive);
+			if (jar.getEntry("BOOT-INF/classes/") != null) {
+				// Nested classes need the launcher
+				return null;
+			}
+			Manifest manifest = jar.getManifest();
+			if (mainClass == null && manifest != null) {
+				mainClass = manifest.getMainAttributes().getValue("Start-Class");
+			}
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (jar != null) {
+				try {
+					jar.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return mainClass;
+	}
+
+	List<String> daemonArgs(String archive, String[] args) {
+		Properties values = new Properties();
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith("thin.")) {
+				values.setProperty(name, System.getProperty(name));
+			}
+		}
+		Properties overrides = properties(args);
+		for (String name : overrides.stringPropertyNames()) {
+			if (name.startsWith("thin.")) {
+				values.setProperty(name, overrides.getProperty(name));
+			}
+		}
+		if (values.getProperty("thin.location") == null) {
+			// The daemon has a different working directory
+			values.setProperty("thin.location", "classpath:/,file:.");
+		}
+		List<String> result = new ArrayList<>();
+		result.add("--" + THIN_ARCHIVE + "=" + archive);
+		for (String name : values.stringPropertyNames()) {
+			if (name.equals(THIN_ARCHIVE) || name.startsWith(THIN_DAEMON) || name.equals(THIN_SOURCE)
+					|| name.equals(THIN_LIBRARY) || name.equals(THIN_LAUNCHER) || name.equals(THIN_REPO)) {
+				continue;
+			}
+			result.add("--" + name + "=" + absolute(name, values.getProperty(name)));
+		}
+		return result;
+	}
+
+	private String absolute(String name, String value) {
+		if (name.equals(THIN_ROOT) || name.equals("thin.parent")) {
+			return value.contains(":") ? value : new File(value).getAbsolutePath();
+		}
+		if (name.equals("thin.location")) {
+			StringBuilder builder = new StringBuilder();
+			for (String location : value.split(",")) {
+				location = location.trim();
+				if (location.startsWith("file:") && !location.startsWith("file:/")) {
+					location = "file:" + new File(location.substring("file:".length())).getAbsolutePath();
+				}
+				if (builder.length() > 0) {
+					builder.append(",");
+				}
+				builder.append(location);
+			}
+			return builder.toString();
+		}
+		return value;
+	}
+
+	/**
+	 * Ask the resolver daemon for a class path, speaking the same protocol as the
+	 * launcher (the token, a command, URL encoded arguments one per line and a
+	 * blank line).
+	 */
+	List<URL> daemon(List<String> args) {
+		String directory = getProperty("thin.daemon.dir");
+		File file = new File(directory == null ? home() + "/.thin" : directory, "daemon.properties");
+		if (!file.exists()) {
+			return null;
+		}
+		Properties daemon = new Properties();
+		Socket socket = new Socket();
+		try {
+			InputStream input = new FileInputStream(file);
+			try {
+				daemon.load(input);
+			} finally {
+				input.close();
+			}
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+					Integer.parseInt(daemon.getProperty("port", "0"))), 5000);
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+			writer.write(daemon.getProperty("token", "") + "\nRESOLVE\n");
+			for (String arg : args) {
+				writer.write(URLEncoder.encode(arg, "UTF-8") + "\n");
+			}
+			writer.write("\n");
+			writer.flush();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			String status = reader.readLine();
+			if (!"OK".equals(status)) {
+				if (this.debug) {
+					System.err.println("Daemon cannot resolve: " + status);
+				}
+				return null;
+			}
+			List<URL> urls = new ArrayList<>();
+			String line = reader.readLine();
+			while (line != null && line.length() > 0) {
+				urls.add(new URL(line));
+				line = reader.readLine();
+			}
+			return urls;
+		} catch (Exception e) {
+			if (this.debug) {
+				System.err.println("Daemon not available: " + e);
+			}
+			return null;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
 	String download() {
 		String library = getProperty(THIN_LIBRARY);
 		if (library != null && !library.startsWith("maven://")) {
@@ -168,20 +492,19 @@ public class ThinJarWrapper {
 			if (!target.getParentFile().exists() && !target.getParentFile().mkdirs()) {
 				throw new IllegalStateException("Cannot create directory for library at " + target);
 			}
-			boolean result = false;
+			List<String> sources = new ArrayList<>();
 			String defaultPath = mavenLocal();
 			if (!defaultPath.equals(parent)) {
-				// Try default local repo first
-				result = downloadFromUrl(getUrl(defaultPath) + file, target);
-			}
-			if (!result) {
-				String repo = getProperty(THIN_REPO);
-				repo = repo != null ? repo : "https://repo.spring.io/libs-snapshot";
-				if (repo.endsWith("/")) {
-					repo = repo.substring(0, repo.length() - 1);
-				}
-				downloadFromUrl(repo + file, target);
+				// The default local repo might have it already
+				sources.add(getUrl(defaultPath) + file);
+			}
+			String repo = getProperty(THIN_REPO);
+			repo = repo != null ? repo : "https://repo.spring.io/libs-snapshot";
+			if (repo.endsWith("/")) {
+				repo = repo.substring(0, repo.length() - 1);
 			}
+			sources.add(repo + file);
+			downloadFromAny(sources, target);
 		} else {
 			if (this.debug) {
 				System.err.println("Cached launcher found: " + parent);
@@ -316,20 +639,76 @@ public class ThinJarWrapper {
 		}
 	}
 
+	/**
+	 * Try all the sources at once and keep the first good copy, so a slow or
+	 * unreachable remote does not hold up a local copy (or vice versa).
+	 */
+	private boolean downloadFromAny(List<String> paths, final File target) {
+		if (paths.size() == 1) {
+			return downloadFromUrl(paths.get(0), target);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(paths.size(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "thin-wrapper-download");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			CompletionService<Boolean> service = new ExecutorCompletionService<Boolean>(executor);
+			for (final String path : paths) {
+				service.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						return downloadFromUrl(path, target);
+					}
+				});
+			}
+			for (int i = 0; i < paths.size(); i++) {
+				if (service.take().get()) {
+					return true;
+				}
+			}
+		} catch (Exception e) {
+			if (this.debug) {
+				System.err.println("Failed to download: " + target);
+			}
+		} finally {
+			// Abandon the others (interrupting a channel closes it)
+			executor.shutdownNow();
+		}
+		return false;
+	}
+
+	/**
+	 * Download to a temporary file, check it against the published checksum (if there
+	 * is one) and only then move it into place, so a failed or partial download never
+	 * ends up in the cache.
+	 */
 	private boolean downloadFromUrl(String path, File target) {
 		if (this.debug) {
 			System.err.println("Downloading launcher from: " + path);
 		}
-		InputStream input = null;
-		OutputStream output = null;
+		File temp = null;
 		try {
-			input = new URL(path).openStream();
-			output = new FileOutputStream(target);
-			byte[] bytes = new byte[4096];
-			int count = input.read(bytes);
-			while (count > 0) {
-				output.write(bytes, 0, count);
-				count = input.read(bytes);
+			File parent = target.getAbsoluteFile().getParentFile();
+			if (!parent.exists() && !parent.mkdirs()) {
+				throw new IOException("Cannot create directory: " + parent);
+			}
+			temp = File.createTempFile(target.getName(), ".tmp", parent);
+			transfer(new URL(path), temp);
+			if (!verify(path, temp)) {
+				if (this.debug) {
+					System.err.println("Checksum does not match: " + path);
+				}
+				return false;
+			}
+			try {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			}
 			return true;
 		} catch (Exception e) {
@@ -337,20 +716,111 @@ public class ThinJarWrapper {
 				System.err.println("Failed to download: " + path);
 			}
 		} finally {
-			if (input != null) {
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+		return false;
+	}
+
+	private void transfer(URL url, File target) throws Exception {
+		FileOutputStream output = new FileOutputStream(target);
+		try {
+			FileChannel channel = output.getChannel();
+			if ("file".equals(url.getProtocol())) {
+				FileInputStream input = new FileInputStream(new File(url.toURI()));
 				try {
+					FileChannel source = input.getChannel();
+					long size = source.size();
+					long position = 0;
+					while (position < size) {
+						position += channel.transferFrom(source, position, size - position);
+					}
+				} finally {
 					input.close();
-				} catch (Exception e) {
+				}
+			} else {
+				ReadableByteChannel source = Channels.newChannel(url.openStream());
+				try {
+					long position = 0;
+					long count = channel.transferFrom(source, position, CHUNK_SIZE);
+					while (count > 0) {
+						position += count;
+						count = channel.transferFrom(source, position, CHUNK_SIZE);
+					}
+				} finally {
+					source.close();
 				}
 			}
-			if (output != null) {
+		} finally {
+			output.close();
+		}
+	}
+
+	private boolean verify(String path, File file) throws Exception {
+		String[][] checksums = new String[][] { { ".sha256", "SHA-256" }, { ".sha1", "SHA-1" } };
+		for (String[] checksum : checksums) {
+			String expected = checksum(path + checksum[0]);
+			if (expected != null) {
+				return expected.equalsIgnoreCase(digest(file, checksum[1]));
+			}
+		}
+		if (this.debug) {
+			System.err.println("No checksum found for: " + path);
+		}
+		return true;
+	}
+
+	/**
+	 * The published checksum, or null if there isn't one (a 404). Any other failure is
+	 * an error, so the download is rejected (and another source tried) rather than
+	 * trusted without a check.
+	 */
+	private String checksum(String path) throws IOException {
+		InputStream input = null;
+		try {
+			input = new URL(path).openStream();
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] bytes = new byte[256];
+			int count = input.read(bytes);
+			while (count > 0) {
+				output.write(bytes, 0, count);
+				count = input.read(bytes);
+			}
+			// The file may also contain the name of the artifact
+			String[] values = new String(output.toByteArray(), "UTF-8").trim().split("\\s+");
+			return values[0].length() > 0 ? values[0] : null;
+		} catch (FileNotFoundException e) {
+			return null;
+		} finally {
+			if (input != null) {
 				try {
-					output.close();
+					input.close();
 				} catch (Exception e) {
 				}
 			}
 		}
-		return false;
+	}
+
+	private String digest(File file, String algorithm) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance(algorithm);
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (channel.read(buffer) > 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			input.close();
+		}
+		StringBuilder builder = new StringBuilder();
+		for (byte b : digest.digest()) {
+			builder.append(String.format("%02x", b));
+		}
+		return builder.toString();
 	}
 
 	private String getArtifactPath(String coordinates) {
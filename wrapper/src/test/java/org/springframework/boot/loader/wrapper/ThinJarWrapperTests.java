@@ -17,15 +17,44 @@
 package org.springframework.boot.loader.wrapper;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.After;
 import org.junit.Assume;
 import org.junit.Before;
@@ -39,8 +68,12 @@ import org.springframework.util.FileSystemUtils;
  */
 public class ThinJarWrapperTests {
 
+	private static final String MAIN_JAR = "src/test/resources/repository/com/example/main/0.0.1-SNAPSHOT/main-0.0.1-SNAPSHOT.jar";
+
 	private PrintStream out;
 
+	private Thread daemon;
+
 	@Before
 	public void open() {
 		out = System.out;
@@ -183,4 +216,251 @@ public class ThinJarWrapperTests {
 		assertEquals("Wrong value for key=" + key, value, new ThinJarWrapper().getProperty(key));
 	}
 
+	@Test
+	public void testDaemonArgs() throws Exception {
+		ThinJarWrapper wrapper = new ThinJarWrapper();
+		List<String> args = wrapper.daemonArgs("/app.jar",
+				new String[] { "--thin.root=target/root", "--thin.daemon=true", "--thin.library=foo", "--server.port=0" });
+		assertThat(args, hasItem("--thin.archive=/app.jar"));
+		assertThat(args, hasItem("--thin.root=" + new File("target/root").getAbsolutePath()));
+		assertThat(args, hasItem("--thin.location=classpath:/,file:" + new File(".").getAbsolutePath()));
+		assertThat(args, not(hasItem("--thin.daemon=true")));
+		assertThat(args, not(hasItem("--thin.library=foo")));
+		assertThat(args, not(hasItem("--server.port=0")));
+	}
+
+	@Test
+	public void testDaemon() throws Exception {
+		final List<String> request = new ArrayList<>();
+		final ServerSocket server = daemonServer("file:/app.jar\nfile:/lib.jar", request);
+		try {
+			ThinJarWrapper wrapper = new ThinJarWrapper("--thin.daemon.dir=target/daemon");
+			List<URL> urls = wrapper.daemon(Arrays.asList("--thin.archive=/app.jar"));
+			assertEquals(Arrays.asList(new URL("file:/app.jar"), new URL("file:/lib.jar")), urls);
+			this.daemon.join(5000);
+			assertEquals(Arrays.asList("secret", "RESOLVE", "--thin.archive=/app.jar"), request);
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testLaunchFromDaemonWithoutParentBoot() throws Exception {
+		File archive = new File(MAIN_JAR).getAbsoluteFile();
+		ServerSocket server = daemonServer(archive.toURI().toURL().toString(), new ArrayList<String>());
+		ClassLoader context = Thread.currentThread().getContextClassLoader();
+		try {
+			String[] args = new String[] { "--thin.daemon.dir=target/daemon", "--thin.archive=" + archive,
+					"--thin.main=main.Main", "--thin.parent.boot=false" };
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+			assertTrue(new ThinJarWrapper(args).launchFromDaemon(args));
+			assertThat(stream.toString(), containsString("Main Running"));
+			// The application class loader is a child of the wrapper's, not the boot one
+			assertEquals(ThinJarWrapper.class.getClassLoader(),
+					Thread.currentThread().getContextClassLoader().getParent());
+		} finally {
+			Thread.currentThread().setContextClassLoader(context);
+			server.close();
+		}
+	}
+
+	@Test
+	public void testNoLaunchFromDaemonWithoutParentFirst() throws Exception {
+		String[] args = new String[] { "--thin.daemon.dir=target/daemon",
+				"--thin.archive=" + new File(MAIN_JAR).getAbsolutePath(), "--thin.main=main.Main",
+				"--thin.parent.first=false" };
+		// Needs a child first class loader, so it is left to the launcher
+		assertFalse(new ThinJarWrapper(args).launchFromDaemon(args));
+	}
+
+	private ServerSocket daemonServer(final String response, final List<String> request) throws Exception {
+		File directory = new File("target/daemon");
+		directory.mkdirs();
+		final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		Properties properties = new Properties();
+		properties.setProperty("port", String.valueOf(server.getLocalPort()));
+		properties.setProperty("token", "secret");
+		OutputStream output = new FileOutputStream(new File(directory, "daemon.properties"));
+		properties.store(output, null);
+		output.close();
+		this.daemon = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Socket socket = server.accept();
+					BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+					String line = reader.readLine();
+					while (line != null && line.length() > 0) {
+						request.add(URLDecoder.decode(line, "UTF-8"));
+						line = reader.readLine();
+					}
+					Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+					writer.write("OK\n" + response + "\n\n");
+					writer.flush();
+					socket.close();
+				} catch (Exception e) {
+				}
+			}
+		});
+		this.daemon.start();
+		return server;
+	}
+
+	@Test
+	public void testNoDaemon() throws Exception {
+		ThinJarWrapper wrapper = new ThinJarWrapper("--thin.daemon.dir=target/nodaemon");
+		assertEquals(null, wrapper.daemon(Arrays.asList("--thin.archive=/app.jar")));
+	}
+
+	@Test
+	public void testDownloadVerifiesChecksum() throws Exception {
+		File repo = checksumRepository("sha256", sha256(new File(MAIN_JAR)));
+		System.setProperty("thin.root", "target/checksum");
+		System.setProperty("maven.repo.local", "target/checksum-local");
+		System.setProperty("thin.repo", repo.toURI().toURL().toString());
+		System.setProperty("thin.library", "com.example:main:0.0.1-SNAPSHOT");
+		String target = new ThinJarWrapper().download();
+		assertTrue(new File(target).exists());
+	}
+
+	@Test
+	public void testDownloadRejectsBadChecksum() throws Exception {
+		File repo = checksumRepository("sha1", "0123456789abcdef0123456789abcdef01234567  main-0.0.1-SNAPSHOT.jar");
+		System.setProperty("thin.root", "target/checksum");
+		System.setProperty("maven.repo.local", "target/checksum-local");
+		System.setProperty("thin.repo", repo.toURI().toURL().toString());
+		System.setProperty("thin.library", "com.example:main:0.0.1-SNAPSHOT");
+		File target = new File(new ThinJarWrapper().download());
+		assertFalse(target.exists());
+		// Nothing half written left behind either
+		assertEquals(0, target.getParentFile().list().length);
+	}
+
+	@Test
+	public void testDownloadWithoutChecksum() throws Exception {
+		HttpServer server = checksumServer(404);
+		try {
+			File target = new File(new ThinJarWrapper().download());
+			assertTrue(target.exists());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testDownloadRejectsChecksumError() throws Exception {
+		HttpServer server = checksumServer(500);
+		try {
+			File target = new File(new ThinJarWrapper().download());
+			assertFalse(target.exists());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private HttpServer checksumServer(final int status) throws Exception {
+		FileSystemUtils.deleteRecursively(new File("target/checksum"));
+		final byte[] jar = Files.readAllBytes(new File(MAIN_JAR).toPath());
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (exchange.getRequestURI().getPath().endsWith(".jar")) {
+					exchange.sendResponseHeaders(200, jar.length);
+					exchange.getResponseBody().write(jar);
+				} else {
+					exchange.sendResponseHeaders(status, -1);
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		System.setProperty("thin.root", "target/checksum");
+		System.setProperty("maven.repo.local", "target/checksum-local");
+		System.setProperty("thin.repo", "http://localhost:" + server.getAddress().getPort());
+		System.setProperty("thin.library", "com.example:main:0.0.1-SNAPSHOT");
+		return server;
+	}
+
+	private File checksumRepository(String extension, String checksum) throws Exception {
+		FileSystemUtils.deleteRecursively(new File("target/checksum"));
+		File repo = new File("target/checksum-repo");
+		FileSystemUtils.deleteRecursively(repo);
+		File directory = new File(repo, "com/example/main/0.0.1-SNAPSHOT");
+		directory.mkdirs();
+		Files.copy(new File(MAIN_JAR).toPath(), new File(directory, "main-0.0.1-SNAPSHOT.jar").toPath());
+		Files.write(new File(directory, "main-0.0.1-SNAPSHOT.jar." + extension).toPath(),
+				checksum.getBytes(StandardCharsets.UTF_8));
+		return repo;
+	}
+
+	private static String sha256(File file) throws Exception {
+		StringBuilder builder = new StringBuilder();
+		for (byte b : MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()))) {
+			builder.append(String.format("%02x", b));
+		}
+		return builder.toString();
+	}
+
+	@Test
+	public void testLaunchFromDescriptor() throws Exception {
+		File archive = new File(MAIN_JAR).getAbsoluteFile();
+		String[] args = new String[] { "--thin.root=target/descriptor", "--thin.descriptor=true",
+				"--thin.archive=" + archive };
+		ThinJarWrapper wrapper = new ThinJarWrapper(args);
+		descriptor(wrapper.descriptorKey(archive.getPath(), args), archive, archive.length());
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(stream));
+		assertTrue(wrapper.launchFromDescriptor(args));
+		assertThat(stream.toString(), containsString("Main Running"));
+	}
+
+	@Test
+	public void testLaunchFromStaleDescriptor() throws Exception {
+		File archive = new File(MAIN_JAR).getAbsoluteFile();
+		String[] args = new String[] { "--thin.root=target/descriptor", "--thin.descriptor=true",
+				"--thin.archive=" + archive };
+		ThinJarWrapper wrapper = new ThinJarWrapper(args);
+		descriptor(wrapper.descriptorKey(archive.getPath(), args), archive, archive.length() + 1);
+		assertFalse(wrapper.launchFromDescriptor(args));
+	}
+
+	@Test
+	public void testLaunchWithoutDescriptor() throws Exception {
+		FileSystemUtils.deleteRecursively(new File("target/descriptor"));
+		String[] args = new String[] { "--thin.root=target/descriptor", "--thin.descriptor=true",
+				"--thin.archive=" + new File(MAIN_JAR).getAbsolutePath() };
+		assertFalse(new ThinJarWrapper(args).launchFromDescriptor(args));
+	}
+
+	private void descriptor(String key, File archive, long length) throws Exception {
+		File directory = new File("target/descriptor/launch");
+		FileSystemUtils.deleteRecursively(directory);
+		directory.mkdirs();
+		Properties properties = new Properties();
+		properties.setProperty("main", "main.Main");
+		properties.setProperty("parent.boot", "true");
+		properties.setProperty("classpath.0", archive.getPath());
+		properties.setProperty("input.0", archive.getPath());
+		properties.setProperty("input.0.length", String.valueOf(length));
+		properties.setProperty("input.0.modified", String.valueOf(archive.lastModified()));
+		OutputStream output = new FileOutputStream(new File(directory, key + ".properties"));
+		properties.store(output, null);
+		output.close();
+	}
+
+	@Test
+	public void testDescriptorKey() throws Exception {
+		// Same as the launcher (LaunchDescriptorTests)
+		Map<String, String> properties = new HashMap<>();
+		properties.put("thin.root", "/root");
+		properties.put("thin.profile", "foo");
+		properties.put("thin.debug", "true");
+		properties.put("thin.archive", "/other.jar");
+		properties.put("server.port", "0");
+		assertEquals("abc75fd313e73d6f257cee62e2abb26583426b83",
+				ThinJarWrapper.descriptorKey("/app.jar", "/work", properties));
+	}
+
 }